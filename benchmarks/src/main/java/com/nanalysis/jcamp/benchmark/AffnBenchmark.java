@@ -0,0 +1,75 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampPage;
+import com.nanalysis.jcamp.parser.JCampParser;
+
+/**
+ * AFFN decoding of NMReady real and imaginary data tables, through {@link JCampPage#toArray()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AffnBenchmark {
+    @Param({
+        "benchtop/100/NMReady_1D_1H_20210302_quinine_4.dx",
+        "benchtop/60/NMReady_1D_1H_20210909_Test_formates.dx",
+    })
+    public String file;
+
+    private JCampBlock block;
+    private long byteCount;
+    private long pointCount;
+
+    @Setup
+    public void setup() {
+        block = new JCampParser().parse(Inputs.load(file)).block(0);
+        for (int i = 0; i < block.getPageCount(); i++) {
+            JCampPage page = block.page(i);
+            byteCount += String.join("\n", page.getDataLines()).getBytes(StandardCharsets.ISO_8859_1).length;
+            pointCount += page.toArray().length;
+        }
+    }
+
+    @Benchmark
+    public void toArray(Throughput throughput, Blackhole blackhole) {
+        for (int i = 0; i < block.getPageCount(); i++) {
+            blackhole.consume(block.page(i).toArray());
+        }
+        throughput.add(byteCount, pointCount);
+    }
+}
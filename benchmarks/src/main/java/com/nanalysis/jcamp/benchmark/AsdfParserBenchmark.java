@@ -0,0 +1,67 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nanalysis.jcamp.parser.ASDFParser;
+import com.nanalysis.jcamp.parser.ParseListener;
+import com.nanalysis.jcamp.parser.PointCountPolicy;
+import com.nanalysis.jcamp.writer.Compression;
+
+/**
+ * ASDF decoding, for each compression mode. DIFDUP input is generated with many repeated values.
+ * Lines are decoded in place from a single text block, as {@link com.nanalysis.jcamp.model.JCampPage#toArray()} does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsdfParserBenchmark {
+    @Param({"SQZ", "DIF", "DIFDUP"})
+    public Compression compression;
+
+    @Param({"32768"})
+    public int size;
+
+    private String text;
+
+    @Setup
+    public void setup() {
+        text = String.join("\n", Inputs.asdfLines(compression, compression == Compression.DIFDUP, size)) + "\n";
+    }
+
+    @Benchmark
+    public double[] decode(Throughput throughput) {
+        double[] values = ASDFParser.decode(text, 0, text.length(), size, 1, PointCountPolicy.PAD, ParseListener.NONE);
+        throughput.add(text.length(), values.length);
+        return values;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run benchmarks with the GC profiler enabled, so that allocation rates are always reported.
+ * <p>
+ * All the usual JMH command line options are accepted, for example to select benchmarks or parameters:
+ * <code>java -jar target/benchmarks.jar ParserBenchmark -p file=synthetic-x64</code>
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner() {
+        throw new UnsupportedOperationException("Main class");
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+            .parent(commandLine)
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
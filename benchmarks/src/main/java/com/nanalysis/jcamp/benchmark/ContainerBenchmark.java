@@ -0,0 +1,87 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.benchmark;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampRecord;
+import com.nanalysis.jcamp.model.Label;
+import com.nanalysis.jcamp.parser.JCampParser;
+
+/**
+ * Record lookups and value conversions on a typical block. Lookups are only reported as operations per second, while
+ * conversions also report the amount of text and the number of values converted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContainerBenchmark {
+    private JCampBlock block;
+    private JCampRecord first;
+    private JCampRecord date;
+
+    @Setup
+    public void setup() {
+        block = new JCampParser().parse(Inputs.load("benchtop/100/NMReady_1D_1H_20210302_quinine_4.dx")).block(0);
+        first = block.get(Label.FIRST);
+        date = block.get(Label.LONG_DATE);
+    }
+
+    @Benchmark
+    public JCampRecord getByLabel() {
+        return block.get(Label._OBSERVE_FREQUENCY);
+    }
+
+    @Benchmark
+    public JCampRecord getByString() {
+        return block.get(".Observe Frequency");
+    }
+
+    @Benchmark
+    public String getFromParent() {
+        return block.getTitle();
+    }
+
+    @Benchmark
+    public double[] getDoubles(Throughput throughput) {
+        double[] values = first.getDoubles();
+        throughput.add(first.getString().length(), values.length);
+        return values;
+    }
+
+    @Benchmark
+    public Date getDate(Throughput throughput) {
+        Date value = date.getDate();
+        throughput.add(date.getString().length(), 1);
+        return value;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import com.nanalysis.jcamp.writer.Compression;
+import com.nanalysis.jcamp.writer.JCampWriter;
+import com.nanalysis.jcamp.writer.SyntheticJCampGenerator;
+import com.nanalysis.jcamp.writer.SyntheticJCampGenerator.Kind;
+
+/**
+ * Benchmark inputs: test files bundled with the benchmarks, and generated data.
+ */
+final class Inputs {
+    private static final String SYNTHETIC_PREFIX = "synthetic-x";
+    private static final String GENERATED_PREFIX = "generated:";
+    private static final String SCALED_SOURCE = "benchtop/100/NMReady_1D_1H_20210302_quinine_4.dx";
+    private static final String PAGES_START = "##PAGE=";
+    private static final String PAGES_END = "##END NTUPLES=";
+
+    private Inputs() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * Load a benchmark file.
+     *
+     * @param name either a path relative to the test resources, "synthetic-xN" for the 1D quinine file with its pages
+     * replicated N times, or "generated:KIND:COMPRESSION:POINTSxINCREMENTS[xBLOCKS]" for a generated document.
+     * @return the file content.
+     */
+    static String load(String name) {
+        if (name.startsWith(GENERATED_PREFIX)) {
+            return generated(name.substring(GENERATED_PREFIX.length()));
+        }
+        if (name.startsWith(SYNTHETIC_PREFIX)) {
+            return scaled(load(SCALED_SOURCE), Integer.parseInt(name.substring(SYNTHETIC_PREFIX.length())));
+        }
+
+        try (InputStream input = Inputs.class.getResourceAsStream("/jcamp/" + name)) {
+            if (input == null) {
+                throw new IllegalArgumentException("Unknown benchmark file: " + name);
+            }
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Generate a document, see {@link SyntheticJCampGenerator}.
+     */
+    static String generated(String parameters) {
+        String[] parts = parameters.split(":");
+        String[] size = parts[2].split("x");
+        return new SyntheticJCampGenerator(42)
+            .setKind(Kind.valueOf(parts[0]))
+            .setCompression(Compression.valueOf(parts[1]))
+            .setPoints(Integer.parseInt(size[0]))
+            .setIncrements(Integer.parseInt(size[1]))
+            .setBlocks(size.length > 2 ? Integer.parseInt(size[2]) : 2)
+            .generate();
+    }
+
+    /**
+     * Replicate all pages of a NTUPLES document.
+     */
+    static String scaled(String content, int factor) {
+        int start = content.indexOf(PAGES_START);
+        int end = content.indexOf(PAGES_END);
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException("Not a NTUPLES document");
+        }
+
+        String pages = content.substring(start, end);
+        return content.substring(0, start) + pages.repeat(factor) + content.substring(end);
+    }
+
+    /**
+     * Generate ASDF data lines, without the data table header.
+     *
+     * @param compression the compression to use
+     * @param plateaus whether to generate a signal with many repeated values, for which DUP compression applies
+     * @param size the number of values
+     * @return data lines.
+     */
+    static List<String> asdfLines(Compression compression, boolean plateaus, int size) {
+        int[] values = signal(plateaus, size);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (JCampWriter writer = new JCampWriter(output, compression, JCampWriter.DEFAULT_LINE_WIDTH)) {
+            writer.writeData("XYDATA", "(X++(Y..Y))", values, 0, 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return output.toString(StandardCharsets.ISO_8859_1).lines()
+            .skip(1)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Deterministic FID-like signal: decaying oscillations with some noise.
+     */
+    private static int[] signal(boolean plateaus, int size) {
+        Random random = new Random(42);
+        int[] values = new int[size];
+        int i = 0;
+        while (i < size) {
+            double t = i / (double) size;
+            double value = Math.exp(-5 * t) * (1e6 * Math.cos(400 * t) + 3e5 * Math.cos(1300 * t)) + random.nextGaussian() * 100;
+            int run = plateaus ? 1 + random.nextInt(16) : 1;
+            for (int j = 0; j < run && i < size; j++) {
+                values[i++] = (int) value;
+            }
+        }
+        return values;
+    }
+}
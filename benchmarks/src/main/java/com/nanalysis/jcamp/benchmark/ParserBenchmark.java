@@ -0,0 +1,130 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.parser.JCampHandler;
+import com.nanalysis.jcamp.parser.JCampParser;
+import com.nanalysis.jcamp.parser.ParallelJCampParser;
+import com.nanalysis.jcamp.parser.ParseListener;
+import com.nanalysis.jcamp.parser.Projection;
+
+/**
+ * Full document parsing, for all test files, scaled copies of test files, and generated documents. Data tables are not
+ * decoded, so only the text throughput is reported.
+ * <p>
+ * LINK documents are also parsed with their blocks in parallel. All documents are parsed with a projection keeping a few
+ * records and the real pages only. They are parsed from their encoded bytes too, either copied to a string first or in
+ * place. Finally, events are reported to a handler counting data lines, without building any document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({
+        "benchtop/100/NMReady_1D_1H_20210302_quinine_4.dx",
+        "benchtop/100/NMReady_COSY_1H_20210324_dep_64x512.dx",
+        "benchtop/60/NMReady_1D_1H_20210909_Test_formates.dx",
+        "benchtop/60/NMReady_1D_1H_20210909_Test_formatesS.jdx",
+        "spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx",
+        "synthetic-x16",
+        "synthetic-x128",
+        "generated:FID:DIFDUP:4096x128",
+        "generated:LINK:AFFN:4096x32",
+        "generated:LINK:DIFDUP:4096x8x16",
+    })
+    public String file;
+
+    private String content;
+    private byte[] bytes;
+    private long byteCount;
+    private final ParallelJCampParser parallel = new ParallelJCampParser();
+    private final JCampParser projected = new JCampParser(ParseListener.NONE,
+        Projection.of(".OBSERVE FREQUENCY", "$SW_H").withYSymbols("R"));
+
+    @Setup
+    public void setup() {
+        content = Inputs.load(file);
+        bytes = content.getBytes(StandardCharsets.UTF_8);
+        byteCount = bytes.length;
+    }
+
+    @Benchmark
+    public JCampDocument parse(Throughput throughput) {
+        JCampDocument document = new JCampParser().parse(content);
+        throughput.add(byteCount);
+        return document;
+    }
+
+    @Benchmark
+    public JCampDocument parseBlocksInParallel(Throughput throughput) {
+        JCampDocument document = parallel.parse(content);
+        throughput.add(byteCount);
+        return document;
+    }
+
+    @Benchmark
+    public JCampDocument parseProjected(Throughput throughput) {
+        JCampDocument document = projected.parse(content);
+        throughput.add(byteCount);
+        return document;
+    }
+
+    @Benchmark
+    public JCampDocument parseBytesAsString(Throughput throughput) {
+        JCampDocument document = new JCampParser().parse(new String(bytes, StandardCharsets.UTF_8));
+        throughput.add(byteCount);
+        return document;
+    }
+
+    @Benchmark
+    public JCampDocument parseBytes(Throughput throughput) {
+        JCampDocument document = new JCampParser().parse(bytes, 0, bytes.length);
+        throughput.add(byteCount);
+        return document;
+    }
+
+    @Benchmark
+    public long parseEvents(Throughput throughput) {
+        long[] lines = new long[1];
+        new JCampParser().parse(content, new JCampHandler() {
+            @Override
+            public void dataLine(CharSequence text, int start, int end) {
+                lines[0]++;
+            }
+        });
+        throughput.add(byteCount);
+        return lines[0];
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.parser.JCampParser;
+import com.nanalysis.jcamp.parser.PipelinedJCampParser;
+
+/**
+ * Parsing and decoding all pages of nD documents: sequentially, then with page decoding overlapping parsing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelinedParserBenchmark {
+    @Param({
+        "benchtop/100/NMReady_COSY_1H_20210324_dep_64x512.dx",
+        "generated:FID:DIFDUP:4096x128",
+        "generated:FID:AFFN:4096x128",
+    })
+    public String file;
+
+    private String content;
+    private long byteCount;
+    private long pointCount;
+    private final JCampParser sequential = new JCampParser();
+    private final PipelinedJCampParser pipelined = new PipelinedJCampParser();
+
+    @Setup
+    public void setup() {
+        content = Inputs.load(file);
+        byteCount = content.getBytes(StandardCharsets.UTF_8).length;
+        pointCount = decodeAll(sequential.parse(content), null);
+    }
+
+    @Benchmark
+    public void sequential(Throughput throughput, Blackhole blackhole) {
+        decodeAll(sequential.parse(content), blackhole);
+        throughput.add(byteCount, pointCount);
+    }
+
+    @Benchmark
+    public void pipelined(Throughput throughput, Blackhole blackhole) {
+        decodeAll(pipelined.parse(content), blackhole);
+        throughput.add(byteCount, pointCount);
+    }
+
+    private static long decodeAll(JCampDocument document, Blackhole blackhole) {
+        long points = 0;
+        for (int b = 0; b < document.getBlockCount(); b++) {
+            JCampBlock block = document.block(b);
+            for (int p = 0; p < block.getPageCount(); p++) {
+                double[] values = block.page(p).toArray();
+                points += values.length;
+                if (blackhole != null) {
+                    blackhole.consume(values);
+                }
+            }
+        }
+        return points;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary counters, reported by JMH as rates: MB/s of JCamp text processed, and points/s of decoded values.
+ * Benchmarks which don't decode data report text only, their points rate is 0.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+    private static final double MEGABYTE = 1024 * 1024;
+
+    public double megabytes;
+    public long points;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        megabytes = 0;
+        points = 0;
+    }
+
+    void add(long byteCount) {
+        megabytes += byteCount / MEGABYTE;
+    }
+
+    void add(long byteCount, long pointCount) {
+        megabytes += byteCount / MEGABYTE;
+        points += pointCount;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for building a block, from its first record to its "END" record.
+ * Disabled by default, enable it with <code>com.nanalysis.jcamp.BlockBuild#enabled=true</code>.
+ */
+@Name("com.nanalysis.jcamp.BlockBuild")
+@Label("JCamp Block Build")
+@Category("JCamp")
+@Description("Building of a JCamp-DX block while parsing")
+@Enabled(false)
+@StackTrace(false)
+public class BlockBuildEvent extends Event {
+    @Label("File Name")
+    public String fileName;
+
+    @Label("Data Type")
+    public String dataType;
+
+    @Label("Pages")
+    public int pageCount;
+
+    @Label("Points")
+    @Description("Number of points declared by the block pages")
+    public long pointCount;
+}
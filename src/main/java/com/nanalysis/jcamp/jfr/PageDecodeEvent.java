@@ -0,0 +1,56 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for decoding a page data table to values.
+ * Disabled by default, enable it with <code>com.nanalysis.jcamp.PageDecode#enabled=true</code>.
+ */
+@Name("com.nanalysis.jcamp.PageDecode")
+@Label("JCamp Page Decode")
+@Category("JCamp")
+@Description("Decoding of a JCamp-DX page data table")
+@Enabled(false)
+@StackTrace(false)
+public class PageDecodeEvent extends Event {
+    @Label("File Name")
+    public String fileName;
+
+    @Label("Data Type")
+    public String dataType;
+
+    @Label("Page")
+    public String page;
+
+    @Label("Form")
+    public String form;
+
+    @Label("Points")
+    public long pointCount;
+
+    @Label("Size")
+    @DataAmount
+    public long byteCount;
+}
@@ -0,0 +1,53 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a whole document parse, including reading the file when parsing from a file.
+ * Disabled by default, enable it with <code>com.nanalysis.jcamp.Parse#enabled=true</code>.
+ */
+@Name("com.nanalysis.jcamp.Parse")
+@Label("JCamp Parse")
+@Category("JCamp")
+@Description("Parsing of a JCamp-DX document")
+@Enabled(false)
+@StackTrace(false)
+public class ParseEvent extends Event {
+    @Label("File Name")
+    public String fileName;
+
+    @Label("Data Type")
+    public String dataType;
+
+    @Label("Size")
+    @DataAmount
+    public long byteCount;
+
+    @Label("Blocks")
+    public int blockCount;
+
+    @Label("Pages")
+    public int pageCount;
+}
@@ -33,12 +33,17 @@ import java.util.stream.Collectors;
  */
 public class JCampBlock extends JCampContainer {
     private final JCampContainer parent;
-    private final List<JCampPage> pages = new ArrayList<>();
+    private List<JCampPage> pages = new ArrayList<>();
 
     public JCampBlock(JCampContainer parent) {
         this.parent = parent;
     }
 
+    @Override
+    public String getSourceName() {
+        return parent == null ? null : parent.getSourceName();
+    }
+
     /**
      * @return the block title.
      */
@@ -87,9 +92,42 @@ public class JCampBlock extends JCampContainer {
      * @param page the page to add
      */
     public void addPage(JCampPage page) {
+        checkNotFrozen();
         pages.add(page);
     }
 
+    /**
+     * Remove a page from this block, for example when it isn't selected while parsing.
+     *
+     * @param page the page to remove
+     * @return true when the page was part of this block
+     */
+    public boolean removePage(JCampPage page) {
+        checkNotFrozen();
+        // pages are usually removed while being built, search from the end
+        int index = pages.lastIndexOf(page);
+        if (index < 0) {
+            return false;
+        }
+        pages.remove(index);
+        return true;
+    }
+
+    /**
+     * Freeze this block and its pages, see {@link JCampContainer#freeze()}.
+     *
+     * @return this block.
+     */
+    @Override
+    public JCampBlock freeze() {
+        if (!isFrozen()) {
+            pages.forEach(JCampPage::freeze);
+            pages = List.copyOf(pages);
+            super.freeze();
+        }
+        return this;
+    }
+
     /**
      * @return the number of pages contained in this block.
      */
@@ -132,6 +170,6 @@ public class JCampBlock extends JCampContainer {
      */
     private JCampRecord getOrDefaultRecursive(Label label, String defaultData) {
         return optional(label)
-            .orElseGet(() -> parent.getOrDefault(label, defaultData));
+            .orElseGet(() -> (parent == null ? this : parent).getOrDefault(label, defaultData));
     }
 }
@@ -18,14 +18,19 @@ package com.nanalysis.jcamp.model;
 import static com.nanalysis.jcamp.util.JCampUtil.normalize;
 
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * Base container for JCamp Labelled Data Records, used to provide accessor methods to subclasses.
  * <p>
  * It can contain multiple records for the same label (used in multi-dimensional datasets),
+ * <p>
+ * Once built, a container can be frozen: it can't be modified anymore, and its records are kept in a compact form.
  */
 public abstract class JCampContainer {
-    private final Map<String, List<JCampRecord>> records = new TreeMap<>();
+    private Map<String, List<JCampRecord>> records = new LinkedHashMap<>();
+    // labels in the order they were first added once frozen, the compact record map doesn't keep it
+    private String[] frozenLabels;
 
     /**
      * Add a data record to this container.
@@ -33,18 +38,123 @@ public abstract class JCampContainer {
      * @param record a previously parsed record
      */
     public void addRecord(JCampRecord record) {
+        checkNotFrozen();
         List<JCampRecord> list = records.computeIfAbsent(record.getNormalizedLabel(), k -> new ArrayList<>());
         list.add(record);
     }
 
+    /**
+     * Replace a record by another one with the same label, keeping its position. This is used to share equal records
+     * between documents, see {@link com.nanalysis.jcamp.parser.RecordPool}.
+     *
+     * @param record a record of this container
+     * @param replacement the record to store instead
+     * @return true when the record was found and replaced.
+     */
+    public boolean replaceRecord(JCampRecord record, JCampRecord replacement) {
+        checkNotFrozen();
+        String label = record.getNormalizedLabel();
+        if (!label.equals(replacement.getNormalizedLabel())) {
+            throw new IllegalArgumentException("Can't replace a " + record.getLabel() + " record by a " + replacement.getLabel() + " one");
+        }
+
+        List<JCampRecord> list = records.getOrDefault(label, Collections.emptyList());
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == record) {
+                list.set(i, replacement);
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Get all record keys. Used to know which keys are defined in this container.
      * @return a non-modifiable set of all defined (normalized) keys.
      */
     public Set<String> allRecordKeys() {
+        if (frozenLabels != null) {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<String> iterator() {
+                    return Arrays.asList(frozenLabels).iterator();
+                }
+
+                @Override
+                public int size() {
+                    return frozenLabels.length;
+                }
+
+                @Override
+                public boolean contains(Object label) {
+                    return records.containsKey(label);
+                }
+            };
+        }
         return Collections.unmodifiableSet(records.keySet());
     }
 
+    /**
+     * Iterate over all records. Records are grouped by label, labels are returned in the order they were first added.
+     *
+     * @return a stream of all records stored in this container.
+     */
+    public Stream<JCampRecord> records() {
+        if (frozenLabels != null) {
+            return Arrays.stream(frozenLabels).map(records::get).flatMap(List::stream);
+        }
+        return records.values().stream().flatMap(List::stream);
+    }
+
+    /**
+     * Make this container and its content immutable, then compact it. Records are kept in an immutable hash table,
+     * each label with an exactly sized list, and all pending data lines are joined. Frozen containers can be shared by
+     * several threads without locking, once safely published, for example through a concurrent map.
+     * <p>
+     * Modifying a frozen container fails with an {@link IllegalStateException}. Freezing twice has no effect.
+     *
+     * @return this container.
+     */
+    public JCampContainer freeze() {
+        if (frozenLabels != null) {
+            return this;
+        }
+
+        String[] labels = records.keySet().toArray(new String[0]);
+        Map<String, List<JCampRecord>> copies = new LinkedHashMap<>(records.size() * 2);
+        for (String label : labels) {
+            List<JCampRecord> list = records.get(label);
+            list.forEach(JCampRecord::freeze);
+            copies.put(label, List.copyOf(list));
+        }
+        records = Map.copyOf(copies);
+        frozenLabels = labels;
+        return this;
+    }
+
+    /**
+     * @return the name of the file this container was parsed from, or null when unknown.
+     */
+    public String getSourceName() {
+        return null;
+    }
+
+    /**
+     * @return true when this container can't be modified anymore.
+     */
+    public boolean isFrozen() {
+        return frozenLabels != null;
+    }
+
+    /**
+     * @throws IllegalStateException when this container is frozen
+     */
+    protected void checkNotFrozen() {
+        if (frozenLabels != null) {
+            throw new IllegalStateException(getClass().getSimpleName() + " is frozen, it can't be modified");
+        }
+    }
+
     /**
      * @param label a well known record label
      * @return true when the container has at least a record for this label.
@@ -34,7 +34,8 @@ import java.util.stream.Stream;
  * In this case, the XYDATA is shown as if it was a single page.
  */
 public class JCampDocument extends JCampContainer {
-    private final List<JCampBlock> blocks = new ArrayList<>();
+    private List<JCampBlock> blocks = new ArrayList<>();
+    private String sourceName;
 
     /**
      * @return the document title.
@@ -68,15 +69,45 @@ public class JCampDocument extends JCampContainer {
         return getOrDefault(Label.BLOCKS, "1").getInt();
     }
 
+    @Override
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * @param sourceName the name of the file this document is parsed from, reported in Flight Recorder events
+     */
+    public void setSourceName(String sourceName) {
+        checkNotFrozen();
+        this.sourceName = sourceName;
+    }
+
     /**
      * Add a block to this document.
      *
      * @param block the block to add
      */
     public void addBlock(JCampBlock block) {
+        checkNotFrozen();
         this.blocks.add(block);
     }
 
+    /**
+     * Freeze this document, its blocks and their pages, see {@link JCampContainer#freeze()}. This is done once parsing is
+     * complete, to keep documents in a cache for example.
+     *
+     * @return this document.
+     */
+    @Override
+    public JCampDocument freeze() {
+        if (!isFrozen()) {
+            blocks.forEach(JCampBlock::freeze);
+            blocks = List.copyOf(blocks);
+            super.freeze();
+        }
+        return this;
+    }
+
     /**
      * Check whether the number of contained blocks matches with the number of declared blocks.
      * When they don't, it means the document is either invalid or still being build.
@@ -17,30 +17,135 @@ package com.nanalysis.jcamp.model;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import com.nanalysis.jcamp.jfr.DataDecodeEvent;
+import com.nanalysis.jcamp.jfr.PageDecodeEvent;
 import com.nanalysis.jcamp.parser.ASDFParser;
+import com.nanalysis.jcamp.parser.ParseListener;
+import com.nanalysis.jcamp.parser.PointCountPolicy;
+import com.nanalysis.jcamp.util.JCampUtil;
 
 /**
  * A JCamp data page. A page starts when the "PAGE" LDR is first seen, and end with a specific "END" tag.
  * It can contain several attributes, including the "DATA TABLE".
  */
 public class JCampPage extends JCampContainer {
+    private static final Pattern SYMBOLS_PATTERN = Pattern.compile("\\((.+)\\+\\+\\((.)\\.\\.(.)\\)\\).*");
+
     protected final JCampContainer parent;
+    private Supplier<double[]> decodedData;
+    private volatile double[] preloadedData; // all decoded values, see preloadedSize for the declared number of points
+    private int preloadedSize;
+    private boolean dataDiscarded;
 
     public JCampPage(JCampContainer parent) {
         this.parent = parent;
     }
 
+    @Override
+    public String getSourceName() {
+        return parent == null ? null : parent.getSourceName();
+    }
+
+    /**
+     * Attach already decoded values to this page. When set, they are returned by {@link #toArray()} instead of decoding
+     * the "DATA TABLE" content, and writers encode them instead of copying the data table text.
+     * <p>
+     * This can be used to fill pages built from scratch, or to transcode parsed pages: {@code page.setDecodedData(page.toArray())}.
+     * The array isn't copied.
+     *
+     * @param decodedData the page values, already multiplied by their factor, or null to use the data table content again
+     */
+    public void setDecodedData(double[] decodedData) {
+        checkNotFrozen();
+        this.decodedData = decodedData == null ? null : decodedData::clone;
+    }
+
+    /**
+     * Attach a source of already decoded values to this page, for example to load them lazily.
+     *
+     * @param decodedData a supplier returning a new array of values on each call, or null to use the data table content again
+     * @see #setDecodedData(double[])
+     */
+    public void setDecodedData(Supplier<double[]> decodedData) {
+        checkNotFrozen();
+        this.decodedData = decodedData;
+    }
+
+    /**
+     * @return true when values were attached to this page using {@link #setDecodedData(double[])}.
+     */
+    public boolean hasDecodedData() {
+        return decodedData != null;
+    }
+
+    /**
+     * Decode the page data now and keep the result, so that {@link #toArray()} returns a copy of it instead of decoding again.
+     * This is used to decode pages ahead of time, for example from another thread while parsing continues.
+     * Values attached with {@link #setDecodedData(double[])} have precedence, and writers still copy the data table text.
+     * All decoded values are kept, {@link #toArray(ParseListener, PointCountPolicy)} applies its policy to them.
+     *
+     * @param listener the listener to notify of decoding time and number of points
+     */
+    public void preloadData(ParseListener listener) {
+        if (preloadedData == null) {
+            preload(new Decoder(this), listener);
+        }
+    }
+
+    /**
+     * Prepare decoding the page data from another thread, with the same effect as {@link #preloadData(ParseListener)}.
+     * Everything needed, including the parent block attributes, is read when calling this method: the returned task
+     * doesn't access this page or its parent, which can still be modified by the parsing thread while it runs.
+     *
+     * @param listener the listener to notify of decoding time and number of points
+     * @return a task decoding and keeping the page data
+     * @throws IllegalArgumentException when the data table header or the variable attributes are invalid
+     */
+    public Runnable preloadTask(ParseListener listener) {
+        Decoder decoder = new Decoder(this);
+        return () -> {
+            if (preloadedData == null) {
+                preload(decoder, listener);
+            }
+        };
+    }
+
+    private void preload(Decoder decoder, ParseListener listener) {
+        double[] values = decoder.decode(listener, PointCountPolicy.KEEP);
+        preloadedSize = decoder.size;
+        preloadedData = values;
+    }
+
+    /**
+     * @return true when the page data was decoded ahead of time using {@link #preloadData(ParseListener)}.
+     */
+    public boolean isDataPreloaded() {
+        return preloadedData != null;
+    }
+
+    /**
+     * Release the data table content, keeping only its header line. This is used when streaming pages, once their values
+     * were handed over: the document structure is kept, but data isn't accumulated in memory.
+     * Decoding isn't possible anymore, unless values were attached or preloaded.
+     */
+    public void discardData() {
+        checkNotFrozen();
+        getDataRecord().keepFirstLine();
+        dataDiscarded = true;
+    }
+
     /**
      * Get the page header, as defined by the "DATA TABLE" first line.
      * 
      * @return the header
      */
     public String getHeader() {
-        return get(Label.DATA_TABLE).getString().lines().findFirst()
+        return getDataRecord().getString().lines().findFirst()
             .orElseThrow(() -> new IllegalStateException("Empty data header!"));
     }
 
@@ -50,10 +155,26 @@ public class JCampPage extends JCampContainer {
      * @return a list of lines, without end-of-line characters.
      */
     public List<String> getDataLines() {
-        return get(Label.DATA_TABLE).getString().lines().skip(1)
+        return getDataRecord().getString().lines().skip(1)
             .collect(Collectors.toList());
     }
 
+    /**
+     * @return the record holding the page data, "DATA TABLE" for NTUPLES pages.
+     */
+    protected JCampRecord getDataRecord() {
+        return get(Label.DATA_TABLE);
+    }
+
+    /**
+     * @param data a data record content
+     * @return the index where data lines start, after the header line.
+     */
+    static int dataStart(String data) {
+        int headerEnd = data.indexOf('\n');
+        return headerEnd < 0 ? data.length() : headerEnd + 1;
+    }
+
     /**
      * Extract the symbol defining the page.
      * Ex: for "##PAGE=N=1", the symbol would be "N"
@@ -133,7 +254,7 @@ public class JCampPage extends JCampContainer {
      * @param symbol the symbol
      * @return the form used to store the data represented by this symbol.
      */
-    protected Form getFormForSymbol(String symbol) {
+    public Form getFormForSymbol(String symbol) {
         return Form.fromString(getAttributeForSymbol(Label.VAR_FORM, symbol, "AFFN"));
     }
 
@@ -143,7 +264,7 @@ public class JCampPage extends JCampContainer {
      * @param symbol the variable symbol
      * @return the number of dimensions.
      */
-    protected int getDimensionForSymbol(String symbol) {
+    public int getDimensionForSymbol(String symbol) {
         String dim = getAttributeForSymbol(Label.VAR_DIM, symbol, "1");
         return Integer.parseInt(dim);
     }
@@ -154,7 +275,7 @@ public class JCampPage extends JCampContainer {
      * @param symbol the variable symbol
      * @return the scaling factor.
      */
-    protected double getFactorForSymbol(String symbol) {
+    public double getFactorForSymbol(String symbol) {
         String factor = getAttributeForSymbol(Label.FACTOR, symbol, "1");
         return Double.parseDouble(factor);
     }
@@ -165,7 +286,7 @@ public class JCampPage extends JCampContainer {
      * @param symbol the variable symbol
      * @return the first value.
      */
-    protected double getFirstForSymbol(String symbol) {
+    public double getFirstForSymbol(String symbol) {
         String first = getAttributeForSymbol(Label.FIRST, symbol, "0");
         return Double.parseDouble(first);
     }
@@ -176,60 +297,60 @@ public class JCampPage extends JCampContainer {
      * @param symbol the variable symbol
      * @return the last value.
      */
-    protected double getLastForSymbol(String symbol) {
+    public double getLastForSymbol(String symbol) {
         String last = getAttributeForSymbol(Label.LAST, symbol, "0");
         return Double.parseDouble(last);
     }
 
     /**
      * Read the page data content. Both AFFN and ASDF storage forms are supported.
+     * When decoded data was attached to this page, a copy of it is returned instead.
      *
      * @return the page data.
      */
     public double[] toArray() {
-        String[] symbols = extractSymbols(getHeader());
-        String xSymbol = symbols[0];
-        String ySymbol = symbols[1];
-
-        int size = getDimensionForSymbol(xSymbol);
-
-        Form form = getFormForSymbol(ySymbol);
-        if (form == Form.AFFN) {
-            return affnToArray(ySymbol, size);
-        } else if (form == Form.ASDF) {
-            return asdfToArray(ySymbol, size);
-        } else {
-            throw new IllegalArgumentException("Unsupported symbol form, only AFFN and ASDF are supported: " + form);
-        }
+        return toArray(ParseListener.NONE);
     }
 
-    private double[] asdfToArray(String ySymbol, int size) {
-        double yFactor = getFactorForSymbol(ySymbol);
-
-        int[] values = new ASDFParser(size).parse(getDataLines());
-        return Arrays.stream(values).mapToDouble(i -> i * yFactor).toArray();
+    /**
+     * Read the page data content, reporting decoding time and number of points to a listener.
+     * Nothing is reported when decoded data was attached to this page, or when it was preloaded.
+     *
+     * @param listener the listener to notify
+     * @return the page data.
+     * @see #toArray()
+     */
+    public double[] toArray(ParseListener listener) {
+        return toArray(listener, PointCountPolicy.PAD);
     }
 
-    private double[] affnToArray(String ySymbol, int size) {
-        double[] array = new double[size];
-        List<String> lines = getDataLines();
-
-        double factor = getFactorForSymbol(ySymbol);
-
-        int index = 0;
-        for (String line : lines) {
-            String[] values = line.split("\\s+");
-
-            // first value is X corresponding to first Y value, others are Y values
-            // ignore it for now, assume all lines are in order
-            for (int i = 1; i < values.length; i++) {
-                array[index++] = Double.parseDouble(values[i]) * factor;
-            }
+    /**
+     * Read the page data content, when the data table may not hold the declared number of points.
+     * The listener is notified of decoding time, number of points and tolerated point count mismatches.
+     *
+     * @param listener the listener to notify
+     * @param policy what to return when the number of points differs from the declared one
+     * @return the page data.
+     * @see #toArray(ParseListener)
+     */
+    public double[] toArray(ParseListener listener, PointCountPolicy policy) {
+        if (decodedData != null) {
+            return decodedData.get();
         }
 
-        return array;
+        double[] preloaded = preloadedData;
+        if (preloaded != null) {
+            return Arrays.copyOf(preloaded, policy.resultSize(preloadedSize, preloaded.length));
+        }
+        if (dataDiscarded) {
+            throw new IllegalStateException("Page data was discarded, it can't be decoded anymore");
+        }
+        return decode(listener, policy);
     }
 
+    private double[] decode(ParseListener listener, PointCountPolicy policy) {
+        return new Decoder(this).decode(listener, policy);
+    }
 
     /**
      * Extract symbols from a DATA TABLE or XYDATA header.
@@ -246,8 +367,7 @@ public class JCampPage extends JCampContainer {
      * @throws IllegalArgumentException when the symbols differs in the second part, for example "(R..I)"
      */
     public static String[] extractSymbols(String header) {
-        Pattern pattern = Pattern.compile("\\((.+)\\+\\+\\((.)\\.\\.(.)\\)\\).*");
-        Matcher matcher = pattern.matcher(header);
+        Matcher matcher = SYMBOLS_PATTERN.matcher(header);
         if (matcher.matches()) {
             String x = matcher.group(1);
             String y = matcher.group(2);
@@ -260,4 +380,127 @@ public class JCampPage extends JCampContainer {
 
         throw new IllegalArgumentException("Unsupported data header format: " + header);
     }
+
+    /**
+     * Everything needed to decode a page data table, read from the page and its parent when created.
+     */
+    private static final class Decoder {
+        private final String sourceName;
+        private final String dataType;
+        private final String page;
+        private final Form form;
+        private final int size;
+        private final double factor;
+        private final String data;
+
+        private Decoder(JCampPage page) {
+            String[] symbols = extractSymbols(page.getHeader());
+            this.size = page.getDimensionForSymbol(symbols[0]);
+            this.form = page.getFormForSymbol(symbols[1]);
+            if (form != Form.AFFN && form != Form.ASDF) {
+                throw new IllegalArgumentException("Unsupported symbol form, only AFFN and ASDF are supported: " + form);
+            }
+            this.factor = page.getFactorForSymbol(symbols[1]);
+            this.data = page.getDataRecord().getString();
+            this.sourceName = page.getSourceName();
+            this.dataType = page.parent instanceof JCampBlock ? ((JCampBlock) page.parent).getDataType().name() : null;
+            this.page = page.optional(Label.PAGE).map(JCampRecord::getString).orElse("");
+        }
+
+        private double[] decode(ParseListener listener, PointCountPolicy policy) {
+            PageDecodeEvent event = new PageDecodeEvent();
+            event.begin();
+            long start = listener != ParseListener.NONE ? System.nanoTime() : 0;
+
+            double[] values = form == Form.AFFN ? affnToArray(policy, listener) : asdfToArray(policy, listener);
+
+            if (listener != ParseListener.NONE) {
+                listener.time(ParseListener.Phase.DECODE, System.nanoTime() - start);
+                listener.count(ParseListener.Counter.POINTS, values.length);
+            }
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.fileName = sourceName;
+                event.dataType = dataType;
+                event.page = page;
+                event.form = form.name();
+                event.pointCount = values.length;
+                event.byteCount = dataSize();
+                event.commit();
+            }
+            return values;
+        }
+
+        private double[] asdfToArray(PointCountPolicy policy, ParseListener listener) {
+            // timings and points are reported for the whole page, only mismatches are forwarded
+            ParseListener mismatches = listener == ParseListener.NONE ? ParseListener.NONE : new ParseListener() {
+                @Override
+                public void pointCountMismatch(int expected, int decoded) {
+                    listener.pointCountMismatch(expected, decoded);
+                }
+            };
+            return ASDFParser.decode(data, dataStart(data), data.length(), size, factor, policy, mismatches, sourceName);
+        }
+
+        private double[] affnToArray(PointCountPolicy policy, ParseListener listener) {
+            DataDecodeEvent event = new DataDecodeEvent();
+            event.begin();
+            double[] array = new double[size];
+
+            // scan lines in place: the first value is X corresponding to first Y value, others are Y values
+            // ignore it for now, assume all lines are in order
+            int index = 0;
+            boolean lineStart = true;
+            int position = dataStart(data);
+            while (position < data.length()) {
+                char c = data.charAt(position);
+                if (c == '\n') {
+                    lineStart = true;
+                    position++;
+                } else if (isAffnSeparator(c)) {
+                    position++;
+                } else {
+                    int end = position + 1;
+                    while (end < data.length() && data.charAt(end) != '\n' && !isAffnSeparator(data.charAt(end))) {
+                        end++;
+                    }
+                    if (!lineStart) {
+                        if (index == array.length) {
+                            if (policy == PointCountPolicy.PAD) {
+                                throw new IllegalArgumentException("Too many values, was expecting " + size + " points");
+                            }
+                            array = Arrays.copyOf(array, Math.max(16, array.length * 2));
+                        }
+                        array[index++] = JCampUtil.parseDouble(data, position, end) * factor;
+                    }
+                    lineStart = false;
+                    position = end;
+                }
+            }
+
+            int length = policy.resultSize(size, index);
+            if (index != size) {
+                listener.pointCountMismatch(size, index);
+            }
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.fileName = sourceName;
+                event.form = Form.AFFN.name();
+                event.pointCount = index;
+                event.byteCount = dataSize();
+                event.commit();
+            }
+            return length == array.length ? array : Arrays.copyOf(array, length);
+        }
+
+        private long dataSize() {
+            return data.length() - dataStart(data);
+        }
+
+        private static boolean isAffnSeparator(char c) {
+            return c == ' ' || c == '\t' || c == '\r' || c == ',';
+        }
+    }
 }
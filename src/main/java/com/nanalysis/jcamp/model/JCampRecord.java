@@ -33,8 +33,10 @@ import com.nanalysis.jcamp.util.JCampUtil;
 public class JCampRecord {
     private final int lineNumber;
     private final String label;
-    private String data = "";
+    // a String, or a StringBuilder while multi-line data is being accumulated, converted on next access
+    private CharSequence data = "";
     private String comment = "";
+    private boolean frozen;
 
     public JCampRecord(String label, String data) {
         this(-1, label, data);
@@ -50,6 +52,19 @@ public class JCampRecord {
         this.data = data;
     }
 
+    /**
+     * Create a fully defined record, for example when restoring a previously parsed document.
+     *
+     * @param lineNumber the line where the record appeared in the source document, or -1
+     * @param label the record label
+     * @param data the record data, eventually on several lines
+     * @param comment the record comment, or an empty string
+     */
+    public JCampRecord(int lineNumber, String label, String data, String comment) {
+        this(lineNumber, label, data);
+        this.comment = comment;
+    }
+
     /**
      * The line where this record appeared in the source JCamp document.
      * For multi-line records, this is the line where the label appeared.
@@ -90,7 +105,34 @@ public class JCampRecord {
      * @return the record data as it appeared in the source document, without any modification.
      */
     public String getString() {
-        return data;
+        if (data instanceof StringBuilder) {
+            data = data.toString();
+        }
+        return (String) data;
+    }
+
+    /**
+     * Make this record immutable: pending data lines are joined, and parsing more data fails. Frozen records can be
+     * shared by several threads once safely published.
+     */
+    public void freeze() {
+        if (frozen) {
+            // may be shared by several threads: don't write anything
+            return;
+        }
+        getString();
+        if (comment.isEmpty()) {
+            // a single empty comment shared by all records
+            comment = "";
+        }
+        frozen = true;
+    }
+
+    /**
+     * @return true when this record can't be modified anymore.
+     */
+    public boolean isFrozen() {
+        return frozen;
     }
 
     /**
@@ -99,7 +141,7 @@ public class JCampRecord {
      * @return the record data as a list of strings.
      */
     public List<String> getStrings() {
-        return Arrays.stream(data.split(","))
+        return Arrays.stream(getString().split(","))
             .map(String::trim)
             .collect(Collectors.toList());
     }
@@ -194,25 +236,81 @@ public class JCampRecord {
      * @param text some text to parse
      */
     public void parseData(String text) {
-        String value = text.trim();
-        String comment = "";
-        if (value.contains(JCampParser.COMMENT_PREFIX)) {
-            String[] valueWithComment = value.split("\\$\\$", 2);
-            value = valueWithComment[0].trim();
-            comment = valueWithComment[1].trim();
+        parseData(text, 0, text.length());
+    }
+
+    /**
+     * Parse a data line from a part of a larger text, without extracting it first.
+     *
+     * @param text some text containing the line to parse
+     * @param start the index of the first character of the line
+     * @param end the index after the last character of the line
+     * @see #parseData(String)
+     */
+    public void parseData(CharSequence text, int start, int end) {
+        if (frozen) {
+            throw new IllegalStateException("Record " + label + " is frozen, its data can't be modified");
+        }
+
+        int first = start;
+        int last = end;
+        while (first < last && text.charAt(first) <= ' ') {
+            first++;
+        }
+        while (last > first && text.charAt(last - 1) <= ' ') {
+            last--;
+        }
+
+        int commentStart = indexOfComment(text, first, last);
+        if (commentStart >= 0) {
+            String value = text.subSequence(first, commentStart).toString().trim();
+            appendData(value, 0, value.length());
+            String comment = text.subSequence(commentStart + JCampParser.COMMENT_PREFIX.length(), last).toString().trim();
+            if (!comment.isEmpty()) {
+                if (!this.comment.isEmpty()) {
+                    this.comment += "\n";
+                }
+                this.comment += comment;
+            }
+        } else {
+            appendData(text, first, last);
         }
+    }
 
-        if (!this.data.isEmpty()) {
-            this.data += "\n";
+    private void appendData(CharSequence value, int start, int end) {
+        if (data.length() == 0) {
+            data = value.subSequence(start, end).toString();
+        } else {
+            // accumulate lines in a builder, concatenating strings would be quadratic on large data tables
+            if (!(data instanceof StringBuilder)) {
+                data = new StringBuilder(data);
+            }
+            ((StringBuilder) data).append('\n').append(value, start, end);
         }
-        this.data += value;
+    }
 
-        if (!this.comment.isEmpty() && !comment.isEmpty()) {
-            this.comment += "\n";
+    /**
+     * Drop all data lines but the first one, for data records whose content was already consumed.
+     */
+    void keepFirstLine() {
+        if (frozen) {
+            throw new IllegalStateException("Record " + label + " is frozen, its data can't be modified");
+        }
+        String value = getString();
+        int lineEnd = value.indexOf('\n');
+        if (lineEnd >= 0) {
+            data = value.substring(0, lineEnd);
         }
-        this.comment += comment;
     }
 
+    private static int indexOfComment(CharSequence text, int start, int end) {
+        for (int i = start; i + 1 < end; i++) {
+            if (text.charAt(i) == '$' && text.charAt(i + 1) == '$') {
+                return i;
+            }
+        }
+        return -1;
+    }
 
     /**
      * Parse a labelled data record, with or without comment, without the "##" prefix.
@@ -15,9 +15,6 @@
  */
 package com.nanalysis.jcamp.model;
 
-import java.util.List;
-import java.util.stream.Collectors;
-
 /**
  * Represents a single XYDATA record as a page.
  * This may be an oversimplification, but is working to open benchtop data.
@@ -28,15 +25,8 @@ public class XYDataPage extends JCampPage {
     }
 
     @Override
-    public String getHeader() {
-        return get(Label.XYDATA).getString().lines().findFirst()
-            .orElseThrow(() -> new IllegalStateException("Empty data header!"));
-    }
-
-    @Override
-    public List<String> getDataLines() {
-        return get(Label.XYDATA).getString().lines().skip(1)
-            .collect(Collectors.toList());
+    protected JCampRecord getDataRecord() {
+        return get(Label.XYDATA);
     }
 
     @Override
@@ -50,18 +40,57 @@ public class XYDataPage extends JCampPage {
     }
 
     @Override
-    protected Form getFormForSymbol(String symbol) {
-        // TODO ADSF support for XYDATA blocks - does this exist? then which parameter defines this form?
-        return Form.AFFN; // default in case it is not specified
+    public Form getFormForSymbol(String symbol) {
+        // XYDATA doesn't declare its form, detect it from the first data line instead.
+        String data = getDataRecord().getString();
+        int start = dataStart(data);
+        if (start >= data.length()) {
+            return Form.AFFN;
+        }
+
+        int end = data.indexOf('\n', start);
+        String firstLine = data.substring(start, end < 0 ? data.length() : end);
+        return isAffnLine(firstLine) ? Form.AFFN : Form.ASDF;
     }
 
     @Override
-    protected int getDimensionForSymbol(String symbol) {
+    public int getDimensionForSymbol(String symbol) {
         return parent.getOrDefault(Label.NPOINTS, "0").getInt();
     }
 
     @Override
-    protected double getFactorForSymbol(String symbol) {
+    public double getFactorForSymbol(String symbol) {
         return parent.getOrDefault(symbol + "FACTOR", "1").getDouble();
     }
+
+    @Override
+    public double getFirstForSymbol(String symbol) {
+        return parent.getOrDefault("FIRST" + symbol, "0").getDouble();
+    }
+
+    @Override
+    public double getLastForSymbol(String symbol) {
+        return parent.getOrDefault("LAST" + symbol, "0").getDouble();
+    }
+
+    /**
+     * AFFN lines only contain numbers separated by whitespace or commas. ASDF lines contain compression characters, and
+     * don't need separators at all.
+     *
+     * @param line a data line
+     * @return true when the line is in AFFN form.
+     */
+    static boolean isAffnLine(String line) {
+        String trimmed = line.trim();
+        boolean separated = false;
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c == ' ' || c == '\t' || c == ',') {
+                separated = true;
+            } else if ((c < '0' || c > '9') && c != '.' && c != '+' && c != '-' && c != 'E' && c != 'e') {
+                return false;
+            }
+        }
+        return separated;
+    }
 }
@@ -16,12 +16,21 @@
 package com.nanalysis.jcamp.parser;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+
+import com.nanalysis.jcamp.jfr.DataDecodeEvent;
+import com.nanalysis.jcamp.util.JCampUtil;
 
 /**
  * ASDF (ASCII Squeeze Difference Form) parser.
+ * <p>
+ * Lines are scanned in place: apart from the result array, decoding doesn't create any object.
+ * A parser instance decodes a single block of values, and isn't thread safe. {@link #decode(CharSequence, int, int, int, double, ParseListener)}
+ * can be called from any thread, it decodes values in a per-thread scratch buffer.
+ * <p>
+ * The buffer is sized from the declared number of points, and doubles when more values are found. The result is then
+ * trimmed or padded according to a {@link PointCountPolicy}.
  */
 public class ASDFParser {
     private final static String POSITIVE_SQZ = "@ABCDEFGHI";
@@ -30,8 +39,20 @@ public class ASDFParser {
     private final static String NEGATIVE_DIF = "%jklmnopqr";
     private final static String DUP = "?STUVWXYZs";
 
-    // tokenize on first numerical value, then each time a special ASDF char is found: alpha, @ and %.
-    private final static Pattern TOKENIZER = Pattern.compile("([\\d.]+)|([A-Za-z@%]\\d*)");
+    // ASDF characters: token type, first digit value and sign, indexed by character
+    private final static int ASCII_SIZE = 128;
+    private final static TokenType[] TYPES = new TokenType[ASCII_SIZE];
+    private final static int[] FIRST_DIGITS = new int[ASCII_SIZE];
+    private final static boolean[] NEGATIVES = new boolean[ASCII_SIZE];
+
+    static {
+        // negative tables first, so that '@' and '%' are positive
+        register(NEGATIVE_SQZ, TokenType.SQZ, true);
+        register(NEGATIVE_DIF, TokenType.DIF, true);
+        register(POSITIVE_SQZ, TokenType.SQZ, false);
+        register(POSITIVE_DIF, TokenType.DIF, false);
+        register(DUP, TokenType.DUP, false);
+    }
 
     enum TokenType {
         SQZ, DIF, DUP, NUMERICAL
@@ -41,16 +62,123 @@ public class ASDFParser {
         SQZ, DIF
     }
 
-    private final int[] data;
+    // scratch integer buffers are kept per thread, up to this number of values
+    private final static int MAX_RETAINED_SCRATCH = 1 << 20;
+    private final static int[] NO_SCRATCH = new int[0];
+    private final static ThreadLocal<int[]> SCRATCH = ThreadLocal.withInitial(() -> NO_SCRATCH);
+
+    // buffer growth, the maximum is the largest array size supported by JVMs
+    private final static int MIN_CAPACITY = 16;
+    private final static int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private int[] data;
+    private final int size;
+    private final PointCountPolicy policy;
+    private final ParseListener listener;
+    private String sourceName;
     private boolean xMatchesIndex;
     private int index;
     private Mode mode;
 
+    // current token, as found by nextToken()
+    private int tokenStart;
+    private int tokenEnd;
+    private TokenType tokenType;
+
     public ASDFParser(int size) {
-        this.data = new int[size];
+        this(size, ParseListener.NONE);
+    }
+
+    /**
+     * @param size the expected number of values
+     * @param listener receives the number of decoded points and the decoding time
+     */
+    public ASDFParser(int size, ParseListener listener) {
+        this(size, PointCountPolicy.PAD, listener);
+    }
+
+    /**
+     * @param size the expected number of values
+     * @param policy what to return when the number of values differs
+     * @param listener receives the number of decoded points, the decoding time and point count mismatches
+     */
+    public ASDFParser(int size, PointCountPolicy policy, ParseListener listener) {
+        this(new int[size], size, policy, listener);
+    }
+
+    private ASDFParser(int[] buffer, int size, PointCountPolicy policy, ParseListener listener) {
+        this.data = buffer;
+        this.size = size;
+        this.policy = policy;
+        this.listener = listener;
         this.xMatchesIndex = true;
     }
 
+    /**
+     * Decode a complete ASDF block to scaled values. Integer values are decoded in a per-thread scratch buffer,
+     * so that the returned array is the only allocation.
+     *
+     * @param text the text containing ASDF lines, for example a "DATA TABLE" record content
+     * @param start the index of the first character to parse
+     * @param end the index after the last character to parse
+     * @param size the expected number of values
+     * @param factor the factor applied to each integer value
+     * @param listener receives the number of decoded points and the decoding time
+     * @return the decoded values, multiplied by the factor.
+     * @see #parse(CharSequence, int, int)
+     */
+    public static double[] decode(CharSequence text, int start, int end, int size, double factor, ParseListener listener) {
+        return decode(text, start, end, size, factor, PointCountPolicy.PAD, listener);
+    }
+
+    /**
+     * Decode a complete ASDF block to scaled values, see {@link #decode(CharSequence, int, int, int, double, ParseListener)}.
+     *
+     * @param policy what to return when the number of values differs from the expected size
+     * @param listener receives the number of decoded points, the decoding time and point count mismatches
+     * @return the decoded values, multiplied by the factor.
+     */
+    public static double[] decode(CharSequence text, int start, int end, int size, double factor, PointCountPolicy policy,
+                                  ParseListener listener) {
+        return decode(text, start, end, size, factor, policy, listener, null);
+    }
+
+    /**
+     * Decode a complete ASDF block to scaled values, see {@link #decode(CharSequence, int, int, int, double, ParseListener)}.
+     *
+     * @param policy what to return when the number of values differs from the expected size
+     * @param listener receives the number of decoded points, the decoding time and point count mismatches
+     * @param sourceName the name of the file containing the values, reported in Flight Recorder events, or null
+     * @return the decoded values, multiplied by the factor.
+     */
+    public static double[] decode(CharSequence text, int start, int end, int size, double factor, PointCountPolicy policy,
+                                  ParseListener listener, String sourceName) {
+        int[] scratch = SCRATCH.get();
+        if (scratch.length < size) {
+            scratch = new int[size];
+        }
+
+        // taken out while in use, a listener may decode another block from this thread
+        SCRATCH.set(NO_SCRATCH);
+        ASDFParser parser = new ASDFParser(scratch, size, policy, listener);
+        parser.sourceName = sourceName;
+        try {
+            parser.parseText(text, start, end);
+
+            double[] values = new double[policy.resultSize(size, parser.index)];
+            int count = Math.min(parser.index, values.length);
+            for (int i = 0; i < count; i++) {
+                values[i] = parser.data[i] * factor;
+            }
+            return values;
+        } finally {
+            // the buffer may have grown while decoding
+            if (parser.data.length <= MAX_RETAINED_SCRATCH) {
+                SCRATCH.set(parser.data);
+            }
+        }
+    }
+
     protected int[] getData() {
         return this.data;
     }
@@ -64,24 +192,114 @@ public class ASDFParser {
      * @return the corresponding integer values.
      */
     public int[] parse(List<String> lines) {
-        if (index != 0) {
-            throw new IllegalStateException("Trying to reuse a parser that has already consumed data!");
-        }
+        checkUnused();
 
+        DataDecodeEvent event = new DataDecodeEvent();
+        event.begin();
+        long start = listener != ParseListener.NONE ? System.nanoTime() : 0;
         for (String line : lines) {
             try {
-                parseSingleLine(line);
+                parseSingleLine(line, 0, line.length());
             } catch (RuntimeException e) {
                 throw new IllegalArgumentException("Unable to parse line: " + line, e);
             }
         }
 
-        if (index != data.length) {
+        complete(start);
+        event.end();
+        if (event.shouldCommit()) {
+            commit(event, lines.stream().mapToLong(String::length).sum());
+        }
+        return result();
+    }
+
+    /**
+     * Parse a complete ASDF block, from multi-line text. Lines are trimmed, and empty lines are ignored.
+     *
+     * @param text the text containing ASDF lines, for example a "DATA TABLE" record content
+     * @param start the index of the first character to parse
+     * @param end the index after the last character to parse
+     * @return the corresponding integer values.
+     * @see #parse(List)
+     */
+    public int[] parse(CharSequence text, int start, int end) {
+        parseText(text, start, end);
+        return result();
+    }
+
+    private void parseText(CharSequence text, int start, int end) {
+        checkUnused();
+
+        DataDecodeEvent event = new DataDecodeEvent();
+        event.begin();
+        long startTime = listener != ParseListener.NONE ? System.nanoTime() : 0;
+        int lineStart = start;
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && text.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+
+            int first = lineStart;
+            int last = lineEnd;
+            while (first < last && Character.isWhitespace(text.charAt(first))) {
+                first++;
+            }
+            while (last > first && Character.isWhitespace(text.charAt(last - 1))) {
+                last--;
+            }
+            if (first < last) {
+                try {
+                    parseSingleLine(text, first, last);
+                } catch (RuntimeException e) {
+                    throw new IllegalArgumentException("Unable to parse line: " + text.subSequence(first, last), e);
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        complete(startTime);
+        event.end();
+        if (event.shouldCommit()) {
+            commit(event, end - start);
+        }
+    }
+
+    /**
+     * @return the decoded values, trimmed or padded according to the policy.
+     */
+    private int[] result() {
+        int length = policy.resultSize(size, index);
+        return length == data.length ? data : Arrays.copyOf(data, length);
+    }
+
+    private void checkUnused() {
+        if (index != 0) {
+            throw new IllegalStateException("Trying to reuse a parser that has already consumed data!");
+        }
+    }
+
+    private void complete(long start) {
+        // fails when too many values aren't accepted
+        policy.resultSize(size, index);
+        if (index != size) {
             // This happens on some data, from cascade's spike-based export, mostly on FIDs.
             // Best guess is that this export don't write trailing zeros...
-            System.out.println("Missing data, was expecting " + data.length + " points, read only " + index);
+            listener.pointCountMismatch(size, index);
+        }
+
+        if (listener != ParseListener.NONE) {
+            listener.time(ParseListener.Phase.DECODE, System.nanoTime() - start);
+            listener.count(ParseListener.Counter.POINTS, index);
         }
-        return data;
+    }
+
+    private void commit(DataDecodeEvent event, long byteCount) {
+        event.fileName = sourceName;
+        event.form = "ASDF";
+        event.pointCount = index;
+        event.byteCount = byteCount;
+        event.commit();
     }
 
     /**
@@ -90,70 +308,143 @@ public class ASDFParser {
      * @param line a line of text in ASDF format
      */
     protected void parseSingleLine(String line) {
-        List<String> tokens = tokenize(line);
-        if (tokenType(tokens.get(0)) != TokenType.NUMERICAL) {
-            throw new IllegalArgumentException("Expected to start with a numerical token, received: " + tokens.get(0));
+        parseSingleLine(line, 0, line.length());
+    }
+
+    private void parseSingleLine(CharSequence line, int start, int end) {
+        if (!nextToken(line, start, end)) {
+            throw new IllegalArgumentException("Unable to tokenize line: " + line.subSequence(start, end));
+        }
+        if (tokenType != TokenType.NUMERICAL) {
+            throw new IllegalArgumentException("Expected to start with a numerical token, received: " + currentToken(line));
         }
 
-        int x = intValue(tokens.get(0));
-        int startAt = 1; // ignore the first token, it corresponds to X value
+        double xValue = JCampUtil.parseDouble(line, tokenStart, tokenEnd);
+        int x = (int) Math.round(xValue);
 
         // some implementations don't repeat the previous value, even if the spec says they should.
         // let's try to detect them when their x value indicates the next index
         // x can be previous index when last token of previous line was of DIF type, to allow for repeating the last value (Y-check)
-        xMatchesIndex = xMatchesIndex && ((x == index) || (mode == Mode.DIF && x == index - 1));
+        // only integral x values are considered: real abscissa values can be rounded to the index by chance
+        xMatchesIndex = xMatchesIndex && xValue == x && ((x == index) || (mode == Mode.DIF && x == index - 1));
         boolean shouldSkipYCheck = xMatchesIndex && (x == index);
 
+        // ignore the first token, it corresponds to X value
+        boolean hasToken = nextToken(line, tokenEnd, end);
+
         // when a line ends on DIF mode, the next line is supposed to repeat the same value. (Y value check)
-        if (mode == Mode.DIF && tokens.size() > 1 && index > 1 && !shouldSkipYCheck) {
-            String token = tokens.get(1);
-            if (tokenType(token) != TokenType.SQZ) {
-                throw new IllegalArgumentException("Expected a SQZ token to start a line after a DIF, received: " + token);
+        if (mode == Mode.DIF && hasToken && index > 1 && !shouldSkipYCheck) {
+            if (tokenType != TokenType.SQZ) {
+                throw new IllegalArgumentException("Expected a SQZ token to start a line after a DIF, received: " + currentToken(line));
             }
 
-            int value = intValue(token);
+            int value = tokenValue(line);
             if (value != data[index - 1]) {
                 throw new IllegalStateException(
                     "Check failed, value after last DIF isn't what expected. Received: " + value + " but expected " + data[index - 1]);
             }
 
-            startAt = 2; // check done, ignore this token, value already consumed.
+            // check done, ignore this token, value already consumed.
+            hasToken = nextToken(line, tokenEnd, end);
         }
 
-        for (int i = startAt; i < tokens.size(); i++) {
-            String token = tokens.get(i);
-            TokenType type = tokenType(token);
-            int value = intValue(token);
-            if (type == TokenType.SQZ) { // normal "squeezed" value
-                data[index] = value;
+        for (; hasToken; hasToken = nextToken(line, tokenEnd, end)) {
+            TokenType type = tokenType;
+            int value = tokenValue(line);
+            if (type == TokenType.SQZ || type == TokenType.NUMERICAL) { // normal "squeezed" value, or PAC/AFFN value
+                append(value);
                 mode = Mode.SQZ;
-                index++;
             } else if (type == TokenType.DIF && index > 0) { // differential value
-                data[index] = data[index - 1] + value;
+                append(data[index - 1] + value);
                 mode = Mode.DIF;
-                index++;
             } else if (type == TokenType.DUP && index > 0) { // duplicate value
                 int copies = value - 1; // duplicate count include already written value
                 if (mode == Mode.SQZ) { // duplicate previous value
                     for (int r = 0; r < copies; r++) {
-                        data[index] = data[index - 1];
-                        index++;
+                        append(data[index - 1]);
                     }
                 } else if (mode == Mode.DIF && index > 1) { // duplicate difference between values
                     int diff = data[index - 1] - data[index - 2];
                     for (int r = 0; r < copies; r++) {
-                        data[index] = data[index - 1] + diff;
-                        index++;
+                        append(data[index - 1] + diff);
                     }
                 } else {
-                    throw new IllegalArgumentException("Unexpected DUP token, current mode is " + mode + ": " + token);
+                    throw new IllegalArgumentException("Unexpected DUP token, current mode is " + mode + ": " + currentToken(line));
                 }
-            } else if (type == TokenType.NUMERICAL) {
-                throw new IllegalArgumentException("Unexpected numerical token: " + token);
             } else if (index == 0) {
-                throw new IllegalArgumentException("Unexpected " + type + " token for first value: " + token);
+                throw new IllegalArgumentException("Unexpected " + type + " token for first value: " + currentToken(line));
+            }
+        }
+    }
+
+    private void append(int value) {
+        if (index == data.length) {
+            grow();
+        }
+        data[index++] = value;
+    }
+
+    private void grow() {
+        if (policy == PointCountPolicy.PAD && index >= size) {
+            // fail early, rather than decoding values that will be rejected
+            throw new IllegalArgumentException("Too many values, was expecting " + size + " points");
+        }
+        if (data.length == MAX_CAPACITY) {
+            throw new IllegalArgumentException("Too many values, more than " + MAX_CAPACITY + " points");
+        }
+        data = Arrays.copyOf(data, (int) Math.min(MAX_CAPACITY, Math.max(MIN_CAPACITY, 2L * data.length)));
+    }
+
+    /**
+     * Find the next token: a numerical value with an optional PAC sign, or a special ASDF character followed by digits.
+     * Other characters, such as separators, are skipped.
+     *
+     * @return true when a token was found, false at end of line.
+     */
+    private boolean nextToken(CharSequence line, int position, int end) {
+        for (int i = position; i < end; i++) {
+            char c = line.charAt(i);
+            if (isNumberChar(c) || ((c == '+' || c == '-') && i + 1 < end && isNumberChar(line.charAt(i + 1)))) {
+                tokenStart = i;
+                tokenEnd = i + 1;
+                while (tokenEnd < end && isNumberChar(line.charAt(tokenEnd))) {
+                    tokenEnd++;
+                }
+                tokenType = TokenType.NUMERICAL;
+                return true;
+            } else if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || c == '@' || c == '%') {
+                tokenStart = i;
+                tokenEnd = i + 1;
+                while (tokenEnd < end && isDigit(line.charAt(tokenEnd))) {
+                    tokenEnd++;
+                }
+                tokenType = TYPES[c] != null ? TYPES[c] : TokenType.NUMERICAL;
+                return true;
             }
         }
+        return false;
+    }
+
+    /**
+     * Converts the current token to an integer. ASDF tokens are made of a special char indicating both the token type,
+     * the first digit value and its sign, followed by other digits.
+     */
+    private int tokenValue(CharSequence line) {
+        if (tokenType == TokenType.NUMERICAL) {
+            // may be formatted as a floating point number
+            return (int) Math.round(JCampUtil.parseDouble(line, tokenStart, tokenEnd));
+        }
+
+        char first = line.charAt(tokenStart);
+        long value = FIRST_DIGITS[first];
+        for (int i = tokenStart + 1; i < tokenEnd; i++) {
+            value = value * 10 + (line.charAt(i) - '0');
+        }
+        return (int) (NEGATIVES[first] ? -value : value);
+    }
+
+    private String currentToken(CharSequence line) {
+        return line.subSequence(tokenStart, tokenEnd).toString();
     }
 
     /**
@@ -164,10 +455,8 @@ public class ASDFParser {
      */
     protected List<String> tokenize(String line) {
         List<String> tokens = new ArrayList<>();
-
-        Matcher matcher = TOKENIZER.matcher(line);
-        while (matcher.find()) {
-            tokens.add(matcher.group(0));
+        for (int position = 0; nextToken(line, position, line.length()); position = tokenEnd) {
+            tokens.add(currentToken(line));
         }
 
         if (tokens.isEmpty()) {
@@ -189,82 +478,49 @@ public class ASDFParser {
         }
 
         char first = token.charAt(0);
-        if (POSITIVE_SQZ.indexOf(first) >= 0 || NEGATIVE_SQZ.indexOf(first) >= 0)
-            return TokenType.SQZ;
-        if (POSITIVE_DIF.indexOf(first) >= 0 || NEGATIVE_DIF.indexOf(first) >= 0)
-            return TokenType.DIF;
-        if (DUP.indexOf(first) >= 0)
-            return TokenType.DUP;
-        return TokenType.NUMERICAL;
+        return first < ASCII_SIZE && TYPES[first] != null ? TYPES[first] : TokenType.NUMERICAL;
     }
 
     /**
      * Converts a token to an integer.
-     * 
+     *
      * @param token an ASDF token
      * @return the corresponding integer.
      */
     protected int intValue(String token) {
-        try {
-            return Integer.parseInt(asdfToAscii(token));
-        } catch (NumberFormatException e) {
-            // maybe the integer was formatted as a floating point number?
-            return (int) Math.round(doubleValue(token));
-        }
+        tokenType = tokenType(token);
+        tokenStart = 0;
+        tokenEnd = token.length();
+        return tokenValue(token);
     }
 
-
     /**
      * Converts a token to a double. This makes sense for the first token, which is not supposed to be in ASDF form.
-     * 
+     *
      * @param token an ASDF token or a direct numerical token
      * @return the corresponding double.
      */
     protected double doubleValue(String token) {
-        return Double.parseDouble(asdfToAscii(token));
-    }
-
-    /**
-     * ASDF tokens are made of a special char indicating both the token type, the first digit value and its sign, followed by other digits in ASCII.
-     * This converts the whole token to an ASCII string.
-     *
-     * @param token an ASDF token
-     * @return the corresponding first digit in ASCII with an optional sign.
-     */
-    private String asdfToAscii(String token) {
-        if (token.isEmpty()) {
-            throw new IllegalArgumentException("Empty token!");
+        if (tokenType(token) == TokenType.NUMERICAL) {
+            return JCampUtil.parseDouble(token, 0, token.length());
         }
-        if (token.length() == 1)
-            return convertFirstChar(token.charAt(0));
+        return intValue(token);
+    }
 
-        return convertFirstChar(token.charAt(0)) + token.substring(1);
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
 
-    /**
-     * ASDF tokens are made of a special char indicating both the token type, the first digit value and its sign, followed by other digits in ASCII.
-     * This converts only the first special character into an ASCII digit with an optional minus sign for negative numbers.
-     * 
-     * @param firstChar the first character of a ASDF token
-     * @return the corresponding first digit in ASCII with an optional sign.
-     */
-    private String convertFirstChar(char firstChar) {
-        String[] positives = {POSITIVE_SQZ, POSITIVE_DIF, DUP};
-        for (String positive : positives) {
-            int index = positive.indexOf(firstChar);
-            if (index >= 0) {
-                return String.valueOf(index);
-            }
-        }
+    private static boolean isNumberChar(char c) {
+        return isDigit(c) || c == '.';
+    }
 
-        String[] negatives = {NEGATIVE_SQZ, NEGATIVE_DIF};
-        for (String negative : negatives) {
-            int index = negative.indexOf(firstChar);
-            if (index >= 0) {
-                return String.valueOf(-index);
-            }
+    private static void register(String characters, TokenType type, boolean negative) {
+        for (int i = 0; i < characters.length(); i++) {
+            char c = characters.charAt(i);
+            TYPES[c] = type;
+            FIRST_DIGITS[c] = i;
+            NEGATIVES[c] = negative;
         }
-
-        return String.valueOf(firstChar);
     }
 }
@@ -0,0 +1,172 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe listener aggregating counters and phase timings, so that they can be exported to a metrics system.
+ * <p>
+ * Timings are recorded in log-linear histograms: percentiles are approximated within about 3%, using constant memory
+ * whatever the number of samples.
+ */
+public class AggregatingParseListener implements ParseListener {
+    private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+    private final Map<Phase, Histogram> timings = new EnumMap<>(Phase.class);
+
+    public AggregatingParseListener() {
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new LongAdder());
+        }
+        for (Phase phase : Phase.values()) {
+            timings.put(phase, new Histogram());
+        }
+    }
+
+    @Override
+    public void count(Counter counter, long value) {
+        counters.get(counter).add(value);
+    }
+
+    @Override
+    public void time(Phase phase, long nanos) {
+        timings.get(phase).record(nanos);
+    }
+
+    /**
+     * @param counter a counter
+     * @return the sum of all increments received for this counter.
+     */
+    public long getCount(Counter counter) {
+        return counters.get(counter).sum();
+    }
+
+    /**
+     * @param phase a phase
+     * @return the number of timings received for this phase.
+     */
+    public long getSampleCount(Phase phase) {
+        return timings.get(phase).count.sum();
+    }
+
+    /**
+     * @param phase a phase
+     * @return the total time spent in this phase, in nanoseconds.
+     */
+    public long getTotalNanos(Phase phase) {
+        return timings.get(phase).total.sum();
+    }
+
+    /**
+     * @param phase a phase
+     * @return the longest time spent in this phase, in nanoseconds, or 0 when there is no sample.
+     */
+    public long getMaxNanos(Phase phase) {
+        return timings.get(phase).max.get();
+    }
+
+    /**
+     * Get a timing percentile, for example 50 for the median or 99 for the 99th percentile.
+     *
+     * @param phase a phase
+     * @param percentile the percentile, between 0 and 100
+     * @return the approximate time below which this percentage of samples fall, in nanoseconds, or 0 when there is no sample.
+     */
+    public long getPercentileNanos(Phase phase, double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile should be between 0 and 100, received: " + percentile);
+        }
+        return timings.get(phase).percentile(percentile);
+    }
+
+    /**
+     * Reset all counters and timings. Values reported concurrently may be lost.
+     */
+    public void reset() {
+        counters.values().forEach(LongAdder::reset);
+        timings.values().forEach(Histogram::reset);
+    }
+
+    /**
+     * Log-linear histogram: values are grouped by power of two, each power being divided in 16 linear buckets.
+     */
+    static class Histogram {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long value) {
+            long positive = Math.max(0, value);
+            buckets.incrementAndGet(bucketIndex(positive));
+            count.increment();
+            total.add(positive);
+            max.accumulate(positive);
+        }
+
+        long percentile(double percentile) {
+            long sampleCount = count.sum();
+            if (sampleCount == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * sampleCount));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(bucketMiddle(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets.set(i, 0);
+            }
+            count.reset();
+            total.reset();
+            max.reset();
+        }
+
+        static int bucketIndex(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+            return (shift + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        static long bucketMiddle(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int shift = index / SUB_BUCKETS - 1;
+            long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+            return lower + ((1L << shift) >> 1);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * A read-only view of ASCII bytes as characters, decoded while being read. JCamp-DX documents are ASCII, so parsing from
+ * bytes doesn't need a decoded copy of the whole input: only records extracted as strings are copied.
+ * Use {@link #of(ByteBuffer)} to fall back to UTF-8 decoding when the bytes aren't all ASCII.
+ */
+final class AsciiCharSequence implements CharSequence {
+    private final ByteBuffer buffer;
+    // backing array of heap buffers, read directly as it is faster, or null
+    private final byte[] array;
+    private final int offset;
+    private final int length;
+
+    /**
+     * @param buffer the bytes, from its position to its limit. Its position and limit aren't modified.
+     */
+    AsciiCharSequence(ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+        this.array = this.buffer.hasArray() ? this.buffer.array() : null;
+        this.offset = this.buffer.hasArray() ? this.buffer.arrayOffset() : 0;
+        this.length = this.buffer.remaining();
+    }
+
+    /**
+     * View bytes as characters, decoding them as UTF-8 like files and streams are. ASCII bytes are viewed in place, the
+     * whole content is decoded to a string only when a byte is outside of the ASCII range.
+     *
+     * @param buffer the bytes, from its position to its limit. Its position and limit aren't modified.
+     * @return the bytes as characters, either an {@link AsciiCharSequence} or a {@link String}
+     */
+    static CharSequence of(ByteBuffer buffer) {
+        AsciiCharSequence ascii = new AsciiCharSequence(buffer);
+        return ascii.isAscii() ? ascii : StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+    }
+
+    private AsciiCharSequence(AsciiCharSequence parent, int start, int length) {
+        this.buffer = parent.buffer;
+        this.array = parent.array;
+        this.offset = parent.offset + start;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        Objects.checkIndex(index, length);
+        return (char) (byteAt(index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        Objects.checkFromToIndex(start, end, length);
+        return new AsciiCharSequence(this, start, end - start);
+    }
+
+    /**
+     * @return the index of the first occurrence of a character at or after from, or -1.
+     */
+    int indexOf(char c, int from) {
+        if (c > 0xFF) {
+            return -1;
+        }
+        byte b = (byte) c;
+        for (int i = Math.max(from, 0); i < length; i++) {
+            if (byteAt(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first occurrence of an ASCII text at or after from, or -1.
+     */
+    int indexOf(String text, int from) {
+        if (text.isEmpty()) {
+            return Math.min(Math.max(from, 0), length);
+        }
+        char first = text.charAt(0);
+        for (int i = indexOf(first, from); i >= 0 && i + text.length() <= length; i = indexOf(first, i + 1)) {
+            if (regionMatches(i, text)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean regionMatches(int start, String text) {
+        for (int j = 1; j < text.length(); j++) {
+            if ((byteAt(start + j) & 0xFF) != text.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isAscii() {
+        for (int i = 0; i < length; i++) {
+            if (byteAt(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte byteAt(int index) {
+        return array != null ? array[offset + index] : buffer.get(offset + index);
+    }
+
+    @Override
+    public String toString() {
+        if (array != null) {
+            return new String(array, offset, length, StandardCharsets.ISO_8859_1);
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
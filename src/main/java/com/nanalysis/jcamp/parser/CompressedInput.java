@@ -0,0 +1,184 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Detects compressed inputs from their magic bytes, and decompresses them while they are read.
+ */
+final class CompressedInput {
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAGIC_LENGTH = 4;
+    private static final int GZIP_TRAILER_LENGTH = 8;
+    private static final long GZIP_SIZE_MODULO = 1L << 32;
+    // typical compression ratio of JCamp-DX text, used when the decompressed size isn't known
+    private static final int COMPRESSION_RATIO = 4;
+
+    enum Format {
+        PLAIN, GZIP, ZIP
+    }
+
+    private CompressedInput() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * @param header the first bytes of an input, eventually fewer than four
+     * @param length the number of bytes read
+     * @return the input format.
+     */
+    static Format detect(byte[] header, int length) {
+        if (length >= 2 && (header[0] & 0xFF) == 0x1F && (header[1] & 0xFF) == 0x8B) {
+            return Format.GZIP;
+        }
+        if (length >= 4 && header[0] == 'P' && header[1] == 'K' && header[2] == 3 && header[3] == 4) {
+            return Format.ZIP;
+        }
+        return Format.PLAIN;
+    }
+
+    /**
+     * @param input a stream positioned at the start of an input, it is read and reset
+     * @return the input format.
+     */
+    static Format detect(BufferedInputStream input) throws IOException {
+        byte[] header = new byte[MAGIC_LENGTH];
+        input.mark(MAGIC_LENGTH);
+        int length = input.readNBytes(header, 0, MAGIC_LENGTH);
+        input.reset();
+        return detect(header, length);
+    }
+
+    /**
+     * @param file a file, only its first bytes are read
+     * @return the file format.
+     */
+    static Format detect(Path file) throws IOException {
+        try (InputStream input = Files.newInputStream(file)) {
+            byte[] header = new byte[MAGIC_LENGTH];
+            return detect(header, input.readNBytes(header, 0, MAGIC_LENGTH));
+        }
+    }
+
+    /**
+     * Estimate the size of the document contained in a file, once decompressed. The size of GZIP files is read from their
+     * trailer, which records it modulo 4 GB: the smallest matching size larger than the compressed one is returned.
+     * Other compressed files are weighted by a typical compression ratio.
+     *
+     * @param file a file, only its first and last bytes are read
+     * @return the decompressed size, or the file size for plain files.
+     */
+    static long expandedSize(Path file) throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(MAGIC_LENGTH);
+            readFully(channel, header);
+
+            switch (detect(header.array(), header.position())) {
+                case GZIP:
+                    if (size < GZIP_TRAILER_LENGTH) {
+                        return size;
+                    }
+                    ByteBuffer trailer = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                    channel.position(size - Integer.BYTES);
+                    readFully(channel, trailer);
+                    long expanded = Integer.toUnsignedLong(trailer.getInt(0));
+                    while (expanded < size) {
+                        expanded += GZIP_SIZE_MODULO;
+                    }
+                    return expanded;
+                case ZIP:
+                    return size * COMPRESSION_RATIO;
+                default:
+                    return size;
+            }
+        } catch (UnsupportedOperationException e) {
+            // file systems without random access, such as ZIP file systems for compressed entries
+            return Files.size(file) * COMPRESSION_RATIO;
+        }
+    }
+
+    private static void readFully(SeekableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+            // until full, or the end of the file
+        }
+    }
+
+    /**
+     * Open the document contained in an input for reading lines, see {@link #open(InputStream)}. The document is decoded
+     * as UTF-8.
+     *
+     * @param input the input, closed with the returned reader, or immediately when opening fails
+     * @return a reader for the document.
+     * @throws IOException when the input can't be read, is corrupted, or when a ZIP archive doesn't contain any JCamp-DX
+     * entry
+     */
+    static BufferedReader openReader(InputStream input) throws IOException {
+        return new BufferedReader(new InputStreamReader(open(input), StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Open the document contained in an input: GZIP data is decompressed, and the first JCamp-DX entry of a ZIP archive
+     * is selected. Plain inputs are returned as they are, buffered.
+     *
+     * @param input the input, closed with the returned stream, or immediately when opening fails
+     * @return a stream reading the document.
+     * @throws IOException when the input can't be read, is corrupted, or when a ZIP archive doesn't contain any JCamp-DX
+     * entry
+     */
+    static InputStream open(InputStream input) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(input, BUFFER_SIZE);
+        try {
+            switch (detect(buffered)) {
+                case GZIP:
+                    return new GZIPInputStream(buffered, BUFFER_SIZE);
+                case ZIP:
+                    ZipInputStream zip = new ZipInputStream(buffered);
+                    for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                        if (!entry.isDirectory() && JCampBatchParser.isJCampFile(entry.getName())) {
+                            return zip;
+                        }
+                    }
+                    zip.close();
+                    throw new IOException("No JCamp-DX entry found in ZIP archive");
+                default:
+                    return buffered;
+            }
+        } catch (IOException | RuntimeException e) {
+            try {
+                buffered.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+}
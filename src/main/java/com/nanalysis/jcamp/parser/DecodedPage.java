@@ -0,0 +1,94 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import com.nanalysis.jcamp.model.JCampPage;
+import com.nanalysis.jcamp.model.Label;
+
+/**
+ * A page and its decoded values, as emitted by {@link JCampPagePublisher}.
+ */
+public class DecodedPage {
+    private final int blockIndex;
+    private final int pageIndex;
+    private final JCampPage page;
+    private final String pageSymbol;
+    private final String pageValue;
+    private final double[] values;
+
+    DecodedPage(int blockIndex, int pageIndex, JCampPage page, double[] values) {
+        this.blockIndex = blockIndex;
+        this.pageIndex = pageIndex;
+        this.page = page;
+        this.values = values;
+
+        // XYDATA pages have no PAGE record
+        boolean hasPage = page.contains(Label.PAGE);
+        this.pageSymbol = hasPage ? page.extractPageSymbol() : "";
+        this.pageValue = hasPage ? page.extractPageValue() : "";
+    }
+
+    /**
+     * @return the index of the block containing this page, in the document.
+     */
+    public int getBlockIndex() {
+        return blockIndex;
+    }
+
+    /**
+     * @return the index of this page, in its block.
+     */
+    public int getPageIndex() {
+        return pageIndex;
+    }
+
+    /**
+     * The page itself, with all its records and its parent block. Its data table content was discarded once decoded.
+     *
+     * @return the page.
+     */
+    public JCampPage getPage() {
+        return page;
+    }
+
+    /**
+     * @return the page symbol, for example "T1" for "##PAGE=T1=0.5", or an empty string for pages without PAGE record.
+     */
+    public String getPageSymbol() {
+        return pageSymbol;
+    }
+
+    /**
+     * @return the page value, for example "0.5" for "##PAGE=T1=0.5", or an empty string for pages without PAGE record.
+     */
+    public String getPageValue() {
+        return pageValue;
+    }
+
+    /**
+     * @return the page value parsed as a floating point number.
+     */
+    public double getPageValueAsNumber() {
+        return Double.parseDouble(pageValue);
+    }
+
+    /**
+     * @return the decoded page values. The array isn't copied.
+     */
+    public double[] getValues() {
+        return values;
+    }
+}
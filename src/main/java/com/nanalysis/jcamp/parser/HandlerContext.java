@@ -0,0 +1,214 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import static com.nanalysis.jcamp.parser.JCampParser.COMMENT_PREFIX;
+import static com.nanalysis.jcamp.parser.JCampParser.ENTRY_PREFIX;
+
+import com.nanalysis.jcamp.model.DataType;
+import com.nanalysis.jcamp.model.JCampRecord;
+import com.nanalysis.jcamp.model.Label;
+
+/**
+ * The state of a single parse call reporting events to a {@link JCampHandler}. Structure changes follow the same rules
+ * as the builders from {@link com.nanalysis.jcamp.parser.builder}, without building anything.
+ */
+final class HandlerContext {
+    private static final String END = "END";
+    private static final String END_OF_NTUPLES = "ENDNTUPLES";
+
+    private enum State {
+        HEADER, BLOCK, PAGE, XYDATA_PAGE, BETWEEN_BLOCKS, DONE
+    }
+
+    private final JCampHandler handler;
+
+    private State state = State.HEADER;
+    private boolean headerComplete;
+    private int declaredBlocks = 1;
+    private int blockCount;
+    private int pageCount;
+    private int lineNumber;
+    private int recordCount;
+    // record accumulating its data lines, reported once complete
+    private JCampRecord pendingRecord;
+    // true when lines belong to a data record, and are reported as they come
+    private boolean inData;
+
+    HandlerContext(JCampHandler handler) {
+        this.handler = handler;
+        handler.startDocument();
+    }
+
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Parse lines from a part of a text, without signaling the end of input.
+     */
+    void parseLines(CharSequence input, int start, int end) {
+        int position = start;
+        while (position < end) {
+            int lineEnd = ParseContext.lineEnd(input, position, end);
+            parseLine(input, position, lineEnd);
+            position = ParseContext.nextLine(input, lineEnd, end);
+        }
+    }
+
+    /**
+     * Signal the end of input: pending records, pages and blocks are completed.
+     */
+    void finish() {
+        completeRecord();
+        if (state == State.PAGE || state == State.XYDATA_PAGE) {
+            handler.endPage();
+            state = State.BLOCK;
+        }
+        if (state == State.BLOCK) {
+            handler.endBlock();
+        }
+        handler.endDocument();
+    }
+
+    void parseLine(CharSequence input, int start, int end) {
+        lineNumber++;
+
+        int first = start;
+        int last = end;
+        while (first < last && input.charAt(first) <= ' ') {
+            first++;
+        }
+        while (last > first && input.charAt(last - 1) <= ' ') {
+            last--;
+        }
+
+        if (first == last) {
+            return;
+        }
+
+        if (ParseContext.startsWith(input, first, last, ENTRY_PREFIX)) {
+            completeRecord();
+            recordCount++;
+            consume(JCampRecord.parse(lineNumber, input.subSequence(first + ENTRY_PREFIX.length(), last).toString()));
+        } else if (ParseContext.startsWith(input, first, last, COMMENT_PREFIX)) {
+            handler.comment(input.subSequence(first + COMMENT_PREFIX.length(), last).toString());
+        } else if (inData) {
+            handler.dataLine(input, first, last);
+        } else if (pendingRecord != null) {
+            pendingRecord.parseData(input, first, last);
+        }
+    }
+
+    private void completeRecord() {
+        if (pendingRecord != null) {
+            handler.record(pendingRecord);
+            pendingRecord = null;
+        }
+        inData = false;
+        if (state == State.XYDATA_PAGE) {
+            // XYDATA pages only contain the data record
+            handler.endPage();
+            state = State.BLOCK;
+        }
+    }
+
+    private void consume(JCampRecord record) {
+        String label = record.getNormalizedLabel();
+        switch (state) {
+            case HEADER:
+                if (END.equals(label)) {
+                    state = State.DONE;
+                } else if (headerComplete) {
+                    startBlock();
+                    consumeInBlock(record, label);
+                } else {
+                    consumeInHeader(record, label);
+                }
+                break;
+            case BETWEEN_BLOCKS:
+                startBlock();
+                consumeInBlock(record, label);
+                break;
+            case BLOCK:
+            case PAGE:
+                consumeInBlock(record, label);
+                break;
+            default:
+                throw new IllegalStateException("Line " + record.getLineNumber() + ", unexpected record: " + record.getLabel()
+                    + ", After document end!");
+        }
+    }
+
+    private void consumeInHeader(JCampRecord record, String label) {
+        if (Label.DATA_TYPE.normalized().equals(label)) {
+            headerComplete = DataType.fromString(record.getString()).isSingleBlock();
+        } else if (Label.BLOCKS.normalized().equals(label)) {
+            declaredBlocks = record.getInt();
+            headerComplete = true;
+        }
+        pendingRecord = record;
+    }
+
+    private void consumeInBlock(JCampRecord record, String label) {
+        if (Label.PAGE.normalized().equals(label)) {
+            if (state == State.PAGE) {
+                handler.endPage();
+            }
+            handler.startPage(pageCount++);
+            state = State.PAGE;
+            pendingRecord = record;
+        } else if (Label.XYDATA.normalized().equals(label)) {
+            if (state == State.PAGE) {
+                handler.endPage();
+            }
+            handler.startPage(pageCount++);
+            state = State.XYDATA_PAGE;
+            startData(record);
+        } else if (Label.DATA_TABLE.normalized().equals(label)) {
+            startData(record);
+        } else if (END_OF_NTUPLES.equals(label)) {
+            if (state == State.PAGE) {
+                handler.endPage();
+            }
+            state = State.BLOCK;
+        } else if (END.equals(label)) {
+            if (state == State.PAGE) {
+                handler.endPage();
+            }
+            handler.endBlock();
+            // same as the block builder: continue with the next block until the declared number is reached
+            state = blockCount < declaredBlocks ? State.BETWEEN_BLOCKS : State.HEADER;
+        } else {
+            pendingRecord = record;
+        }
+    }
+
+    private void startData(JCampRecord record) {
+        handler.record(record);
+        inData = true;
+    }
+
+    private void startBlock() {
+        handler.startBlock(blockCount++);
+        pageCount = 0;
+        state = State.BLOCK;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.model.JCampPage;
+
+/**
+ * Parses a JCamp-DX file while it is being written, for example by an instrument exporting an nD acquisition.
+ * <p>
+ * Each call to {@link #update()} reads only the bytes appended since the previous call, feeds complete lines to the
+ * builders, and returns the pages completed meanwhile. A page is complete once the record following its data table is
+ * written. The cost of an update is proportional to the new data, not to the file size. When the file shrinks, it is
+ * considered as rewritten and parsed again from the start.
+ * <p>
+ * Updates can be triggered by polling, or by a {@link java.nio.file.WatchService}. Instances aren't thread safe.
+ */
+public class IncrementalJCampParser {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final ParseListener listener;
+    private final List<JCampPage> completedPages = new ArrayList<>();
+
+    private ParseContext context;
+    private long offset;
+    // bytes of the last line, not terminated yet
+    private byte[] pending = new byte[0];
+    private int pendingLength;
+
+    public IncrementalJCampParser(Path file) {
+        this(file, ParseListener.NONE);
+    }
+
+    /**
+     * @param file the file to parse, it may not exist yet
+     * @param listener receives counters for each update: bytes, lines and records
+     */
+    public IncrementalJCampParser(Path file, ParseListener listener) {
+        this.file = file;
+        this.listener = listener;
+        reset();
+    }
+
+    /**
+     * @return the parsed file.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of bytes consumed from the file so far, including the last line when not terminated yet.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * The document parsed so far. It is updated by each call to {@link #update()}, and replaced when the file is rewritten.
+     *
+     * @return the document being built.
+     */
+    public JCampDocument getDocument() {
+        return context.getDocument();
+    }
+
+    /**
+     * Consume bytes appended to the file since the previous call.
+     *
+     * @return the pages completed by the new content, in order. Empty when nothing new was written.
+     * @throws IOException when the file can't be read
+     */
+    public List<JCampPage> update() throws IOException {
+        if (!Files.exists(file)) {
+            return List.of();
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < offset) {
+                // truncated: the file is being written again
+                reset();
+            }
+
+            channel.position(offset);
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            for (int read = channel.read(buffer); read > 0; read = channel.read(buffer)) {
+                offset += read;
+                buffer.flip();
+                consume(buffer);
+                buffer.clear();
+            }
+        }
+
+        List<JCampPage> pages = new ArrayList<>(completedPages);
+        completedPages.clear();
+        return pages;
+    }
+
+    /**
+     * Signal that the file is complete: its last line is parsed even without end-of-line, and its last page is
+     * completed even without following record.
+     *
+     * @return the pages completed by the end of file.
+     */
+    public List<JCampPage> finish() {
+        if (pendingLength > 0) {
+            parse(pending, 0, pendingLength);
+            pendingLength = 0;
+        }
+        context.finish();
+
+        List<JCampPage> pages = new ArrayList<>(completedPages);
+        completedPages.clear();
+        return pages;
+    }
+
+    private void reset() {
+        context = new ParseContext(ParseListener.NONE, completedPages::add);
+        context.getDocument().setSourceName(file.getFileName().toString());
+        completedPages.clear();
+        offset = 0;
+        pendingLength = 0;
+    }
+
+    private void consume(ByteBuffer buffer) {
+        byte[] bytes = buffer.array();
+        int length = buffer.limit();
+
+        // complete lines end with "\n", or "\r" when it's not the last byte: "\n" may follow in the next read
+        int lastLineEnd = -1;
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[i] == '\n' || (bytes[i] == '\r' && i < length - 1)) {
+                lastLineEnd = i;
+                break;
+            }
+        }
+
+        if (lastLineEnd < 0) {
+            append(bytes, 0, length);
+            return;
+        }
+
+        int start = 0;
+        if (pendingLength > 0) {
+            // complete the pending line first
+            int firstLineEnd = 0;
+            while (bytes[firstLineEnd] != '\n' && bytes[firstLineEnd] != '\r') {
+                firstLineEnd++;
+            }
+            if (firstLineEnd < lastLineEnd && bytes[firstLineEnd] == '\r' && bytes[firstLineEnd + 1] == '\n') {
+                firstLineEnd++;
+            }
+            append(bytes, 0, firstLineEnd + 1);
+            parse(pending, 0, pendingLength);
+            pendingLength = 0;
+            start = firstLineEnd + 1;
+        }
+        if (start <= lastLineEnd) {
+            parse(bytes, start, lastLineEnd + 1 - start);
+        }
+        append(bytes, lastLineEnd + 1, length - lastLineEnd - 1);
+    }
+
+    private void append(byte[] bytes, int start, int length) {
+        if (pendingLength + length > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(2 * pending.length, pendingLength + length));
+        }
+        System.arraycopy(bytes, start, pending, pendingLength, length);
+        pendingLength += length;
+    }
+
+    private void parse(byte[] bytes, int start, int length) {
+        // complete lines only: multi-byte characters are never split
+        String lines = new String(bytes, start, length, StandardCharsets.UTF_8);
+        int lineCount = context.getLineNumber();
+        int recordCount = context.getRecordCount();
+        context.parseLines(lines, 0, lines.length());
+
+        listener.count(ParseListener.Counter.BYTES, length);
+        listener.count(ParseListener.Counter.LINES, context.getLineNumber() - lineCount);
+        listener.count(ParseListener.Counter.RECORDS, context.getRecordCount() - recordCount);
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import com.nanalysis.jcamp.model.JCampDocument;
+
+/**
+ * Parses many JCamp-DX files concurrently.
+ * <p>
+ * Files are dispatched from a dedicated thread to an executor, which can be a fork-join pool, a fixed thread pool, or
+ * {@code Executors.newVirtualThreadPerTaskExecutor()} on JDK 21 and later. Memory is bounded by the total size of files
+ * being parsed, once decompressed for compressed files: a file is only dispatched when it fits in the remaining in-flight
+ * byte budget, or when nothing else is in flight. Each result, successful or not, is delivered to a callback as soon as
+ * its file is parsed.
+ */
+public class JCampBatchParser {
+    public static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 256L * 1024 * 1024;
+
+    private final Executor executor;
+    private final long maxInFlightBytes;
+    private final JCampParser parser;
+
+    public JCampBatchParser() {
+        this(ForkJoinPool.commonPool(), DEFAULT_MAX_IN_FLIGHT_BYTES, ParseListener.NONE);
+    }
+
+    /**
+     * @param executor the executor running parse tasks, it isn't shut down by this parser
+     * @param maxInFlightBytes the maximum total size of files being parsed at any time
+     * @param listener receives counters and timings for each parsed document, called concurrently
+     */
+    public JCampBatchParser(Executor executor, long maxInFlightBytes, ParseListener listener) {
+        if (executor == null) {
+            throw new IllegalArgumentException("An executor is required");
+        }
+        if (maxInFlightBytes < 1) {
+            throw new IllegalArgumentException("The in-flight byte budget should be positive, received: " + maxInFlightBytes);
+        }
+
+        this.executor = executor;
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.parser = new JCampParser(listener);
+    }
+
+    /**
+     * @return the maximum total size of files being parsed at any time.
+     */
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    /**
+     * Parse all JCamp-DX files found in a directory and its sub-directories, based on their extension: ".dx", ".jdx" or
+     * ".jcamp", eventually followed by ".gz" for compressed files.
+     *
+     * @param directory the directory to walk
+     * @param callback receives results as they complete, called concurrently from executor threads
+     * @return the running batch
+     * @throws IOException when the directory can't be opened
+     */
+    public Batch parseDirectory(Path directory, Consumer<Result> callback) throws IOException {
+        Stream<Path> files = Files.walk(directory)
+            .filter(Files::isRegularFile)
+            .filter(JCampBatchParser::isJCampFile);
+        return parse(files, callback);
+    }
+
+    /**
+     * Parse all JCamp-DX entries of a ZIP archive, without extracting them. Entries are decompressed concurrently while
+     * being parsed, and result paths belong to the archive file system. The archive is closed once the batch is done.
+     *
+     * @param archive the ZIP file
+     * @param callback receives results as they complete, called concurrently from executor threads
+     * @return the running batch
+     * @throws IOException when the archive can't be opened
+     */
+    public Batch parseArchive(Path archive, Consumer<Result> callback) throws IOException {
+        FileSystem zip = FileSystems.newFileSystem(archive, (ClassLoader) null);
+        try {
+            Stream<Path> files = Files.walk(zip.getPath("/"));
+            return parse(files.filter(Files::isRegularFile).filter(JCampBatchParser::isJCampFile), callback, zip);
+        } catch (IOException | RuntimeException e) {
+            zip.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Parse a stream of files. The stream is consumed lazily from a dispatcher thread, and closed once consumed.
+     * Files can belong to any file system, for example a ZIP archive.
+     *
+     * @param files the files to parse
+     * @param callback receives results as they complete, called concurrently from executor threads
+     * @return the running batch
+     */
+    public Batch parse(Stream<Path> files, Consumer<Result> callback) {
+        return parse(files, callback, null);
+    }
+
+    private Batch parse(Stream<Path> files, Consumer<Result> callback, Closeable resource) {
+        Batch batch = new Batch(callback, resource);
+        Thread dispatcher = new Thread(() -> batch.dispatch(files), "jcamp-batch-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        return batch;
+    }
+
+    static boolean isJCampFile(Path path) {
+        return isJCampFile(path.getFileName().toString());
+    }
+
+    static boolean isJCampFile(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - ".gz".length());
+        }
+        return name.endsWith(".dx") || name.endsWith(".jdx") || name.endsWith(".jcamp");
+    }
+
+    /**
+     * The outcome of parsing one file: either a document or the failure that prevented reading it.
+     */
+    public static class Result {
+        private final Path path;
+        private final JCampDocument document;
+        private final Exception error;
+
+        private Result(Path path, JCampDocument document, Exception error) {
+            this.path = path;
+            this.document = document;
+            this.error = error;
+        }
+
+        /**
+         * @return the parsed file.
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * @return true when the file was parsed successfully.
+         */
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * @return the parsed document
+         * @throws IllegalStateException when the file couldn't be parsed
+         */
+        public JCampDocument getDocument() {
+            if (error != null) {
+                throw new IllegalStateException("Unable to parse " + path, error);
+            }
+            return document;
+        }
+
+        /**
+         * @return the failure that prevented parsing the file, or null on success.
+         */
+        public Exception getError() {
+            return error;
+        }
+    }
+
+    /**
+     * A running batch, which can be awaited or cancelled.
+     */
+    public class Batch {
+        private final Consumer<Result> callback;
+        // closed once all files are parsed, or null
+        private final Closeable resource;
+        private final CountDownLatch done = new CountDownLatch(1);
+        // tasks not completed yet, plus one for the dispatcher until all files are submitted
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final AtomicInteger completed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final Object budgetLock = new Object();
+        private long inFlightBytes;
+        private volatile boolean cancelled;
+        // first failure of the callback, the file stream, the executor or closing the archive, later ones are suppressed
+        private final AtomicReference<Throwable> fatal = new AtomicReference<>();
+
+        private Batch(Consumer<Result> callback, Closeable resource) {
+            this.callback = callback;
+            this.resource = resource;
+        }
+
+        /**
+         * Stop dispatching files. Files already being parsed are completed, and their results delivered.
+         */
+        public void cancel() {
+            cancelled = true;
+            synchronized (budgetLock) {
+                budgetLock.notifyAll();
+            }
+        }
+
+        /**
+         * @return true when {@link #cancel()} was called, or when the callback failed.
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return true when all dispatched files were parsed and no more files will be dispatched.
+         */
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        /**
+         * @return the number of results delivered so far, including failures.
+         */
+        public int getCompletedCount() {
+            return completed.get();
+        }
+
+        /**
+         * @return the number of failures delivered so far.
+         */
+        public int getFailedCount() {
+            return failed.get();
+        }
+
+        /**
+         * Wait for this batch to be done.
+         *
+         * @throws InterruptedException when interrupted while waiting
+         * @throws ExecutionException when the callback, the file stream, the executor or closing the archive failed, the batch is cancelled then
+         */
+        public void await() throws InterruptedException, ExecutionException {
+            done.await();
+            checkFatal();
+        }
+
+        /**
+         * Wait for this batch to be done, at most the given time.
+         *
+         * @param timeout the maximum time to wait
+         * @param unit the timeout unit
+         * @return true when done, false if the timeout elapsed
+         * @throws InterruptedException when interrupted while waiting
+         * @throws ExecutionException when the callback, the file stream, the executor or closing the archive failed, the batch is cancelled then
+         */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException {
+            boolean finished = done.await(timeout, unit);
+            if (finished) {
+                checkFatal();
+            }
+            return finished;
+        }
+
+        private void checkFatal() throws ExecutionException {
+            Throwable cause = fatal.get();
+            if (cause != null) {
+                throw new ExecutionException("Batch parsing failed", cause);
+            }
+        }
+
+        private void dispatch(Stream<Path> files) {
+            try (files) {
+                Iterator<Path> iterator = files.iterator();
+                while (!cancelled && iterator.hasNext()) {
+                    Path path = iterator.next();
+                    long size;
+                    try {
+                        size = CompressedInput.expandedSize(path);
+                    } catch (IOException e) {
+                        deliver(new Result(path, null, e));
+                        continue;
+                    }
+
+                    if (!reserve(size)) {
+                        break;
+                    }
+                    pending.incrementAndGet();
+                    try {
+                        executor.execute(() -> parse(path, size));
+                    } catch (RuntimeException e) {
+                        pending.decrementAndGet();
+                        release(size);
+                        throw e;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            } catch (RuntimeException | Error e) {
+                fail(e);
+            } finally {
+                taskDone();
+            }
+        }
+
+        private void parse(Path path, long size) {
+            try {
+                if (!cancelled) {
+                    Result result;
+                    try {
+                        result = new Result(path, parse(path), null);
+                    } catch (IOException | RuntimeException e) {
+                        result = new Result(path, null, e);
+                    }
+                    deliver(result);
+                }
+            } catch (RuntimeException | Error e) {
+                fail(e);
+            } finally {
+                release(size);
+                taskDone();
+            }
+        }
+
+        private JCampDocument parse(Path path) throws IOException {
+            if (path.getFileSystem() == FileSystems.getDefault()) {
+                return parser.parse(path.toFile());
+            }
+            return parser.parse(Files.newInputStream(path), path.getFileName().toString(), null);
+        }
+
+        private void deliver(Result result) {
+            if (!result.isSuccess()) {
+                failed.incrementAndGet();
+            }
+            completed.incrementAndGet();
+            callback.accept(result);
+        }
+
+        private void fail(Throwable e) {
+            if (!fatal.compareAndSet(null, e)) {
+                Throwable first = fatal.get();
+                if (first != e) {
+                    first.addSuppressed(e);
+                }
+            }
+            cancel();
+        }
+
+        /**
+         * Wait until the file fits in the in-flight budget. Files larger than the whole budget are accepted alone.
+         *
+         * @return false when the batch was cancelled while waiting
+         */
+        private boolean reserve(long size) throws InterruptedException {
+            synchronized (budgetLock) {
+                while (!cancelled && inFlightBytes > 0 && inFlightBytes + size > maxInFlightBytes) {
+                    budgetLock.wait();
+                }
+                if (cancelled) {
+                    return false;
+                }
+                inFlightBytes += size;
+                return true;
+            }
+        }
+
+        private void release(long size) {
+            synchronized (budgetLock) {
+                inFlightBytes -= size;
+                budgetLock.notifyAll();
+            }
+        }
+
+        private void taskDone() {
+            if (pending.decrementAndGet() == 0) {
+                if (resource != null) {
+                    try {
+                        resource.close();
+                    } catch (IOException e) {
+                        fail(e);
+                    }
+                }
+                done.countDown();
+            }
+        }
+    }
+}
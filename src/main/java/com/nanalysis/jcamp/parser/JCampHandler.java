@@ -0,0 +1,104 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import com.nanalysis.jcamp.model.JCampRecord;
+
+/**
+ * Receives the structure and content of a document while it is parsed, without building a {@link com.nanalysis.jcamp.model.JCampDocument}.
+ * This lets integrators fill their own models, such as columnar stores or databases, directly from the input.
+ * <p>
+ * Events follow the document structure, with the same rules as the default builders:
+ * <pre>
+ * startDocument
+ *   record*                     document header
+ *   startBlock                  once the header is complete: after DATA TYPE for basic documents, after BLOCKS for LINK
+ *     record*                   block records
+ *     startPage                 on PAGE or XYDATA
+ *       record*                 page records, including the data record with its first line only
+ *       dataLine*               the following data lines, never accumulated
+ *     endPage                   on the next PAGE, on END NTUPLES, after XYDATA, or on END
+ *   endBlock                    on END
+ * endDocument                   at the end of input
+ * </pre>
+ * Records are reported once complete, multi-line values included. END and END NTUPLES records only delimit the structure
+ * and aren't reported. All methods do nothing by default.
+ */
+public interface JCampHandler {
+    /**
+     * Called before anything else.
+     */
+    default void startDocument() {
+    }
+
+    /**
+     * A complete record. For data records (DATA TABLE, XYDATA), the data only contains the variable list from the first
+     * line, such as "(X++(R..R)), XYDATA": the following lines are reported with {@link #dataLine(CharSequence, int, int)}.
+     *
+     * @param record the record, which can be kept
+     */
+    default void record(JCampRecord record) {
+    }
+
+    /**
+     * A comment line, starting with "$$".
+     *
+     * @param comment the comment, without the "$$" prefix
+     */
+    default void comment(String comment) {
+    }
+
+    /**
+     * @param blockIndex the index of the block starting, from 0
+     */
+    default void startBlock(int blockIndex) {
+    }
+
+    /**
+     * @param pageIndex the index of the page starting in the current block, from 0
+     */
+    default void startPage(int pageIndex) {
+    }
+
+    /**
+     * A data line from the current page, trimmed. The text is only valid during this call, it can be decoded in place
+     * with {@link ASDFParser} or {@link com.nanalysis.jcamp.util.JCampUtil#parseDouble(CharSequence, int, int)}.
+     *
+     * @param text some text containing the line
+     * @param start the index of the first character of the line
+     * @param end the index after the last character of the line
+     */
+    default void dataLine(CharSequence text, int start, int end) {
+    }
+
+    /**
+     * Called once all records and data lines of the current page were reported.
+     */
+    default void endPage() {
+    }
+
+    /**
+     * Called once all records and pages of the current block were reported.
+     */
+    default void endBlock() {
+    }
+
+    /**
+     * Called at the end of input.
+     */
+    default void endDocument() {
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampPage;
+
+/**
+ * Publishes the decoded pages of a JCamp-DX document while it is being parsed.
+ * <p>
+ * Each subscription parses the source from the start, on its own thread or on the given executor. A page is decoded and
+ * emitted as soon as its data table is complete, then its data table content is discarded. Parsing waits whenever the
+ * subscriber has no outstanding demand, so that a slow subscriber never forces the whole document into memory:
+ * files are read line by line, and only the document structure is kept.
+ * <p>
+ * Parsing errors, including pages that can't be decoded, are signaled with {@link Flow.Subscriber#onError(Throwable)}.
+ */
+public class JCampPagePublisher implements Flow.Publisher<DecodedPage> {
+    private final Source source;
+    private final Executor executor;
+
+    /**
+     * @param file a JCamp-DX file, read as UTF-8, eventually compressed
+     */
+    public JCampPagePublisher(Path file) {
+        this(file, null);
+    }
+
+    /**
+     * @param file a JCamp-DX file, read as UTF-8, eventually compressed
+     * @param executor the executor running subscriptions, or null to use a new thread for each one
+     */
+    public JCampPagePublisher(Path file, Executor executor) {
+        this(context -> {
+            context.getDocument().setSourceName(file.getFileName().toString());
+            try (BufferedReader reader = CompressedInput.openReader(Files.newInputStream(file))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    context.parseLine(line);
+                }
+                context.finish();
+            }
+        }, executor);
+    }
+
+    /**
+     * @param input a JCamp-DX document content
+     * @param executor the executor running subscriptions, or null to use a new thread for each one
+     */
+    public JCampPagePublisher(String input, Executor executor) {
+        this(context -> context.parseLines(input), executor);
+    }
+
+    private JCampPagePublisher(Source source, Executor executor) {
+        this.source = source;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super DecodedPage> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("A subscriber is required");
+        }
+
+        PageSubscription subscription = new PageSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        if (executor == null) {
+            Thread thread = new Thread(subscription::run, "jcamp-page-publisher");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            try {
+                executor.execute(subscription::run);
+            } catch (RejectedExecutionException e) {
+                subscription.terminate(e);
+            }
+        }
+    }
+
+    /**
+     * Feeds a parse context with the whole document.
+     */
+    private interface Source {
+        void parse(ParseContext context) throws IOException;
+    }
+
+    /**
+     * Thrown from the parsing thread to stop parsing once the subscription is cancelled.
+     */
+    private static class CancelledException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        CancelledException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private class PageSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super DecodedPage> subscriber;
+        private final Object lock = new Object();
+        private long demand;
+        private boolean cancelled;
+        private boolean invalidRequest;
+        private ParseContext context;
+
+        private PageSubscription(Flow.Subscriber<? super DecodedPage> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (lock) {
+                if (n <= 0) {
+                    // no more pages, an error is signaled instead
+                    invalidRequest = !cancelled;
+                    cancelled = true;
+                } else {
+                    // saturates: Long.MAX_VALUE means unbounded
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (lock) {
+                cancelled = true;
+                lock.notifyAll();
+            }
+        }
+
+        private void run() {
+            Exception error = null;
+            try {
+                if (!isCancelled()) {
+                    context = new ParseContext(ParseListener.NONE, this::emit);
+                    source.parse(context);
+                }
+            } catch (CancelledException e) {
+                // stopped on purpose
+            } catch (IOException | RuntimeException e) {
+                error = e;
+            }
+            terminate(error);
+        }
+
+        private void emit(JCampPage page) {
+            awaitDemand();
+
+            DecodedPage decoded = decode(page);
+            page.discardData();
+            subscriber.onNext(decoded);
+        }
+
+        private DecodedPage decode(JCampPage page) {
+            // getBlockCount() is the declared count, some blocks may not be parsed yet
+            List<JCampBlock> blocks = context.getDocument().blocks().collect(Collectors.toList());
+            for (int b = blocks.size() - 1; b >= 0; b--) {
+                JCampBlock block = blocks.get(b);
+                for (int p = block.getPageCount() - 1; p >= 0; p--) {
+                    if (block.page(p) == page) {
+                        return new DecodedPage(b, p, page, page.toArray());
+                    }
+                }
+            }
+            throw new IllegalStateException("Completed page not found in document");
+        }
+
+        private void awaitDemand() {
+            synchronized (lock) {
+                while (!cancelled && demand == 0) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for demand", e);
+                    }
+                }
+                if (cancelled) {
+                    throw new CancelledException();
+                }
+                if (demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+            }
+        }
+
+        private boolean isCancelled() {
+            synchronized (lock) {
+                return cancelled;
+            }
+        }
+
+        /**
+         * Signal completion or failure, unless the subscription was cancelled.
+         */
+        private void terminate(Exception error) {
+            synchronized (lock) {
+                if (invalidRequest) {
+                    invalidRequest = false;
+                    error = new IllegalArgumentException("The number of requested pages should be positive");
+                } else if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+            }
+
+            if (error != null) {
+                subscriber.onError(error);
+            } else {
+                subscriber.onComplete();
+            }
+        }
+    }
+}
@@ -15,54 +15,421 @@
  */
 package com.nanalysis.jcamp.parser;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
 
+import com.nanalysis.jcamp.jfr.ParseEvent;
 import com.nanalysis.jcamp.model.JCampDocument;
-import com.nanalysis.jcamp.model.JCampRecord;
-import com.nanalysis.jcamp.parser.builder.DocumentBuilder;
-import com.nanalysis.jcamp.parser.builder.JCampBuilder;
+import com.nanalysis.jcamp.model.JCampPage;
+import com.nanalysis.jcamp.parser.ParseListener.Counter;
+import com.nanalysis.jcamp.parser.ParseListener.Phase;
 
+/**
+ * JCamp-DX parser. It doesn't keep any state between calls, so that a single instance can be shared by several threads.
+ */
 public class JCampParser {
     public static final String ENTRY_PREFIX = "##";
     public static final String COMMENT_PREFIX = "$$";
 
-    private int lineNumber;
-    private JCampBuilder<?> currentBuilder;
-    private JCampRecord currentEntry;
+    private final ParseListener listener;
+    private final boolean timed;
+    private final Projection projection;
+    private final ParseLimits limits;
+    private final RecordPool pool;
+
+    public JCampParser() {
+        this(ParseListener.NONE);
+    }
+
+    /**
+     * @param listener receives counters and timings for each parsed document
+     */
+    public JCampParser(ParseListener listener) {
+        this(listener, Projection.ALL);
+    }
+
+    /**
+     * @param listener receives counters and timings for each parsed document
+     * @param projection the records and pages kept in parsed documents
+     */
+    public JCampParser(ParseListener listener, Projection projection) {
+        this(listener, projection, ParseLimits.NONE);
+    }
+
+    /**
+     * @param listener receives counters and timings for each parsed document
+     * @param projection the records and pages kept in parsed documents
+     * @param limits bounds on the content of parsed documents
+     */
+    public JCampParser(ParseListener listener, Projection projection, ParseLimits limits) {
+        this(listener, projection, limits, null);
+    }
+
+    /**
+     * @param listener receives counters and timings for each parsed document
+     * @param projection the records and pages kept in parsed documents
+     * @param limits bounds on the content of parsed documents
+     * @param pool shares equal header records between parsed documents, or null
+     */
+    public JCampParser(ParseListener listener, Projection projection, ParseLimits limits, RecordPool pool) {
+        if (projection == null) {
+            throw new IllegalArgumentException("A projection is required, use Projection.ALL to keep everything");
+        }
+        if (limits == null) {
+            throw new IllegalArgumentException("Limits are required, use ParseLimits.NONE to accept any document");
+        }
+
+        this.listener = listener;
+        this.timed = listener != ParseListener.NONE;
+        this.projection = projection;
+        this.limits = limits;
+        this.pool = pool;
+    }
+
+    /**
+     * @return the records and pages kept in parsed documents.
+     */
+    public Projection getProjection() {
+        return projection;
+    }
+
+    /**
+     * @return the bounds on the content of parsed documents.
+     */
+    public ParseLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * @return the pool sharing records between parsed documents, or null.
+     */
+    public RecordPool getPool() {
+        return pool;
+    }
 
+    /**
+     * Parse a file. GZIP files and ZIP archives are detected from their first bytes, and decompressed while being parsed.
+     * When limits are set, files are read line by line, so that oversized files are rejected without being read entirely.
+     *
+     * @param file the file to read
+     * @return the parsed document
+     * @throws IOException when the file can't be read
+     * @see #parse(InputStream)
+     */
     public JCampDocument parse(File file) throws IOException {
-        return parse(Files.readString(file.toPath()));
+        return parseDocument(pages -> parse(file, pages));
     }
 
     public JCampDocument parse(String input) {
-        DocumentBuilder documentBuilder = new DocumentBuilder();
-        this.currentBuilder = documentBuilder;
+        return parseDocument(pages -> parse(input, pages));
+    }
+
+    /**
+     * Parse a file that can be cancelled from another thread, reporting progress. The file is read line by line rather
+     * than as a whole, so that cancelling it stops reading as well.
+     *
+     * @param file the file to read, eventually compressed
+     * @param control cancels the parse and receives progress
+     * @return the parsed document
+     * @throws IOException when the file can't be read
+     * @throws java.util.concurrent.CancellationException when cancelled
+     */
+    public JCampDocument parse(File file, ParseControl control) throws IOException {
+        return parseDocument(pages -> parse(Files.newInputStream(file.toPath()), file.getName(), pages, control));
+    }
+
+    /**
+     * Parse a text that can be cancelled from another thread, reporting progress.
+     *
+     * @param input the document text
+     * @param control cancels the parse and receives progress
+     * @return the parsed document
+     * @throws java.util.concurrent.CancellationException when cancelled
+     */
+    public JCampDocument parse(String input, ParseControl control) {
+        return parseDocument(pages -> parse(input, pages, control));
+    }
+
+    /**
+     * Parse a stream that can be cancelled from another thread, reporting progress.
+     *
+     * @param input the stream to read, closed once the document is parsed or the parse cancelled
+     * @param control cancels the parse and receives progress
+     * @return the parsed document
+     * @throws IOException when the stream can't be read
+     * @throws java.util.concurrent.CancellationException when cancelled
+     * @see #parse(InputStream)
+     */
+    public JCampDocument parse(InputStream input, ParseControl control) throws IOException {
+        return parseDocument(pages -> parse(input, null, pages, control));
+    }
 
-        lineNumber = 0;
-        input.lines()
-            .map(String::trim)
-            .forEach(this::parseLine);
-        return documentBuilder.getObject();
+    /**
+     * Parse a document from bytes, for example a database BLOB or a message payload. JCamp-DX documents are ASCII: such
+     * bytes are scanned in place, the document text is never built as a whole. When a byte is outside of the ASCII range,
+     * the bytes are decoded as UTF-8 first, like files, streams and the output of {@link com.nanalysis.jcamp.writer.JCampWriter}.
+     *
+     * @param input the bytes containing the document
+     * @param offset the index of the document first byte
+     * @param length the document size, in bytes
+     * @return the parsed document
+     */
+    public JCampDocument parse(byte[] input, int offset, int length) {
+        return parse(ByteBuffer.wrap(input, offset, length));
     }
 
-    private void parseLine(String line) {
-        lineNumber++;
+    /**
+     * Parse a document from a buffer, heap or direct, from its position to its limit. The buffer position isn't modified.
+     * Bytes are decoded as with {@link #parse(byte[], int, int)}: in place when ASCII, as UTF-8 otherwise.
+     *
+     * @param input the buffer containing the document
+     * @return the parsed document
+     * @see #parse(byte[], int, int)
+     */
+    public JCampDocument parse(ByteBuffer input) {
+        return parseDocument(pages -> parse(AsciiCharSequence.of(input), pages));
+    }
 
-        if (line.isEmpty()) {
-            // skip empty lines
-            return;
+    /**
+     * Parse a file without building a document: its structure and content are reported to a handler instead. The file is
+     * read line by line, and data lines are never accumulated, so memory doesn't depend on the file size. The projection
+     * isn't applied: handlers select what they need. Compressed files are decompressed while being read.
+     *
+     * @param file the file to read
+     * @param handler receives events from the calling thread
+     * @throws IOException when the file can't be read
+     */
+    public void parse(File file, JCampHandler handler) throws IOException {
+        long start = timed ? System.nanoTime() : 0;
+        HandlerContext context = new HandlerContext(handler);
+        long charCount = 0;
+        try (BufferedReader reader = CompressedInput.openReader(Files.newInputStream(file.toPath()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                context.parseLine(line, 0, line.length());
+                charCount += line.length() + 1;
+            }
         }
+        context.finish();
+        report(context, charCount, start);
+    }
 
-        if (line.startsWith(ENTRY_PREFIX)) {
-            currentEntry = JCampRecord.parse(lineNumber, line.substring(2));
-            currentBuilder = currentBuilder.consume(currentEntry);
-        } else if (line.startsWith(COMMENT_PREFIX)) {
-            String comment = line.substring(2);
-            currentBuilder = currentBuilder.consumeComment(comment);
-        } else if (currentEntry != null) {
-            currentEntry.parseData(line);
+    /**
+     * Parse a text without building a document: its structure and content are reported to a handler instead. The
+     * projection isn't applied: handlers select what they need.
+     *
+     * @param input the text to parse
+     * @param handler receives events from the calling thread
+     */
+    public void parse(String input, JCampHandler handler) {
+        parse((CharSequence) input, handler);
+    }
+
+    /**
+     * Parse a buffer without building a document, from its position to its limit. The buffer position isn't modified.
+     *
+     * @param input the buffer containing the document, decoded as with {@link #parse(ByteBuffer)}
+     * @param handler receives events from the calling thread
+     * @see #parse(String, JCampHandler)
+     */
+    public void parse(ByteBuffer input, JCampHandler handler) {
+        parse(AsciiCharSequence.of(input), handler);
+    }
+
+    private void parse(CharSequence input, JCampHandler handler) {
+        long start = timed ? System.nanoTime() : 0;
+        HandlerContext context = new HandlerContext(handler);
+        context.parseLines(input, 0, input.length());
+        context.finish();
+        report(context, input.length(), start);
+    }
+
+    private void report(HandlerContext context, long byteCount, long start) {
+        if (timed) {
+            listener.time(Phase.RECORDS, System.nanoTime() - start);
         }
+        listener.count(Counter.BYTES, byteCount);
+        listener.count(Counter.LINES, context.getLineNumber());
+        listener.count(Counter.RECORDS, context.getRecordCount());
+    }
+
+    /**
+     * Parse only the header of a document: the records found before the first page or data table. Reading stops there,
+     * so the cost doesn't depend on the size of the data. For linked documents, the first block is included up to its
+     * first page. Compressed files are decompressed up to there. The listener receives counters for the header only.
+     *
+     * @param file the file to read
+     * @return a document without any page
+     * @throws IOException when the file can't be read
+     */
+    public JCampDocument parseHeader(File file) throws IOException {
+        long start = timed ? System.nanoTime() : 0;
+        ParseContext context = newContext(file.getName(), null, null);
+        long charCount = 0;
+        try (BufferedReader reader = CompressedInput.openReader(Files.newInputStream(file.toPath()))) {
+            String line;
+            while ((line = reader.readLine()) != null && !ParseContext.startsDataRecord(line)) {
+                context.parseLine(line);
+                charCount += line.length() + 1;
+            }
+        }
+        context.finish();
+
+        JCampDocument document = context.getDocument();
+        context.report(charCount, timed ? System.nanoTime() - start : 0, document);
+        return document;
+    }
+
+    /**
+     * Parse a document from a stream, read line by line. GZIP data is decompressed while being read, and the first
+     * JCamp-DX entry of a ZIP archive is parsed, see {@link JCampBatchParser#parseArchive(Path, Consumer)} to parse all
+     * entries. The document is decoded as UTF-8.
+     *
+     * @param input the stream to read, closed once the document is parsed
+     * @return the parsed document
+     * @throws IOException when the stream can't be read
+     */
+    public JCampDocument parse(InputStream input) throws IOException {
+        return parseDocument(pages -> parse(input, null, pages));
+    }
+
+    /**
+     * @param name the name of the parsed file, or null
+     * @param completedPages called from the parsing thread with each page once its data is complete, or null
+     */
+    JCampDocument parse(InputStream input, String name, Consumer<JCampPage> completedPages) throws IOException {
+        return parse(input, name, completedPages, null);
+    }
+
+    /**
+     * @param name the name of the parsed file, or null
+     * @param completedPages called from the parsing thread with each page once its data is complete, or null
+     * @param control cancels the parse and receives progress, or null
+     */
+    JCampDocument parse(InputStream input, String name, Consumer<JCampPage> completedPages, ParseControl control) throws IOException {
+        ParseEvent event = new ParseEvent();
+        event.begin();
+
+        long start = timed ? System.nanoTime() : 0;
+        ParseContext context = newContext(name, completedPages, control);
+        long charCount = 0;
+        try (BufferedReader reader = CompressedInput.openReader(input)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                context.parseLine(line);
+                charCount += line.length() + 1;
+            }
+        }
+        context.finish();
+
+        JCampDocument parsed = context.getDocument();
+        context.report(charCount, timed ? System.nanoTime() - start : 0, parsed);
+        commit(event, name, charCount, parsed);
+        return parsed;
+    }
+
+    /**
+     * @param completedPages called from the parsing thread with each page once its data is complete, or null
+     */
+    JCampDocument parse(File file, Consumer<JCampPage> completedPages) throws IOException {
+        if (limits != ParseLimits.NONE || CompressedInput.detect(file.toPath()) != CompressedInput.Format.PLAIN) {
+            // read line by line, without keeping the whole text: limits apply before the file is read entirely
+            return parse(Files.newInputStream(file.toPath()), file.getName(), completedPages);
+        }
+
+        ParseEvent event = new ParseEvent();
+        event.begin();
+
+        long start = timed ? System.nanoTime() : 0;
+        String input = Files.readString(file.toPath());
+        if (timed) {
+            listener.time(Phase.READ, System.nanoTime() - start);
+        }
+
+        JCampDocument document = parseInput(input, file.getName(), completedPages, null);
+        commit(event, file.getName(), input.length(), document);
+        return document;
+    }
+
+    /**
+     * @param completedPages called from the parsing thread with each page once its data is complete, or null
+     */
+    JCampDocument parse(CharSequence input, Consumer<JCampPage> completedPages) {
+        return parse(input, completedPages, null);
+    }
+
+    /**
+     * @param completedPages called from the parsing thread with each page once its data is complete, or null
+     * @param control cancels the parse and receives progress, or null
+     */
+    JCampDocument parse(CharSequence input, Consumer<JCampPage> completedPages, ParseControl control) {
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        JCampDocument document = parseInput(input, null, completedPages, control);
+        commit(event, null, input.length(), document);
+        return document;
+    }
+
+    static void commit(ParseEvent event, String fileName, long byteCount, JCampDocument document) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.fileName = fileName;
+            event.dataType = document.getDataType().name();
+            event.byteCount = byteCount;
+            event.blockCount = document.getBlockCount();
+            event.pageCount = document.blocks().mapToInt(block -> block.getPageCount()).sum();
+            event.commit();
+        }
+    }
+
+    /**
+     * Run a parse building a document. All public entry points building documents go through this method, overridden by
+     * parsers processing pages as soon as they are complete.
+     *
+     * @param parse parses the document, calling the given consumer with each completed page unless it is null
+     * @return the parsed document.
+     */
+    <E extends Exception> JCampDocument parseDocument(DocumentParse<E> parse) throws E {
+        return parse.parse(null);
+    }
+
+    /**
+     * A parse call building a document.
+     */
+    interface DocumentParse<E extends Exception> {
+        JCampDocument parse(Consumer<JCampPage> completedPages) throws E;
+    }
+
+    /**
+     * @param name the name of the parsed file, or null
+     * @param completedPages called from the parsing thread with each page once its data is complete, or null
+     * @param control cancels the parse and receives progress, or null
+     * @return a context for a single parse call, using this parser listener, projection and limits.
+     */
+    ParseContext newContext(String name, Consumer<JCampPage> completedPages, ParseControl control) {
+        ParseContext context = new ParseContext(listener, projection, limits, pool, control, completedPages);
+        context.getDocument().setSourceName(name);
+        return context;
+    }
+
+    /**
+     * Parse a whole document, overridden by parsers using another strategy.
+     *
+     * @param name the name of the parsed file, or null
+     */
+    JCampDocument parseInput(CharSequence input, String name, Consumer<JCampPage> completedPages, ParseControl control) {
+        long start = timed ? System.nanoTime() : 0;
+        ParseContext context = newContext(name, completedPages, control);
+        context.parseLines(input);
+
+        JCampDocument document = context.getDocument();
+        context.report(input.length(), timed ? System.nanoTime() - start : 0, document);
+        return document;
     }
 }
@@ -0,0 +1,549 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import com.nanalysis.jcamp.model.JCampDocument;
+
+/**
+ * Watches directories for JCamp-DX files, and parses them once they are completely written.
+ * <p>
+ * Files are detected with a {@link WatchService}, based on their extension: ".dx", ".jdx" or ".jcamp", eventually followed
+ * by ".gz" for GZIP compressed files, which are decompressed while being parsed. Directories are not watched recursively,
+ * and files present before registration are ignored. A file is considered as written once no change was detected for a
+ * quiet period and its size and modification time are stable, so partial writes aren't parsed.
+ * A file modified again after parsing is parsed again.
+ * <p>
+ * Settled files are parsed on a bounded pool of worker threads, and results are published to all registered handlers.
+ * When all handlers only need {@link Content#HEADER}, files are read up to their first page only. Handlers are called
+ * concurrently from worker threads; an exception thrown by a handler is reported to the worker thread uncaught exception
+ * handler and doesn't prevent other handlers from being called.
+ */
+public class JCampWatchService implements Closeable {
+    public static final long DEFAULT_QUIET_PERIOD_MILLIS = 500;
+
+    private final JCampParser parser;
+    private final WatchService watchService;
+    private final ExecutorService workers;
+    private final long quietPeriodNanos;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final List<Handler> handlers = new CopyOnWriteArrayList<>();
+    private final Thread watcher;
+
+    // files still being written, only accessed from the watcher thread
+    private final Map<Path, PendingFile> pending = new HashMap<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicInteger queuedCount = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong processedBytes = new AtomicLong();
+    private final AtomicLong totalLagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private volatile boolean closed;
+
+    /**
+     * Create a service with one worker per available processor, waiting {@value #DEFAULT_QUIET_PERIOD_MILLIS} ms for files
+     * to be written.
+     *
+     * @throws IOException when the watch service can't be created
+     */
+    public JCampWatchService() throws IOException {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS, ParseListener.NONE);
+    }
+
+    /**
+     * @param workerCount the number of files parsed concurrently
+     * @param quietPeriod the time without change after which a file is considered as written
+     * @param unit the quiet period unit
+     * @param listener receives counters and timings for each parsed document, called concurrently
+     * @throws IOException when the watch service can't be created
+     */
+    public JCampWatchService(int workerCount, long quietPeriod, TimeUnit unit, ParseListener listener) throws IOException {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("The worker count should be positive, received: " + workerCount);
+        }
+        if (quietPeriod < 0) {
+            throw new IllegalArgumentException("The quiet period can't be negative, received: " + quietPeriod);
+        }
+
+        this.parser = new JCampParser(listener);
+        this.quietPeriodNanos = unit.toNanos(quietPeriod);
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        AtomicInteger workerIndex = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, task -> {
+            Thread thread = new Thread(task, "jcamp-watch-worker-" + workerIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.watcher = new Thread(this::watch, "jcamp-watch");
+        this.watcher.setDaemon(true);
+        this.watcher.start();
+    }
+
+    /**
+     * Start watching a directory for new or modified files.
+     *
+     * @param directory the directory to watch, sub-directories aren't watched
+     * @throws IOException when the directory can't be watched
+     */
+    public void register(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+        WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        directories.put(key, directory);
+    }
+
+    /**
+     * Register a handler receiving parsed documents.
+     *
+     * @param content the part of each document needed by this handler
+     * @param handler receives results, called concurrently from worker threads
+     */
+    public void addHandler(Content content, Consumer<Result> handler) {
+        handlers.add(new Handler(content, handler));
+    }
+
+    /**
+     * Unregister a handler.
+     *
+     * @param handler a handler previously registered
+     */
+    public void removeHandler(Consumer<Result> handler) {
+        handlers.removeIf(registered -> registered.consumer == handler);
+    }
+
+    /**
+     * @return a snapshot of this service counters.
+     */
+    public Metrics getMetrics() {
+        return new Metrics(this);
+    }
+
+    /**
+     * Stop watching directories. Files still queued aren't parsed, files being parsed are completed and published.
+     *
+     * @throws IOException when the watch service can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        workers.shutdown();
+        watchService.close();
+    }
+
+    /**
+     * Wait for files being parsed to be published, after {@link #close()}.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the timeout unit
+     * @return true when all workers are done, false if the timeout elapsed
+     * @throws InterruptedException when interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return workers.awaitTermination(timeout, unit);
+    }
+
+    private void watch() {
+        // check settled files several times per quiet period, so that the added lag stays small
+        long pollNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(10), quietPeriodNanos / 4);
+        try {
+            while (!closed) {
+                WatchKey key = watchService.poll(pollNanos, TimeUnit.NANOSECONDS);
+                long now = System.nanoTime();
+                if (key != null) {
+                    collect(key, now);
+                }
+                dispatchSettledFiles(now);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // closed, exit
+        }
+    }
+
+    private void collect(WatchKey key, long now) {
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (directory == null) {
+                continue;
+            }
+            if (event.kind() == OVERFLOW) {
+                // some events were lost, consider that every file may have changed
+                rescan(directory, now);
+                continue;
+            }
+
+            Path file = directory.resolve((Path) event.context());
+            if (!JCampBatchParser.isJCampFile(file)) {
+                continue;
+            }
+            if (event.kind() == ENTRY_DELETE) {
+                pending.remove(file);
+            } else {
+                pending.computeIfAbsent(file, PendingFile::new).changed(now);
+            }
+        }
+        pendingCount.set(pending.size());
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    private void rescan(Path directory, long now) {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(Files::isRegularFile)
+                .filter(JCampBatchParser::isJCampFile)
+                .forEach(file -> pending.computeIfAbsent(file, PendingFile::new).changed(now));
+        } catch (IOException e) {
+            // the directory is being removed, its key will be invalidated
+        }
+    }
+
+    private void dispatchSettledFiles(long now) {
+        Iterator<PendingFile> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            PendingFile file = iterator.next();
+            if (now - file.lastChange < quietPeriodNanos) {
+                continue;
+            }
+
+            long lastChange = file.lastChange;
+            long size = file.size;
+            long modified = file.modified;
+            file.changed(now);
+            if (file.size < 0) {
+                // removed before being settled
+                iterator.remove();
+            } else if (file.size == size && file.modified == modified) {
+                file.lastChange = lastChange;
+                iterator.remove();
+                submit(file);
+            }
+            // otherwise still changing, even if no event was received: wait for another quiet period
+        }
+        pendingCount.set(pending.size());
+    }
+
+    private void submit(PendingFile file) {
+        queuedCount.incrementAndGet();
+        try {
+            workers.execute(() -> process(file));
+        } catch (RejectedExecutionException e) {
+            // closed meanwhile
+            queuedCount.decrementAndGet();
+        }
+    }
+
+    private void process(PendingFile file) {
+        queuedCount.decrementAndGet();
+        if (closed) {
+            return;
+        }
+
+        activeCount.incrementAndGet();
+        try {
+            Content content = requiredContent();
+            Result result;
+            try {
+                JCampDocument document = content == Content.HEADER ? parser.parseHeader(file.path.toFile()) : parser.parse(file.path.toFile());
+                result = new Result(file.path, content, document, null, System.nanoTime() - file.lastChange);
+            } catch (IOException | RuntimeException e) {
+                result = new Result(file.path, content, null, e, System.nanoTime() - file.lastChange);
+            }
+
+            record(result, file.size);
+            for (Handler handler : handlers) {
+                handler.accept(result);
+            }
+        } finally {
+            activeCount.decrementAndGet();
+        }
+    }
+
+    private Content requiredContent() {
+        for (Handler handler : handlers) {
+            if (handler.content == Content.DOCUMENT) {
+                return Content.DOCUMENT;
+            }
+        }
+        return Content.HEADER;
+    }
+
+    private void record(Result result, long size) {
+        processedCount.incrementAndGet();
+        if (!result.isSuccess()) {
+            failedCount.incrementAndGet();
+        }
+        processedBytes.addAndGet(size);
+        totalLagNanos.addAndGet(result.lagNanos);
+        maxLagNanos.accumulateAndGet(result.lagNanos, Math::max);
+    }
+
+    /**
+     * The part of each document needed by a handler.
+     */
+    public enum Content {
+        /** Only the records found before the first page or data table. */
+        HEADER,
+        /** The whole document, including data. */
+        DOCUMENT
+    }
+
+    /**
+     * The outcome of parsing one file: either a document or the failure that prevented reading it.
+     */
+    public static class Result {
+        private final Path path;
+        private final Content content;
+        private final JCampDocument document;
+        private final Exception error;
+        private final long lagNanos;
+
+        private Result(Path path, Content content, JCampDocument document, Exception error, long lagNanos) {
+            this.path = path;
+            this.content = content;
+            this.document = document;
+            this.error = error;
+            this.lagNanos = lagNanos;
+        }
+
+        /**
+         * @return the parsed file.
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * @return the part of the document that was parsed, at least the one needed by the handler.
+         */
+        public Content getContent() {
+            return content;
+        }
+
+        /**
+         * @return true when the file was parsed successfully.
+         */
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * @return the parsed document
+         * @throws IllegalStateException when the file couldn't be parsed
+         */
+        public JCampDocument getDocument() {
+            if (error != null) {
+                throw new IllegalStateException("Unable to parse " + path, error);
+            }
+            return document;
+        }
+
+        /**
+         * @return the failure that prevented parsing the file, or null on success.
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        /**
+         * @param unit the returned value unit
+         * @return the time elapsed between the last change detected on the file and the end of parsing.
+         */
+        public long getLag(TimeUnit unit) {
+            return unit.convert(lagNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * A snapshot of the service counters.
+     */
+    public static class Metrics {
+        private final int pendingCount;
+        private final int queueDepth;
+        private final int activeCount;
+        private final long processedCount;
+        private final long failedCount;
+        private final long processedBytes;
+        private final long totalLagNanos;
+        private final long maxLagNanos;
+        private final long elapsedNanos;
+
+        private Metrics(JCampWatchService service) {
+            this.pendingCount = service.pendingCount.get();
+            this.queueDepth = service.queuedCount.get();
+            this.activeCount = service.activeCount.get();
+            this.processedCount = service.processedCount.get();
+            this.failedCount = service.failedCount.get();
+            this.processedBytes = service.processedBytes.get();
+            this.totalLagNanos = service.totalLagNanos.get();
+            this.maxLagNanos = service.maxLagNanos.get();
+            this.elapsedNanos = System.nanoTime() - service.startNanos;
+        }
+
+        /**
+         * @return the number of files being written, waiting for their quiet period to elapse.
+         */
+        public int getPendingCount() {
+            return pendingCount;
+        }
+
+        /**
+         * @return the number of written files waiting for a worker.
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * @return the number of files being parsed.
+         */
+        public int getActiveCount() {
+            return activeCount;
+        }
+
+        /**
+         * @return the number of files parsed and published, including failures.
+         */
+        public long getProcessedCount() {
+            return processedCount;
+        }
+
+        /**
+         * @return the number of files that couldn't be parsed.
+         */
+        public long getFailedCount() {
+            return failedCount;
+        }
+
+        /**
+         * @return the total size of processed files, in bytes.
+         */
+        public long getProcessedBytes() {
+            return processedBytes;
+        }
+
+        /**
+         * @param unit the returned value unit
+         * @return the average time elapsed between the last change detected on a file and the end of its parsing, or 0.
+         */
+        public long getAverageLag(TimeUnit unit) {
+            return processedCount == 0 ? 0 : unit.convert(totalLagNanos / processedCount, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @param unit the returned value unit
+         * @return the longest time elapsed between the last change detected on a file and the end of its parsing.
+         */
+        public long getMaxLag(TimeUnit unit) {
+            return unit.convert(maxLagNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return the number of files processed per second, since the service was created.
+         */
+        public double getFilesPerSecond() {
+            return elapsedNanos == 0 ? 0 : processedCount * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @return the number of bytes processed per second, since the service was created.
+         */
+        public double getBytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : processedBytes * 1e9 / elapsedNanos;
+        }
+    }
+
+    private static class Handler {
+        private final Content content;
+        private final Consumer<Result> consumer;
+
+        private Handler(Content content, Consumer<Result> consumer) {
+            this.content = content;
+            this.consumer = consumer;
+        }
+
+        private void accept(Result result) {
+            try {
+                consumer.accept(result);
+            } catch (RuntimeException e) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+
+    private static class PendingFile {
+        private final Path path;
+        private long lastChange;
+        private long size = -1;
+        private long modified = -1;
+
+        private PendingFile(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * Record a change, with the current size and modification time to check that the file is stable later on.
+         */
+        private void changed(long now) {
+            lastChange = now;
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                size = attributes.size();
+                modified = attributes.lastModifiedTime().toMillis();
+            } catch (IOException e) {
+                size = -1;
+                modified = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+import com.nanalysis.jcamp.jfr.ParseEvent;
+import com.nanalysis.jcamp.model.DataType;
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.model.JCampPage;
+import com.nanalysis.jcamp.parser.builder.BlockBuilder;
+import com.nanalysis.jcamp.util.JCampUtil;
+
+/**
+ * JCamp-DX parser building the blocks of LINK documents concurrently.
+ * <p>
+ * The document header is parsed first. Block boundaries are then located by a quick scan for "##END=" records, and each
+ * block is parsed on a fork-join pool. Blocks are added to the document in their original order, and the remaining
+ * content is parsed as usual. Other documents, and LINK documents whose blocks can't all be located, are parsed
+ * sequentially: the result is always identical to the one of {@link JCampParser}.
+ * <p>
+ * Locating blocks and counting their lines costs about a fifth of a sequential parse, this pays off with several cores.
+ * <p>
+ * Blocks are located in the whole document text: files and streams, decompressed if needed, are read entirely before
+ * being parsed. Streams parsed with a {@link ParseControl}, and files or streams parsed with limits, are read line by line
+ * and parsed sequentially instead, so that they can be stopped before being read entirely. Parsing with a
+ * {@link JCampHandler} and header parsing are sequential as well.
+ * <p>
+ * Like {@link JCampParser}, instances are stateless and can be shared by several threads.
+ */
+public class ParallelJCampParser extends JCampParser {
+    private static final String END_OF_BLOCK = "END";
+
+    private final ForkJoinPool pool;
+    private final ParseListener listener;
+
+    public ParallelJCampParser() {
+        this(ForkJoinPool.commonPool(), ParseListener.NONE);
+    }
+
+    /**
+     * @param pool the pool used to parse blocks
+     * @param listener receives counters and timings for each parsed document
+     */
+    public ParallelJCampParser(ForkJoinPool pool, ParseListener listener) {
+        this(pool, listener, Projection.ALL, ParseLimits.NONE, null);
+    }
+
+    /**
+     * @param pool the pool used to parse blocks
+     * @param listener receives counters and timings for each parsed document
+     * @param projection the records and pages kept in parsed documents
+     * @param limits bounds on the content of parsed documents
+     * @param recordPool shares equal header records between parsed documents, or null
+     */
+    public ParallelJCampParser(ForkJoinPool pool, ParseListener listener, Projection projection, ParseLimits limits,
+                               RecordPool recordPool) {
+        super(listener, projection, limits, recordPool);
+        if (pool == null) {
+            throw new IllegalArgumentException("A pool is required");
+        }
+
+        this.pool = pool;
+        this.listener = listener;
+    }
+
+    @Override
+    JCampDocument parse(InputStream input, String name, Consumer<JCampPage> completedPages, ParseControl control) throws IOException {
+        if (control != null || getLimits() != ParseLimits.NONE) {
+            return super.parse(input, name, completedPages, control);
+        }
+
+        ParseEvent event = new ParseEvent();
+        event.begin();
+
+        long start = listener != ParseListener.NONE ? System.nanoTime() : 0;
+        String text;
+        try (InputStream document = CompressedInput.open(input)) {
+            text = new String(document.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        if (listener != ParseListener.NONE) {
+            listener.time(ParseListener.Phase.READ, System.nanoTime() - start);
+        }
+
+        JCampDocument document = parseInput(text, name, completedPages, null);
+        commit(event, name, text.length(), document);
+        return document;
+    }
+
+    @Override
+    JCampDocument parseInput(CharSequence input, String name, Consumer<JCampPage> completedPages, ParseControl control) {
+        long start = listener != ParseListener.NONE ? System.nanoTime() : 0;
+        ParseContext context = newContext(name, completedPages, control);
+
+        // header first, until the record starting the first block
+        int length = input.length();
+        int position = 0;
+        while (position < length) {
+            int lineEnd = ParseContext.lineEnd(input, position, length);
+            if (context.isHeaderComplete() && isRecord(input, position, lineEnd)) {
+                break;
+            }
+            context.parseLine(input, position, lineEnd);
+            position = ParseContext.nextLine(input, lineEnd, length);
+        }
+
+        JCampDocument document = context.getDocument();
+        List<Segment> segments = null;
+        if (document.getDataType() == DataType.LINK && document.getBlockCount() > 1) {
+            segments = findBlocks(input, position, document.getBlockCount());
+        }
+
+        if (segments != null) {
+            parseBlocks(input, context, segments);
+            position = segments.get(segments.size() - 1).end;
+        }
+
+        // what remains: document end, or all blocks when not parsed in parallel
+        context.parseLines(input, position, length);
+        context.finish();
+
+        context.report(input.length(), listener != ParseListener.NONE ? System.nanoTime() - start : 0, document);
+        return document;
+    }
+
+    private void parseBlocks(CharSequence input, ParseContext context, List<Segment> segments) {
+        numberLines(input, segments, context.getLineNumber());
+
+        Deque<ForkJoinTask<ParsedBlock>> tasks = new ArrayDeque<>(segments.size());
+        try {
+            for (Segment segment : segments) {
+                tasks.addLast(pool.submit(() -> parseBlock(input, context, segment)));
+            }
+
+            while (!tasks.isEmpty()) {
+                ParsedBlock parsed = tasks.removeFirst().join();
+                context.getDocument().addBlock(parsed.block);
+                context.append(parsed.context);
+            }
+        } finally {
+            // only reached with pending tasks on failure: don't leave them running
+            tasks.forEach(task -> task.cancel(true));
+        }
+    }
+
+    /**
+     * Find the number of lines before each segment, records need it. Lines are counted concurrently in each segment.
+     */
+    private void numberLines(CharSequence input, List<Segment> segments, int lineNumber) {
+        int firstReturn = indexOf(input, '\r', segments.get(0).start);
+        List<ForkJoinTask<Integer>> counts = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            counts.add(pool.submit(() -> countLines(input, segment.start, segment.end, firstReturn)));
+        }
+
+        int line = lineNumber;
+        for (int i = 0; i < segments.size(); i++) {
+            segments.get(i).lineNumber = line;
+            line += counts.get(i).join();
+        }
+    }
+
+    private static ParsedBlock parseBlock(CharSequence input, ParseContext context, Segment segment) {
+        BlockBuilder builder = new BlockBuilder(context.getDocumentBuilder(), false);
+        ParseContext blockContext = new ParseContext(context, builder, segment.lineNumber);
+        blockContext.parseLines(input, segment.start, segment.end);
+        return new ParsedBlock(builder.getObject(), blockContext);
+    }
+
+    /**
+     * Locate blocks, each one ending with an "##END=" record. Only record lines are inspected, data lines are skipped
+     * using {@link String#indexOf(String, int)} which is much faster than a scan by character.
+     *
+     * @return the blocks, or null when fewer blocks than declared were found.
+     */
+    static List<Segment> findBlocks(CharSequence input, int start, int blockCount) {
+        List<Segment> segments = new ArrayList<>(blockCount);
+        int length = input.length();
+        int segmentStart = start;
+        int position = start;
+        while (segments.size() < blockCount) {
+            int prefix = indexOf(input, ENTRY_PREFIX, position);
+            if (prefix < 0) {
+                break;
+            }
+
+            int lineStart = prefix;
+            while (lineStart > start && isBlank(input.charAt(lineStart - 1))) {
+                lineStart--;
+            }
+            int lineEnd = ParseContext.lineEnd(input, prefix, length);
+            boolean atLineStart = lineStart == start || input.charAt(lineStart - 1) == '\n' || input.charAt(lineStart - 1) == '\r';
+            if (atLineStart && isEndRecord(input, lineStart, lineEnd)) {
+                int next = ParseContext.nextLine(input, lineEnd, length);
+                segments.add(new Segment(segmentStart, next));
+                segmentStart = next;
+            }
+            position = lineEnd;
+        }
+        return segments.size() == blockCount ? segments : null;
+    }
+
+    // inputs are either strings, or bytes parsed in place
+    private static int indexOf(CharSequence input, char c, int from) {
+        return input instanceof String ? ((String) input).indexOf(c, from) : ((AsciiCharSequence) input).indexOf(c, from);
+    }
+
+    private static int indexOf(CharSequence input, String text, int from) {
+        return input instanceof String ? ((String) input).indexOf(text, from) : ((AsciiCharSequence) input).indexOf(text, from);
+    }
+
+    private static boolean isBlank(char c) {
+        return c <= ' ' && c != '\n' && c != '\r';
+    }
+
+    private static boolean isRecord(CharSequence input, int start, int end) {
+        int first = skipWhitespace(input, start, end);
+        return end - first >= ENTRY_PREFIX.length() && input.charAt(first) == '#' && input.charAt(first + 1) == '#';
+    }
+
+    static boolean isEndRecord(CharSequence input, int start, int end) {
+        if (!isRecord(input, start, end)) {
+            return false;
+        }
+
+        int labelStart = skipWhitespace(input, start, end) + ENTRY_PREFIX.length();
+        int labelEnd = labelStart;
+        // labels are short, don't go further than needed to find "END" with some separators
+        while (labelEnd < end && labelEnd - labelStart < 16 && input.charAt(labelEnd) != '=') {
+            labelEnd++;
+        }
+        return labelEnd < end && input.charAt(labelEnd) == '='
+            && END_OF_BLOCK.equals(JCampUtil.normalize(input.subSequence(labelStart, labelEnd).toString()));
+    }
+
+    private static int skipWhitespace(CharSequence input, int start, int end) {
+        int first = start;
+        while (first < end && input.charAt(first) <= ' ') {
+            first++;
+        }
+        return first;
+    }
+
+    private static class ParsedBlock {
+        private final JCampBlock block;
+        private final ParseContext context;
+
+        private ParsedBlock(JCampBlock block, ParseContext context) {
+            this.block = block;
+            this.context = context;
+        }
+    }
+
+    /**
+     * Count line terminators in a range: "\n", "\r\n" or a single "\r".
+     *
+     * @param firstReturn the index of the first "\r" in the input, or -1 when there is none
+     */
+    static int countLines(CharSequence input, int from, int to, int firstReturn) {
+        int count = 0;
+        for (int i = indexOf(input, '\n', from); i >= 0 && i < to; i = indexOf(input, '\n', i + 1)) {
+            count++;
+        }
+
+        if (firstReturn >= 0 && firstReturn < to) {
+            for (int i = from; i < to; i++) {
+                if (input.charAt(i) == '\r' && (i + 1 >= input.length() || input.charAt(i + 1) != '\n')) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * A part of the input containing a single block.
+     */
+    static class Segment {
+        final int start;
+        final int end;
+        // number of lines before this segment, known once lines of previous segments are counted
+        int lineNumber;
+
+        Segment(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,523 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import static com.nanalysis.jcamp.parser.JCampParser.COMMENT_PREFIX;
+import static com.nanalysis.jcamp.parser.JCampParser.ENTRY_PREFIX;
+import static com.nanalysis.jcamp.util.JCampUtil.normalize;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampContainer;
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.model.JCampPage;
+import com.nanalysis.jcamp.model.JCampRecord;
+import com.nanalysis.jcamp.model.Label;
+import com.nanalysis.jcamp.parser.ParseListener.Counter;
+import com.nanalysis.jcamp.parser.ParseListener.Phase;
+import com.nanalysis.jcamp.parser.builder.DocumentBuilder;
+import com.nanalysis.jcamp.parser.builder.JCampBuilder;
+
+/**
+ * The state of a single parse call: current builder, current record and counters.
+ * Keeping it out of {@link JCampParser} makes the parser itself stateless.
+ * <p>
+ * Limits are enforced and cancellation checked here, as lines are read: nothing beyond a limit is ever accumulated.
+ */
+final class ParseContext {
+    private final ParseListener listener;
+    private final boolean timed;
+    private final Projection projection;
+    private final ParseLimits limits;
+    private final boolean limited;
+    // null when records aren't shared with other documents
+    private final RecordPool pool;
+    // null when the parse can't be cancelled and doesn't report progress
+    private final ParseControl control;
+    private final DocumentBuilder documentBuilder;
+    private final Consumer<JCampPage> completedPages;
+    // shared with contexts parsing blocks concurrently, limits apply to the whole document
+    private final AtomicInteger pageCount;
+    private final AtomicInteger blockCount;
+
+    private int lineNumber;
+    private int recordCount;
+    private long buildNanos;
+    private JCampBuilder<?> currentBuilder;
+    private JCampRecord currentEntry;
+    // block receiving the current page, to remove it when not selected by the projection
+    private JCampBlock currentBlock;
+    // page whose data record is the current entry, when completed pages are reported
+    private JCampPage dataPage;
+    // container of the current entry, to replace it by a pooled one once complete
+    private JCampContainer pooledContainer;
+    // size of the current record, only tracked with limits
+    private long recordBytes;
+    // last block accounted for in blockCount
+    private Object countedBlock;
+    // bytes and lines read since progress was last reported
+    private long unreportedBytes;
+    private long unreportedLines;
+
+    /**
+     * @param listener receives counters and timings
+     * @param completedPages called from the parsing thread with each page once its data record is complete, or null
+     */
+    ParseContext(ParseListener listener, Consumer<JCampPage> completedPages) {
+        this(listener, Projection.ALL, completedPages);
+    }
+
+    /**
+     * @param listener receives counters and timings
+     * @param projection the records and pages to keep
+     * @param completedPages called from the parsing thread with each page once its data record is complete, or null
+     */
+    ParseContext(ParseListener listener, Projection projection, Consumer<JCampPage> completedPages) {
+        this(listener, projection, ParseLimits.NONE, null, null, completedPages);
+    }
+
+    /**
+     * @param listener receives counters and timings
+     * @param projection the records and pages to keep
+     * @param limits bounds on the document content
+     * @param pool shares complete records with other documents, or null
+     * @param control cancels the parse and receives progress, or null
+     * @param completedPages called from the parsing thread with each page once its data record is complete, or null
+     */
+    ParseContext(ParseListener listener, Projection projection, ParseLimits limits, RecordPool pool, ParseControl control,
+                 Consumer<JCampPage> completedPages) {
+        this.listener = listener;
+        this.timed = listener != ParseListener.NONE;
+        this.projection = projection;
+        this.limits = limits;
+        this.limited = limits != ParseLimits.NONE;
+        this.pool = pool;
+        this.control = control;
+        this.completedPages = completedPages;
+        this.documentBuilder = new DocumentBuilder();
+        this.currentBuilder = documentBuilder;
+        this.pageCount = new AtomicInteger();
+        this.blockCount = new AtomicInteger();
+    }
+
+    /**
+     * Create a context parsing part of a document independently, for example a single block.
+     *
+     * @param parent the context parsing the whole document
+     * @param builder the builder receiving the first record
+     * @param lineNumber the number of lines before the first one parsed by this context
+     */
+    ParseContext(ParseContext parent, JCampBuilder<?> builder, int lineNumber) {
+        this.listener = parent.listener;
+        this.timed = parent.timed;
+        this.projection = parent.projection;
+        this.limits = parent.limits;
+        this.limited = parent.limited;
+        this.pool = parent.pool;
+        this.control = parent.control;
+        this.completedPages = parent.completedPages;
+        this.documentBuilder = parent.documentBuilder;
+        this.pageCount = parent.pageCount;
+        this.blockCount = parent.blockCount;
+        this.currentBuilder = builder;
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * @return the builder used for the whole document.
+     */
+    DocumentBuilder getDocumentBuilder() {
+        return documentBuilder;
+    }
+
+    /**
+     * @return true when the document header is complete: the next record will start the first block.
+     */
+    boolean isHeaderComplete() {
+        return currentBuilder == documentBuilder && documentBuilder.isHeaderComplete();
+    }
+
+    /**
+     * @return the number of lines parsed so far, including the ones before this context started.
+     */
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return the number of records parsed so far.
+     */
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Account for lines parsed independently by another context, which ended where this one continues.
+     *
+     * @param part a context created from this one
+     */
+    void append(ParseContext part) {
+        part.reportProgress();
+        lineNumber = part.lineNumber;
+        recordCount += part.recordCount;
+        buildNanos += part.buildNanos;
+    }
+
+    /**
+     * Parse all lines from a text. Lines are scanned in place, only records and comments are extracted as strings.
+     *
+     * @param input the text to parse
+     */
+    void parseLines(CharSequence input) {
+        parseLines(input, 0, input.length());
+        finish();
+    }
+
+    /**
+     * Parse lines from a part of a text, without signaling the end of input.
+     *
+     * @param input the text to parse
+     * @param start the index of the first line start
+     * @param end the index after the last line end
+     */
+    void parseLines(CharSequence input, int start, int end) {
+        int position = start;
+        while (position < end) {
+            int lineEnd = lineEnd(input, position, end);
+            parseLine(input, position, lineEnd);
+            position = nextLine(input, lineEnd, end);
+        }
+    }
+
+    /**
+     * @return the index of the end-of-line character ending the line starting at position, or end.
+     */
+    static int lineEnd(CharSequence input, int position, int end) {
+        int lineEnd = position;
+        while (lineEnd < end && input.charAt(lineEnd) != '\n' && input.charAt(lineEnd) != '\r') {
+            lineEnd++;
+        }
+        return lineEnd;
+    }
+
+    /**
+     * @return the index where the next line starts, after the end-of-line characters found at lineEnd.
+     */
+    static int nextLine(CharSequence input, int lineEnd, int end) {
+        if (lineEnd + 1 < end && input.charAt(lineEnd) == '\r' && input.charAt(lineEnd + 1) == '\n') {
+            return lineEnd + 2;
+        }
+        return lineEnd + 1;
+    }
+
+    /**
+     * Parse a single line, for inputs read line by line. {@link #finish()} should be called after the last one.
+     *
+     * @param line a line, without end-of-line characters
+     */
+    void parseLine(CharSequence line) {
+        parseLine(line, 0, line.length());
+    }
+
+    /**
+     * Signal the end of input: the last record is complete.
+     */
+    void finish() {
+        completeDataPage();
+        poolEntry();
+        reportProgress();
+    }
+
+    void parseLine(CharSequence input, int start, int end) {
+        lineNumber++;
+        if (control != null) {
+            unreportedBytes += end - start + 1;
+            unreportedLines++;
+            if (unreportedBytes >= ParseControl.CHUNK_BYTES) {
+                reportProgress();
+            }
+        }
+
+        int first = start;
+        int last = end;
+        while (first < last && input.charAt(first) <= ' ') {
+            first++;
+        }
+        while (last > first && input.charAt(last - 1) <= ' ') {
+            last--;
+        }
+
+        if (first == last) {
+            // skip empty lines
+            return;
+        }
+
+        if (startsWith(input, first, last, ENTRY_PREFIX)) {
+            // a new record starts: the previous one is complete
+            completeDataPage();
+            poolEntry();
+            recordCount++;
+            if (!projection.keepsAllRecords() && !projection.acceptsRecord(normalizedLabel(input, first + ENTRY_PREFIX.length(), last))) {
+                // not selected: its data lines are skipped as well
+                currentEntry = null;
+                return;
+            }
+
+            if (limited) {
+                recordBytes = 0;
+                checkRecordSize(last - first);
+            }
+            currentEntry = JCampRecord.parse(lineNumber, input.subSequence(first + ENTRY_PREFIX.length(), last).toString());
+            if (currentBuilder.getObject() instanceof JCampBlock) {
+                currentBlock = (JCampBlock) currentBuilder.getObject();
+            }
+            long buildStart = timed ? System.nanoTime() : 0;
+            currentBuilder = currentBuilder.consume(currentEntry);
+            if (timed) {
+                buildNanos += System.nanoTime() - buildStart;
+            }
+            if (limited) {
+                checkStructure();
+            }
+            if (isDataRecord(currentEntry)) {
+                selectDataPage();
+            } else if (pool != null && currentBuilder.getObject() instanceof JCampContainer) {
+                // the record was added to the object being built, unless it ended it
+                pooledContainer = (JCampContainer) currentBuilder.getObject();
+            }
+        } else if (startsWith(input, first, last, COMMENT_PREFIX)) {
+            String comment = input.subSequence(first + COMMENT_PREFIX.length(), last).toString();
+            currentBuilder = currentBuilder.consumeComment(comment);
+        } else if (currentEntry != null) {
+            if (limited) {
+                checkRecordSize(last - first + 1);
+            }
+            if (input instanceof String) {
+                currentEntry.parseData(input, first, last);
+            } else {
+                // lines from bytes are decoded one by one, records append strings much faster than other sequences
+                currentEntry.parseData(input.subSequence(first, last).toString());
+            }
+        }
+    }
+
+    /**
+     * Called once a data record starts: drop its page when it isn't selected, or remember it to report it once complete.
+     */
+    private void selectDataPage() {
+        if (!projection.keepsAllPages()) {
+            JCampPage page = currentPage();
+            if (page != null && !projection.acceptsPage(page)) {
+                currentBlock().removePage(page);
+                // the data lines of this page are skipped
+                currentEntry = null;
+                return;
+            }
+        }
+        if (limited) {
+            checkPage();
+        }
+        if (completedPages != null) {
+            dataPage = currentPage();
+        }
+    }
+
+    private void checkRecordSize(int length) {
+        recordBytes += length;
+        if (recordBytes > limits.getMaxRecordBytes()) {
+            throw new IllegalStateException("Line " + lineNumber + ": record exceeds the limit of " + limits.getMaxRecordBytes() + " bytes");
+        }
+    }
+
+    /**
+     * Check the number of blocks, declared by the BLOCKS record or started by the current one.
+     */
+    private void checkStructure() {
+        if (Label.BLOCKS.normalized().equals(currentEntry.getNormalizedLabel())) {
+            int declared = currentEntry.getInt();
+            if (declared > limits.getMaxBlocks()) {
+                throw new IllegalStateException("Line " + lineNumber + ": " + declared + " blocks declared, the limit is " + limits.getMaxBlocks());
+            }
+        }
+
+        Object object = currentBuilder.getObject();
+        if (object instanceof JCampBlock && object != countedBlock) {
+            countedBlock = object;
+            if (blockCount.incrementAndGet() > limits.getMaxBlocks()) {
+                throw new IllegalStateException("Line " + lineNumber + ": document exceeds the limit of " + limits.getMaxBlocks() + " blocks");
+            }
+        }
+    }
+
+    /**
+     * Check the number of pages, and the number of points declared by the page starting its data.
+     */
+    private void checkPage() {
+        if (pageCount.incrementAndGet() > limits.getMaxPages()) {
+            throw new IllegalStateException("Line " + lineNumber + ": document exceeds the limit of " + limits.getMaxPages() + " pages");
+        }
+
+        JCampPage page = currentPage();
+        long points = page == null ? 0 : declaredPoints(page);
+        if (points > limits.getMaxPointsPerPage()) {
+            throw new IllegalStateException("Line " + lineNumber + ": page declares " + points + " points, the limit is " + limits.getMaxPointsPerPage());
+        }
+    }
+
+    private long declaredPoints(JCampPage page) {
+        try {
+            return page.getDimensionForSymbol(page.extractXSymbol());
+        } catch (RuntimeException e) {
+            // no symbol definitions, as with XYDATA: the block declares the number of points
+            try {
+                return currentBlock().optional(Label.NPOINTS).map(JCampRecord::getInt).orElse(0);
+            } catch (RuntimeException invalid) {
+                // not a number: decoding will fail anyway
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Account for lines read since the last report, failing when the parse was cancelled.
+     */
+    private void reportProgress() {
+        if (control != null && unreportedLines > 0) {
+            control.advance(unreportedBytes, unreportedLines);
+            unreportedBytes = 0;
+            unreportedLines = 0;
+        }
+    }
+
+    private JCampBlock currentBlock() {
+        if (currentBlock != null) {
+            return currentBlock;
+        }
+        // the page started the first block: sequential parsing, this is the last block of the document
+        JCampDocument document = documentBuilder.getObject();
+        return document.block((int) document.blocks().count() - 1);
+    }
+
+    /**
+     * Replace the current entry, now complete, by an equal record shared with other documents.
+     */
+    private void poolEntry() {
+        if (pooledContainer != null) {
+            JCampRecord shared = pool.intern(currentEntry);
+            if (shared != currentEntry) {
+                pooledContainer.replaceRecord(currentEntry, shared);
+            }
+            pooledContainer = null;
+        }
+    }
+
+    private void completeDataPage() {
+        if (dataPage != null) {
+            // materialize the data before handing the page over, it won't be modified anymore
+            currentEntry.getString();
+            JCampPage page = dataPage;
+            dataPage = null;
+            completedPages.accept(page);
+        }
+    }
+
+    /**
+     * @return the normalized label of a record, without the "##" prefix.
+     */
+    private static String normalizedLabel(CharSequence input, int start, int end) {
+        int equals = start;
+        while (equals < end && input.charAt(equals) != '=') {
+            equals++;
+        }
+        return normalize(input.subSequence(start, equals).toString());
+    }
+
+    /**
+     * @return true when the line starts a record beginning the data: PAGE, DATA TABLE or XYDATA.
+     */
+    static boolean startsDataRecord(CharSequence line) {
+        int first = 0;
+        while (first < line.length() && line.charAt(first) <= ' ') {
+            first++;
+        }
+        if (!startsWith(line, first, line.length(), ENTRY_PREFIX)) {
+            return false;
+        }
+
+        String label = normalizedLabel(line, first + ENTRY_PREFIX.length(), line.length());
+        return Label.PAGE.normalized().equals(label) || Label.DATA_TABLE.normalized().equals(label) || Label.XYDATA.normalized().equals(label);
+    }
+
+    private static boolean isDataRecord(JCampRecord record) {
+        String label = record.getNormalizedLabel();
+        return Label.DATA_TABLE.normalized().equals(label) || Label.XYDATA.normalized().equals(label);
+    }
+
+    /**
+     * @return the page that received the current entry: the one being built, or the last page of the current block for XYDATA.
+     */
+    private JCampPage currentPage() {
+        Object object = currentBuilder.getObject();
+        if (object instanceof JCampPage) {
+            return (JCampPage) object;
+        }
+        if (object instanceof JCampBlock && ((JCampBlock) object).getPageCount() > 0) {
+            JCampBlock block = (JCampBlock) object;
+            return block.page(block.getPageCount() - 1);
+        }
+        return null;
+    }
+
+    static boolean startsWith(CharSequence input, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (input.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the parsed document, once all lines were parsed.
+     */
+    JCampDocument getDocument() {
+        return documentBuilder.getObject();
+    }
+
+    /**
+     * Report counters and timings to the listener.
+     *
+     * @param byteCount the size of the parsed input
+     * @param totalNanos the time spent parsing lines, including building
+     * @param document the parsed document
+     */
+    void report(long byteCount, long totalNanos, JCampDocument document) {
+        if (timed) {
+            listener.time(Phase.RECORDS, totalNanos - buildNanos);
+            listener.time(Phase.BUILD, buildNanos);
+        }
+        listener.count(Counter.BYTES, byteCount);
+        listener.count(Counter.LINES, lineNumber);
+        listener.count(Counter.RECORDS, recordCount);
+        listener.count(Counter.BLOCKS, document.getBlockCount());
+        listener.count(Counter.PAGES, document.blocks().mapToLong(block -> block.getPageCount()).sum());
+    }
+}
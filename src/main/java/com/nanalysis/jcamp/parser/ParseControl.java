@@ -0,0 +1,101 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Controls a single parse call from another thread: it can be cancelled, and reports progress while lines are read.
+ * <p>
+ * Progress is reported and cancellation checked for every chunk of about {@value #CHUNK_BYTES} bytes, so a cancelled
+ * parse stops within a fraction of a millisecond with a {@link CancellationException}. Byte counts are the number of
+ * characters read, end-of-line included, after decompression: compare them with the file size to display a percentage.
+ * When blocks are parsed concurrently, progress is reported from several threads.
+ */
+public class ParseControl {
+    /** Receives progress, see {@link ParseControl}. */
+    @FunctionalInterface
+    public interface Progress {
+        /**
+         * @param bytes the number of bytes read so far
+         * @param lines the number of lines read so far
+         */
+        void progress(long bytes, long lines);
+    }
+
+    static final int CHUNK_BYTES = 64 * 1024;
+
+    private final Progress progress;
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong lines = new AtomicLong();
+    private volatile boolean cancelled;
+
+    public ParseControl() {
+        this((bytes, lines) -> {
+        });
+    }
+
+    /**
+     * @param progress called from parsing threads after each chunk, and once all lines were read
+     */
+    public ParseControl(Progress progress) {
+        if (progress == null) {
+            throw new IllegalArgumentException("A progress callback is required");
+        }
+        this.progress = progress;
+    }
+
+    /**
+     * Request the parse to stop. It fails with a {@link CancellationException} at the next chunk.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true when {@link #cancel()} was called.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return the number of bytes read so far.
+     */
+    public long getBytesRead() {
+        return bytes.get();
+    }
+
+    /**
+     * @return the number of lines read so far.
+     */
+    public long getLinesRead() {
+        return lines.get();
+    }
+
+    /**
+     * Account for a chunk of lines, then report progress.
+     *
+     * @throws CancellationException when the parse was cancelled
+     */
+    void advance(long byteCount, long lineCount) {
+        if (cancelled) {
+            throw new CancellationException("Parsing was cancelled");
+        }
+        progress.progress(bytes.addAndGet(byteCount), lines.addAndGet(lineCount));
+    }
+}
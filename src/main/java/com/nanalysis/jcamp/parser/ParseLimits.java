@@ -0,0 +1,110 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+/**
+ * Bounds on what a single document may contain. Parsing stops with an {@link IllegalStateException} as soon as one is
+ * exceeded, before the offending content is accumulated, so that malformed or hostile inputs can't exhaust the heap.
+ * <p>
+ * Limits are checked against what the document declares or contains while it is read: the size of each record, the
+ * number of points declared for each page, the number of pages and the number of blocks. Instances are immutable.
+ */
+public final class ParseLimits {
+    /** No limit at all, as when parsing without limits. */
+    public static final ParseLimits NONE = new ParseLimits(Long.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    private final long maxRecordBytes;
+    private final long maxPointsPerPage;
+    private final int maxPages;
+    private final int maxBlocks;
+
+    private ParseLimits(long maxRecordBytes, long maxPointsPerPage, int maxPages, int maxBlocks) {
+        this.maxRecordBytes = maxRecordBytes;
+        this.maxPointsPerPage = maxPointsPerPage;
+        this.maxPages = maxPages;
+        this.maxBlocks = maxBlocks;
+    }
+
+    /**
+     * @param bytes the maximum size of a single record, including all its data lines and their end-of-line characters
+     * @return new limits with the same other bounds.
+     */
+    public ParseLimits withMaxRecordBytes(long bytes) {
+        checkPositive("record size", bytes);
+        return new ParseLimits(bytes, maxPointsPerPage, maxPages, maxBlocks);
+    }
+
+    /**
+     * @param points the maximum number of points declared by a page, from VAR_DIM or NPOINTS
+     * @return new limits with the same other bounds.
+     */
+    public ParseLimits withMaxPointsPerPage(long points) {
+        checkPositive("number of points per page", points);
+        return new ParseLimits(maxRecordBytes, points, maxPages, maxBlocks);
+    }
+
+    /**
+     * @param pages the maximum number of pages in a document, all blocks included
+     * @return new limits with the same other bounds.
+     */
+    public ParseLimits withMaxPages(int pages) {
+        checkPositive("number of pages", pages);
+        return new ParseLimits(maxRecordBytes, maxPointsPerPage, pages, maxBlocks);
+    }
+
+    /**
+     * @param blocks the maximum number of blocks in a document, declared or found
+     * @return new limits with the same other bounds.
+     */
+    public ParseLimits withMaxBlocks(int blocks) {
+        checkPositive("number of blocks", blocks);
+        return new ParseLimits(maxRecordBytes, maxPointsPerPage, maxPages, blocks);
+    }
+
+    private static void checkPositive(String name, long value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("The maximum " + name + " should be positive, received: " + value);
+        }
+    }
+
+    /**
+     * @return the maximum size of a single record.
+     */
+    public long getMaxRecordBytes() {
+        return maxRecordBytes;
+    }
+
+    /**
+     * @return the maximum number of points declared by a page.
+     */
+    public long getMaxPointsPerPage() {
+        return maxPointsPerPage;
+    }
+
+    /**
+     * @return the maximum number of pages in a document.
+     */
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    /**
+     * @return the maximum number of blocks in a document.
+     */
+    public int getMaxBlocks() {
+        return maxBlocks;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+/**
+ * Receives parsing counters, timings and diagnostics, for instrumentation.
+ * <p>
+ * The parser reports its counters and timings once per parsed document. Decoders report them once per decoded page.
+ * Timings are only measured when a listener other than {@link #NONE} is used, so that instrumentation is free when
+ * disabled. Listeners may be shared by several parsers, and must be thread safe in that case.
+ */
+public interface ParseListener {
+    /**
+     * The default listener, ignoring everything.
+     */
+    ParseListener NONE = new ParseListener() {
+    };
+
+    enum Counter {
+        /** characters read, which is the number of bytes for ASCII files */
+        BYTES,
+        LINES,
+        RECORDS,
+        BLOCKS,
+        PAGES,
+        POINTS
+    }
+
+    enum Phase {
+        /** reading the input file */
+        READ,
+        /** splitting lines, parsing records and accumulating multi-line data */
+        RECORDS,
+        /** builder transitions, creating the document tree */
+        BUILD,
+        /** decoding data tables to values */
+        DECODE
+    }
+
+    /**
+     * Called when a counter is incremented.
+     *
+     * @param counter the counter
+     * @param value the increment
+     */
+    default void count(Counter counter, long value) {
+    }
+
+    /**
+     * Called when a phase is completed.
+     *
+     * @param phase the phase
+     * @param nanos the time spent in this phase, in nanoseconds
+     */
+    default void time(Phase phase, long nanos) {
+    }
+
+    /**
+     * Called when decoded data doesn't hold the declared number of points, and the {@link PointCountPolicy} tolerated it.
+     *
+     * @param expected the declared number of points
+     * @param decoded the number of points found in the data
+     */
+    default void pointCountMismatch(int expected, int decoded) {
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.model.JCampPage;
+
+/**
+ * JCamp-DX parser decoding page data while parsing continues.
+ * <p>
+ * The calling thread scans the input and builds records, as with {@link JCampParser}. As soon as a page data table is
+ * complete, the parsing thread reads what decoding needs with {@link JCampPage#preloadTask(ParseListener)}, and the
+ * resulting task is handed over to an executor. Decoding doesn't read the block, which may still receive records.
+ * At most a fixed number of pages are queued or being decoded: when this limit is reached, the parsing thread waits.
+ * Parsing returns once all pages are decoded, so that {@link JCampPage#toArray()} only copies preloaded values.
+ * <p>
+ * All entry points building a document are pipelined: files, compressed or not, texts, buffers and streams, with or
+ * without a {@link ParseControl}. Parsing with a {@link JCampHandler} doesn't build pages and header parsing stops before
+ * the first page, so they work as with {@link JCampParser}.
+ * <p>
+ * Pages that can't be decoded are left as is, their failure is reported when calling {@link JCampPage#toArray()}.
+ * Like {@link JCampParser}, instances are stateless and can be shared by several threads.
+ */
+public class PipelinedJCampParser extends JCampParser {
+    private final Executor executor;
+    private final int maxInFlightPages;
+    private final ParseListener listener;
+
+    public PipelinedJCampParser() {
+        this(ForkJoinPool.commonPool(), 2 * ForkJoinPool.commonPool().getParallelism(), ParseListener.NONE);
+    }
+
+    /**
+     * @param executor the executor decoding pages, it isn't shut down by this parser
+     * @param maxInFlightPages the maximum number of pages being decoded or waiting to be decoded
+     * @param listener receives counters and timings, including decoding ones, called concurrently
+     */
+    public PipelinedJCampParser(Executor executor, int maxInFlightPages, ParseListener listener) {
+        this(executor, maxInFlightPages, listener, Projection.ALL, ParseLimits.NONE, null);
+    }
+
+    /**
+     * @param executor the executor decoding pages, it isn't shut down by this parser
+     * @param maxInFlightPages the maximum number of pages being decoded or waiting to be decoded
+     * @param listener receives counters and timings, including decoding ones, called concurrently
+     * @param projection the records and pages kept in parsed documents
+     * @param limits bounds on the content of parsed documents
+     * @param pool shares equal header records between parsed documents, or null
+     */
+    public PipelinedJCampParser(Executor executor, int maxInFlightPages, ParseListener listener, Projection projection,
+                                ParseLimits limits, RecordPool pool) {
+        super(listener, projection, limits, pool);
+        if (executor == null) {
+            throw new IllegalArgumentException("An executor is required");
+        }
+        if (maxInFlightPages < 1) {
+            throw new IllegalArgumentException("At least one page should be in flight, received: " + maxInFlightPages);
+        }
+
+        this.executor = executor;
+        this.maxInFlightPages = maxInFlightPages;
+        this.listener = listener;
+    }
+
+    /**
+     * @return the maximum number of pages being decoded or waiting to be decoded.
+     */
+    public int getMaxInFlightPages() {
+        return maxInFlightPages;
+    }
+
+    @Override
+    <E extends Exception> JCampDocument parseDocument(DocumentParse<E> parse) throws E {
+        Pipeline pipeline = new Pipeline();
+        try {
+            return parse.parse(pipeline::submit);
+        } finally {
+            pipeline.await();
+        }
+    }
+
+    /**
+     * Pages being decoded for a single parse call.
+     */
+    private class Pipeline {
+        private final Semaphore inFlight = new Semaphore(maxInFlightPages);
+
+        private void submit(JCampPage page) {
+            // read the page and its block now: the parsing thread keeps adding records to the block
+            Runnable task;
+            try {
+                task = page.preloadTask(listener);
+            } catch (RuntimeException e) {
+                // unsupported or invalid data: toArray() will report it when called
+                return;
+            }
+
+            inFlight.acquireUninterruptibly();
+            try {
+                executor.execute(() -> decode(task));
+            } catch (RejectedExecutionException e) {
+                // executor saturated or shut down: decode from the parsing thread instead
+                decode(task);
+            }
+        }
+
+        private void decode(Runnable task) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // invalid data: toArray() will report it when called
+            } finally {
+                inFlight.release();
+            }
+        }
+
+        /**
+         * Wait for all submitted pages to be decoded.
+         */
+        private void await() {
+            inFlight.acquireUninterruptibly(maxInFlightPages);
+            inFlight.release(maxInFlightPages);
+        }
+    }
+}
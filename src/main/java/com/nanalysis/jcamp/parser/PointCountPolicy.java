@@ -0,0 +1,48 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+/**
+ * What decoders return when a data table doesn't hold the number of points declared by VAR_DIM or NPOINTS. Some exports
+ * don't write trailing zeros, others write a few points more than declared.
+ * <p>
+ * Values are decoded into a buffer growing as needed, then trimmed or padded with zeros according to the policy.
+ * Tolerated mismatches are reported to {@link ParseListener#pointCountMismatch(int, int)}.
+ */
+public enum PointCountPolicy {
+    /** Missing points are zeros, extra points are an error. This is the default. */
+    PAD,
+    /** Missing points are zeros, extra points are dropped: the declared number of points is always returned. */
+    PAD_OR_TRIM,
+    /** All decoded points are returned, whatever the declared number. */
+    KEEP;
+
+    /**
+     * @param expected the declared number of points
+     * @param decoded the number of points found in the data
+     * @return the number of points to return
+     * @throws IllegalArgumentException when more points than expected were decoded, and this policy doesn't accept them
+     */
+    public int resultSize(int expected, int decoded) {
+        if (this == KEEP) {
+            return decoded;
+        }
+        if (this == PAD && decoded > expected) {
+            throw new IllegalArgumentException("Too many values, was expecting " + expected + " points, read " + decoded);
+        }
+        return expected;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.nanalysis.jcamp.model.JCampPage;
+import com.nanalysis.jcamp.model.Label;
+import com.nanalysis.jcamp.util.JCampUtil;
+
+/**
+ * Selects the records and pages kept while parsing. Other records are skipped as soon as their label is read, and the
+ * data lines of other pages are never accumulated, so memory and time scale with the selection instead of the document.
+ * <p>
+ * Records defining the document structure and needed to decode pages are always kept, whatever the selection: data type
+ * and class, blocks, symbols and their attributes, pages and data tables. Instances are immutable.
+ */
+public final class Projection {
+    /** Keeps everything, as when parsing without projection. */
+    public static final Projection ALL = new Projection(null, null, null);
+
+    private static final Set<String> STRUCTURAL_LABELS = Set.of(
+        Label.TITLE.normalized(), Label.JCAMP_DX.normalized(), Label.DATA_TYPE.normalized(), Label.DATA_CLASS.normalized(),
+        Label.BLOCKS.normalized(), "BLOCKID", "NTUPLES", "ENDNTUPLES", "VARNAME", Label.SYMBOL.normalized(),
+        Label.VAR_TYPE.normalized(), Label.VAR_FORM.normalized(), Label.VAR_DIM.normalized(), Label.UNITS.normalized(),
+        Label.FIRST.normalized(), Label.LAST.normalized(), Label.FACTOR.normalized(), Label.NPOINTS.normalized(),
+        "XFACTOR", "YFACTOR", "FIRSTX", "LASTX", "FIRSTY", "LASTY", "XUNITS", "YUNITS",
+        Label.PAGE.normalized(), Label.DATA_TABLE.normalized(), Label.XYDATA.normalized(), "END");
+
+    // null when all labels, Y symbols or page values are kept
+    private final Set<String> labels;
+    private final Set<String> ySymbols;
+    private final Set<String> pageValues;
+
+    private Projection(Set<String> labels, Set<String> ySymbols, Set<String> pageValues) {
+        this.labels = labels;
+        this.ySymbols = ySymbols;
+        this.pageValues = pageValues;
+    }
+
+    /**
+     * @param labels the records to keep, besides structural ones
+     * @return a projection keeping only these records, and all pages.
+     */
+    public static Projection of(Label... labels) {
+        return new Projection(Arrays.stream(labels).map(Label::normalized).collect(Collectors.toUnmodifiableSet()), null, null);
+    }
+
+    /**
+     * @param labels the labels of the records to keep, besides structural ones, normalized or as they appear in documents
+     * @return a projection keeping only these records, and all pages.
+     */
+    public static Projection of(String... labels) {
+        return new Projection(Arrays.stream(labels).map(JCampUtil::normalize).collect(Collectors.toUnmodifiableSet()), null, null);
+    }
+
+    /**
+     * Keep only pages whose data table uses one of the given Y symbols, for example "R" to skip imaginary data.
+     *
+     * @param symbols the Y symbols to keep
+     * @return a new projection with the same records, and this page filter.
+     */
+    public Projection withYSymbols(String... symbols) {
+        return new Projection(labels, Collections.unmodifiableSet(new HashSet<>(Arrays.asList(symbols))), pageValues);
+    }
+
+    /**
+     * Keep only pages with one of the given page values, for example "1" to keep the first page of "##PAGE=N=1".
+     * Documents without PAGE record define a single page, whose value is "1".
+     *
+     * @param values the page values to keep, as written in the document
+     * @return a new projection with the same records, and this page filter.
+     */
+    public Projection withPageValues(String... values) {
+        return new Projection(labels, ySymbols, Collections.unmodifiableSet(new HashSet<>(Arrays.asList(values))));
+    }
+
+    /**
+     * @return true when all records are kept.
+     */
+    public boolean keepsAllRecords() {
+        return labels == null;
+    }
+
+    /**
+     * @return true when all pages are kept.
+     */
+    public boolean keepsAllPages() {
+        return ySymbols == null && pageValues == null;
+    }
+
+    /**
+     * @param normalizedLabel a record label, normalized
+     * @return true when the record should be kept.
+     */
+    public boolean acceptsRecord(String normalizedLabel) {
+        return labels == null || labels.contains(normalizedLabel) || STRUCTURAL_LABELS.contains(normalizedLabel);
+    }
+
+    /**
+     * @param page a page whose data table header is known
+     * @return true when the page should be kept.
+     */
+    public boolean acceptsPage(JCampPage page) {
+        if (ySymbols != null && !ySymbols.contains(page.extractYSymbol())) {
+            return false;
+        }
+        return pageValues == null || pageValues.contains(page.extractPageValue().trim());
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.nanalysis.jcamp.model.JCampRecord;
+
+/**
+ * Shares equal strings and records between parsed documents. Files from the same instrument or software repeat most of
+ * their header records: processing settings, origin, owner, spectrometer. With a pool, each of them is kept once for all
+ * documents instead of once per document, which matters when many documents are kept in memory, in a cache for example.
+ * <p>
+ * Records are shared when their line number, label, data and comment are equal. Shared records are frozen, see
+ * {@link JCampRecord#freeze()}. Data records and values longer than a maximum length aren't pooled: they are rarely
+ * repeated. The pool stops growing once it holds a maximum number of entries, it keeps serving the ones it has.
+ * <p>
+ * Documents still own their record tables: freeze them with {@link com.nanalysis.jcamp.model.JCampDocument#freeze()}
+ * to compact those as well. A pool is thread safe, and can be shared by several parsers.
+ */
+public class RecordPool {
+    public static final int DEFAULT_MAX_VALUE_LENGTH = 256;
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+
+    private final int maxValueLength;
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<RecordKey, JCampRecord> records = new ConcurrentHashMap<>();
+
+    public RecordPool() {
+        this(DEFAULT_MAX_VALUE_LENGTH, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxValueLength the maximum length of pooled record data
+     * @param maxEntries the maximum number of strings, and of records, kept by this pool
+     */
+    public RecordPool(int maxValueLength, int maxEntries) {
+        if (maxValueLength < 0) {
+            throw new IllegalArgumentException("The maximum value length can't be negative, received: " + maxValueLength);
+        }
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("The maximum number of entries should be positive, received: " + maxEntries);
+        }
+
+        this.maxValueLength = maxValueLength;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param value a string
+     * @return an equal string, shared with other callers when the pool isn't full.
+     */
+    public String intern(String value) {
+        String shared = strings.get(value);
+        if (shared != null) {
+            return shared;
+        }
+        if (strings.size() >= maxEntries) {
+            return value;
+        }
+        shared = strings.putIfAbsent(value, value);
+        return shared != null ? shared : value;
+    }
+
+    /**
+     * Find a shared record equal to a complete one.
+     *
+     * @param record a record whose data is complete
+     * @return a frozen record equal to this one, or the record itself when it isn't pooled.
+     */
+    public JCampRecord intern(JCampRecord record) {
+        String data = record.getString();
+        if (data.length() > maxValueLength) {
+            return record;
+        }
+
+        RecordKey key = new RecordKey(record.getLineNumber(), record.getLabel(), data, record.getComment());
+        JCampRecord shared = records.get(key);
+        if (shared != null) {
+            return shared;
+        }
+        if (records.size() >= maxEntries) {
+            return record;
+        }
+
+        // strings are shared as well, with records found on other lines
+        JCampRecord pooled = new JCampRecord(key.lineNumber, intern(key.label), intern(data), intern(key.comment));
+        pooled.freeze();
+        shared = records.putIfAbsent(key, pooled);
+        return shared != null ? shared : pooled;
+    }
+
+    /**
+     * @return the number of shared strings.
+     */
+    public int getStringCount() {
+        return strings.size();
+    }
+
+    /**
+     * @return the number of shared records.
+     */
+    public int getRecordCount() {
+        return records.size();
+    }
+
+    /**
+     * Forget all shared strings and records. Documents already parsed keep the ones they use.
+     */
+    public void clear() {
+        strings.clear();
+        records.clear();
+    }
+
+    private static final class RecordKey {
+        private final int lineNumber;
+        private final String label;
+        private final String data;
+        private final String comment;
+        private final int hash;
+
+        private RecordKey(int lineNumber, String label, String data, String comment) {
+            this.lineNumber = lineNumber;
+            this.label = label;
+            this.data = data;
+            this.comment = comment;
+            this.hash = Objects.hash(lineNumber, label, data, comment);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RecordKey)) {
+                return false;
+            }
+            RecordKey other = (RecordKey) o;
+            return lineNumber == other.lineNumber && label.equals(other.label) && data.equals(other.data) && comment.equals(other.comment);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -15,8 +15,10 @@
  */
 package com.nanalysis.jcamp.parser.builder;
 
+import com.nanalysis.jcamp.jfr.BlockBuildEvent;
 import com.nanalysis.jcamp.model.JCampDocument;
 import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampPage;
 import com.nanalysis.jcamp.model.JCampRecord;
 import com.nanalysis.jcamp.model.Label;
 
@@ -27,11 +29,24 @@ public class BlockBuilder implements JCampBuilder<JCampBlock> {
     private static final String END_OF_BLOCK = "END";
 
     private final DocumentBuilder parent;
+    private final boolean chained;
     private final JCampBlock block;
+    private final BlockBuildEvent event = new BlockBuildEvent();
 
     public BlockBuilder(DocumentBuilder parent) {
+        this(parent, true);
+    }
+
+    /**
+     * @param parent the document builder
+     * @param chained true to start the next block after this one, until the declared number of blocks is reached.
+     *                False to build this block alone, for example in parallel with other ones: it isn't added to the document.
+     */
+    public BlockBuilder(DocumentBuilder parent, boolean chained) {
         this.parent = parent;
+        this.chained = chained;
         this.block = new JCampBlock(parent.getObject());
+        this.event.begin();
     }
 
     @Override
@@ -55,6 +70,11 @@ public class BlockBuilder implements JCampBuilder<JCampBlock> {
         }
 
         if (END_OF_BLOCK.equals(record.getNormalizedLabel())) {
+            commitEvent();
+            if (!chained) {
+                return new ErrorBuilder("After block end!");
+            }
+
             JCampDocument document = parent.getObject();
             if (!document.containsDeclaredNumberOfBlocks()) {
                 // previous block ended, add a new one
@@ -71,4 +91,28 @@ public class BlockBuilder implements JCampBuilder<JCampBlock> {
         block.addRecord(record);
         return this;
     }
+
+    private void commitEvent() {
+        event.end();
+        if (event.shouldCommit()) {
+            event.fileName = block.getSourceName();
+            event.dataType = block.getDataType().name();
+            event.pageCount = block.getPageCount();
+            event.pointCount = declaredPointCount();
+            event.commit();
+        }
+    }
+
+    private long declaredPointCount() {
+        long count = 0;
+        for (int i = 0; i < block.getPageCount(); i++) {
+            JCampPage page = block.page(i);
+            try {
+                count += page.getDimensionForSymbol(page.extractXSymbol());
+            } catch (RuntimeException e) {
+                // no data table, or an unsupported one: no declared point
+            }
+        }
+        return count;
+    }
 }
@@ -38,7 +38,7 @@ public class DocumentBuilder implements JCampBuilder<JCampDocument> {
             return new ErrorBuilder("After document end!");
         }
 
-        if (root.getDataType().isSingleBlock() || root.contains(Label.BLOCKS)) {
+        if (isHeaderComplete()) {
             BlockBuilder builder = new BlockBuilder(this);
             root.addBlock(builder.getObject());
             return builder.consume(record);
@@ -49,4 +49,11 @@ public class DocumentBuilder implements JCampBuilder<JCampDocument> {
         return this;
     }
 
+    /**
+     * @return true when the document header is complete, the next record starts the first block.
+     */
+    public boolean isHeaderComplete() {
+        return root.getDataType().isSingleBlock() || root.contains(Label.BLOCKS);
+    }
+
 }
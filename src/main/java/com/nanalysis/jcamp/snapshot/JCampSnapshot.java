@@ -0,0 +1,408 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampContainer;
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.model.JCampPage;
+import com.nanalysis.jcamp.model.JCampRecord;
+import com.nanalysis.jcamp.model.Label;
+import com.nanalysis.jcamp.model.XYDataPage;
+
+/**
+ * Versioned binary snapshot of parsed documents, much faster to load than JCamp-DX text.
+ * <p>
+ * A snapshot contains all blocks, pages and records, and optionally the decoded page values. In that case, data tables are
+ * stored as little-endian double arrays, and their text is dropped (only the header line is kept). Snapshots are
+ * memory-mapped when loaded, and page values are only read when accessed, through {@link JCampPage#toArray()}.
+ * <p>
+ * Layout, all numbers in little-endian order:
+ * <ul>
+ * <li>header (48 bytes): magic, version, flags, metadata offset, length and CRC32, then a CRC32 of the header itself</li>
+ * <li>data section: page values, each array aligned on 8 bytes</li>
+ * <li>metadata: string table, then the document tree referencing strings by index</li>
+ * </ul>
+ */
+public final class JCampSnapshot {
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = "JCAMPSNP".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_SIZE = 48;
+    private static final int FLAG_DATA = 1;
+    private static final int PAGE = 0;
+    private static final int XYDATA_PAGE = 1;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+    private JCampSnapshot() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * Write a document snapshot.
+     *
+     * @param document the document to store
+     * @param file the snapshot file, overwritten if it exists
+     * @param includeData whether to store decoded page values. When a page can't be decoded, its data table text is kept.
+     * @throws IOException when writing fails
+     */
+    public static void write(JCampDocument document, Path file, boolean includeData) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            Encoder encoder = new Encoder(channel, includeData);
+            channel.position(HEADER_SIZE);
+            encoder.document(document);
+
+            long metadataOffset = channel.position();
+            ByteBuffer metadata = encoder.metadata();
+            int metadataLength = metadata.remaining();
+            CRC32 crc = new CRC32();
+            crc.update(metadata.duplicate());
+            writeFully(channel, metadata);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(includeData ? FLAG_DATA : 0);
+            header.putLong(metadataOffset);
+            header.putLong(metadataLength);
+            header.putInt((int) crc.getValue());
+            header.putInt(0);
+            header.putInt(headerChecksum(header));
+            header.putInt(0);
+            header.flip();
+            channel.position(0);
+            writeFully(channel, header);
+        }
+    }
+
+    /**
+     * Load a document snapshot. The file is memory-mapped: page values are only read when accessed.
+     *
+     * @param file the snapshot file
+     * @return the restored document.
+     * @throws IOException when reading fails, or when the file isn't a valid snapshot
+     */
+    public static JCampDocument read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not a JCamp snapshot, file too small: " + file);
+            }
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new IOException("Not a JCamp snapshot: " + file);
+            }
+            if (header.getInt(40) != headerChecksum(header.duplicate().position(40))) {
+                throw new IOException("Corrupted snapshot header: " + file);
+            }
+
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version: " + version + ", expected " + VERSION);
+            }
+            header.getInt(); // flags, informative only
+            long metadataOffset = header.getLong();
+            long metadataLength = header.getLong();
+            int metadataChecksum = header.getInt();
+            if (metadataOffset < HEADER_SIZE || metadataLength > Integer.MAX_VALUE || metadataOffset + metadataLength > channel.size()) {
+                throw new IOException("Corrupted snapshot header: " + file);
+            }
+
+            ByteBuffer metadata = channel.map(FileChannel.MapMode.READ_ONLY, metadataOffset, metadataLength).order(ByteOrder.LITTLE_ENDIAN);
+            CRC32 crc = new CRC32();
+            crc.update(metadata.duplicate());
+            if ((int) crc.getValue() != metadataChecksum) {
+                throw new IOException("Corrupted snapshot metadata: " + file);
+            }
+
+            Decoder decoder = new Decoder(metadata);
+            JCampDocument document = decoder.document();
+            decoder.mapData(channel);
+            return document;
+        }
+    }
+
+    private static int headerChecksum(ByteBuffer header) {
+        CRC32 crc = new CRC32();
+        ByteBuffer content = header.duplicate();
+        content.flip();
+        crc.update(content);
+        return (int) crc.getValue();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static boolean isDataRecord(JCampRecord record) {
+        String label = record.getNormalizedLabel();
+        return Label.DATA_TABLE.normalized().equals(label) || Label.XYDATA.normalized().equals(label);
+    }
+
+    /**
+     * Serializes the document tree, and writes page data to the channel while doing so.
+     */
+    private static class Encoder {
+        private final FileChannel channel;
+        private final boolean includeData;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final List<String> stringList = new ArrayList<>();
+        private final ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private ByteBuffer tree = ByteBuffer.allocate(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        private Encoder(FileChannel channel, boolean includeData) {
+            this.channel = channel;
+            this.includeData = includeData;
+        }
+
+        private void document(JCampDocument document) throws IOException {
+            container(document, null);
+            List<JCampBlock> blocks = new ArrayList<>();
+            document.blocks().forEach(blocks::add);
+            putInt(blocks.size());
+            for (JCampBlock block : blocks) {
+                container(block, null);
+                putInt(block.getPageCount());
+                for (int i = 0; i < block.getPageCount(); i++) {
+                    page(block.page(i));
+                }
+            }
+        }
+
+        private void page(JCampPage page) throws IOException {
+            double[] data = includeData ? decode(page) : null;
+            putInt(page instanceof XYDataPage ? XYDATA_PAGE : PAGE);
+            container(page, data == null ? null : page.getHeader());
+            if (data == null) {
+                putLong(-1);
+                putInt(0);
+            } else {
+                putLong(channel.position());
+                putInt(data.length);
+                writeData(data);
+            }
+        }
+
+        private void container(JCampContainer container, String dataHeader) {
+            List<JCampRecord> records = new ArrayList<>();
+            container.records().forEach(records::add);
+            putInt(records.size());
+            for (JCampRecord record : records) {
+                boolean replaceData = dataHeader != null && isDataRecord(record);
+                putInt(record.getLineNumber());
+                putInt(string(record.getLabel()));
+                putInt(string(replaceData ? dataHeader : record.getString()));
+                putInt(string(record.getComment()));
+            }
+        }
+
+        private double[] decode(JCampPage page) {
+            try {
+                return page.toArray();
+            } catch (RuntimeException e) {
+                // keep the data table text instead
+                return null;
+            }
+        }
+
+        private void writeData(double[] data) throws IOException {
+            chunk.clear();
+            DoubleBuffer doubles = chunk.asDoubleBuffer();
+            for (int offset = 0; offset < data.length; ) {
+                int count = Math.min(doubles.capacity(), data.length - offset);
+                doubles.clear();
+                doubles.put(data, offset, count);
+                chunk.clear().limit(count * Double.BYTES);
+                writeFully(channel, chunk);
+                offset += count;
+            }
+        }
+
+        private int string(String value) {
+            return strings.computeIfAbsent(value, v -> {
+                stringList.add(v);
+                return stringList.size() - 1;
+            });
+        }
+
+        private ByteBuffer metadata() {
+            List<byte[]> encoded = new ArrayList<>(stringList.size());
+            int size = Integer.BYTES;
+            for (String value : stringList) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                size += Integer.BYTES + bytes.length;
+            }
+
+            tree.flip();
+            ByteBuffer metadata = ByteBuffer.allocate(size + tree.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+            metadata.putInt(encoded.size());
+            for (byte[] bytes : encoded) {
+                metadata.putInt(bytes.length);
+                metadata.put(bytes);
+            }
+            metadata.put(tree);
+            return metadata.flip();
+        }
+
+        private void putInt(int value) {
+            ensureCapacity(Integer.BYTES);
+            tree.putInt(value);
+        }
+
+        private void putLong(long value) {
+            ensureCapacity(Long.BYTES);
+            tree.putLong(value);
+        }
+
+        private void ensureCapacity(int additional) {
+            if (tree.remaining() < additional) {
+                ByteBuffer larger = ByteBuffer.allocate(tree.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+                tree.flip();
+                larger.put(tree);
+                tree = larger;
+            }
+        }
+    }
+
+    /**
+     * Restores the document tree, then maps page data lazily.
+     */
+    private static class Decoder {
+        private final ByteBuffer metadata;
+        private final String[] strings;
+        private final List<PendingData> pendingData = new ArrayList<>();
+
+        private Decoder(ByteBuffer metadata) {
+            this.metadata = metadata;
+            this.strings = new String[metadata.getInt()];
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < strings.length; i++) {
+                int length = metadata.getInt();
+                if (length > bytes.length) {
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                }
+                metadata.get(bytes, 0, length);
+                strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+        }
+
+        private JCampDocument document() {
+            JCampDocument document = new JCampDocument();
+            container(document);
+            int blockCount = metadata.getInt();
+            for (int b = 0; b < blockCount; b++) {
+                JCampBlock block = new JCampBlock(document);
+                document.addBlock(block);
+                container(block);
+                int pageCount = metadata.getInt();
+                for (int p = 0; p < pageCount; p++) {
+                    JCampPage page = metadata.getInt() == XYDATA_PAGE ? new XYDataPage(block) : new JCampPage(block);
+                    block.addPage(page);
+                    container(page);
+                    long offset = metadata.getLong();
+                    int length = metadata.getInt();
+                    if (offset >= 0) {
+                        pendingData.add(new PendingData(page, offset, length));
+                    }
+                }
+            }
+            return document;
+        }
+
+        private void container(JCampContainer container) {
+            int recordCount = metadata.getInt();
+            for (int i = 0; i < recordCount; i++) {
+                int lineNumber = metadata.getInt();
+                String label = strings[metadata.getInt()];
+                String data = strings[metadata.getInt()];
+                String comment = strings[metadata.getInt()];
+                container.addRecord(new JCampRecord(lineNumber, label, data, comment));
+            }
+        }
+
+        /**
+         * Map the data section in segments of at most 1GB, and attach lazy suppliers to pages.
+         */
+        private void mapData(FileChannel channel) throws IOException {
+            Iterator<PendingData> iterator = pendingData.iterator();
+            PendingData next = iterator.hasNext() ? iterator.next() : null;
+            while (next != null) {
+                long segmentStart = next.offset;
+                List<PendingData> segmentPages = new ArrayList<>();
+                long segmentEnd = segmentStart;
+                while (next != null && (segmentPages.isEmpty() || next.end() - segmentStart <= MAX_SEGMENT_SIZE)) {
+                    if (next.end() - next.offset > Integer.MAX_VALUE || next.end() > channel.size()) {
+                        throw new IOException("Invalid page data location: " + next.offset);
+                    }
+                    segmentPages.add(next);
+                    segmentEnd = Math.max(segmentEnd, next.end());
+                    next = iterator.hasNext() ? iterator.next() : null;
+                }
+
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentEnd - segmentStart);
+                for (PendingData data : segmentPages) {
+                    int position = (int) (data.offset - segmentStart);
+                    int length = data.length;
+                    data.page.setDecodedData(() -> {
+                        double[] values = new double[length];
+                        segment.duplicate().position(position).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(values);
+                        return values;
+                    });
+                }
+            }
+        }
+    }
+
+    private static class PendingData {
+        private final JCampPage page;
+        private final long offset;
+        private final int length;
+
+        private PendingData(JCampPage page, long offset, int length) {
+            this.page = page;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        private long end() {
+            return offset + (long) length * Double.BYTES;
+        }
+    }
+}
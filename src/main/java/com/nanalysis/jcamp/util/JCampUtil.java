@@ -16,6 +16,12 @@
 package com.nanalysis.jcamp.util;
 
 public class JCampUtil {
+    // powers of ten which are exactly represented as doubles
+    private static final double[] EXACT_POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
     private JCampUtil() {
         throw new UnsupportedOperationException("Utility class");
     }
@@ -81,4 +87,74 @@ public class JCampUtil {
 
         return data.replace("[", "").replace("]", "");
     }
+
+    /**
+     * Parse a floating point number from a part of a character sequence, without creating any object.
+     * <p>
+     * Simple decimal numbers, such as "-12.5" or "1.25E-3", are converted directly when the result is exact. Other
+     * numbers fall back to {@link Double#parseDouble(String)}, so results are always the same.
+     *
+     * @param text the text containing the number
+     * @param start the number first character index
+     * @param end the index after the number last character
+     * @return the parsed number.
+     * @throws NumberFormatException when the text isn't a valid number
+     */
+    public static double parseDouble(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean dot = false;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (mantissa >= MAX_EXACT_MANTISSA / 10) {
+                    return Double.parseDouble(text.subSequence(start, end).toString());
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (dot) {
+                    exponent--;
+                }
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                break;
+            }
+        }
+
+        if (i < end && (text.charAt(i) == 'E' || text.charAt(i) == 'e') && digits > 0) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+                negativeExponent = text.charAt(i) == '-';
+                i++;
+            }
+            int explicitExponent = 0;
+            int exponentDigits = 0;
+            for (; i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9' && explicitExponent < 1000; i++) {
+                explicitExponent = explicitExponent * 10 + (text.charAt(i) - '0');
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                i = -1; // invalid, let the fallback report it
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        if (i != end || digits == 0 || Math.abs(exponent) >= EXACT_POWERS_OF_TEN.length) {
+            return Double.parseDouble(text.subSequence(start, end).toString());
+        }
+
+        // both operands are exact, so the result is correctly rounded, as with Double.parseDouble()
+        double value = exponent >= 0 ? mantissa * EXACT_POWERS_OF_TEN[exponent] : mantissa / EXACT_POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+    }
 }
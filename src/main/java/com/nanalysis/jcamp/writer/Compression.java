@@ -0,0 +1,43 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.writer;
+
+import com.nanalysis.jcamp.model.Form;
+
+/**
+ * Compression modes available when writing data tables.
+ */
+public enum Compression {
+    AFFN, // ASCII Free Format Numeric: values separated by spaces
+    PAC, // Packed: values separated by their sign
+    SQZ, // Squeezed: the first digit and sign of each value are replaced by a character
+    DIF, // Difference: squeezed first value, then differences between consecutive values
+    DIFDUP; // Difference with duplicate suppression: repeated differences are written once, followed by a count
+
+    /**
+     * @return the form to declare for data written with this compression. Only AFFN is declared as AFFN, others are ASDF.
+     */
+    public Form getForm() {
+        return this == AFFN ? Form.AFFN : Form.ASDF;
+    }
+
+    /**
+     * @return true when lines are written as differences, and are followed by a Y value check.
+     */
+    public boolean isDifference() {
+        return this == DIF || this == DIFDUP;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.writer;
+
+import java.io.IOException;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Encodes integer values as data table lines, in any of the supported compression modes.
+ * Each line starts with the X value of its first Y value, followed by as many Y values as the line width allows.
+ * <p>
+ * In DIF modes, each line following a line ending with a difference starts by repeating the last value of the previous line
+ * (Y value check), and a last line containing only this check is added at the end of the table.
+ */
+final class DataEncoder {
+    private static final String POSITIVE_SQZ = "@ABCDEFGHI";
+    private static final String NEGATIVE_SQZ = "@abcdefghi";
+    private static final String POSITIVE_DIF = "%JKLMNOPQR";
+    private static final String NEGATIVE_DIF = "%jklmnopqr";
+    private static final String DUP = "?STUVWXYZs";
+
+    /**
+     * Called at the end of each encoded line, to terminate it and eventually flush the buffer.
+     */
+    interface LineEnd {
+        void endLine() throws IOException;
+    }
+
+    private final Utf8Buffer out;
+    private final LineEnd lineEnd;
+    private final Compression compression;
+    private final int lineWidth;
+
+    DataEncoder(Utf8Buffer out, LineEnd lineEnd, Compression compression, int lineWidth) {
+        this.out = out;
+        this.lineEnd = lineEnd;
+        this.compression = compression;
+        this.lineWidth = lineWidth;
+    }
+
+    /**
+     * Encode all values.
+     *
+     * @param values the value source, called with indexes from 0 to count - 1
+     * @param count the number of values
+     * @param firstX the X value of the first Y value
+     * @param deltaX the X increment between two consecutive Y values
+     * @throws IOException when the line end callback fails
+     */
+    void encode(IntToLongFunction values, int count, double firstX, double deltaX) throws IOException {
+        boolean difference = compression.isDifference();
+        boolean difMode = false; // true when the last written token is a difference (or a duplicated difference)
+        long previous = 0;
+        int index = 0;
+
+        while (index < count) {
+            int lineStart = out.size();
+            boolean yCheck = difMode;
+            if (yCheck) {
+                // repeat the last value of the previous line, then keep going with differences
+                out.appendDecimal(firstX + (index - 1) * deltaX);
+                writeAsdf(previous, POSITIVE_SQZ, NEGATIVE_SQZ);
+            } else {
+                out.appendDecimal(firstX + index * deltaX);
+                previous = values.applyAsLong(index++);
+                writeAbsolute(previous);
+                difMode = false;
+            }
+
+            // always write at least one new value after a Y check, so that each line makes progress
+            boolean forced = yCheck;
+            while (index < count) {
+                long value = values.applyAsLong(index);
+                if (difference) {
+                    long diff = value - previous;
+                    int run = 1;
+                    if (compression == Compression.DIFDUP) {
+                        long last = value;
+                        while (index + run < count) {
+                            long next = values.applyAsLong(index + run);
+                            if (next - last != diff) {
+                                break;
+                            }
+                            last = next;
+                            run++;
+                        }
+                    }
+
+                    int length = tokenLength(diff) + (run > 1 ? tokenLength(run) : 0);
+                    if (!forced && out.size() - lineStart + length > lineWidth) {
+                        break;
+                    }
+
+                    writeAsdf(diff, POSITIVE_DIF, NEGATIVE_DIF);
+                    if (run > 1) {
+                        writeAsdf(run, DUP, DUP);
+                    }
+                    previous = value + diff * (run - 1);
+                    index += run;
+                    difMode = true;
+                } else {
+                    int length = absoluteLength(value);
+                    if (!forced && out.size() - lineStart + length > lineWidth) {
+                        break;
+                    }
+
+                    writeAbsolute(value);
+                    previous = value;
+                    index++;
+                }
+                forced = false;
+            }
+
+            lineEnd.endLine();
+        }
+
+        if (difMode) {
+            // final Y value check, repeating the last value
+            out.appendDecimal(firstX + (count - 1) * deltaX);
+            writeAsdf(previous, POSITIVE_SQZ, NEGATIVE_SQZ);
+            lineEnd.endLine();
+        }
+    }
+
+    /**
+     * Write an absolute value, using the form expected by the compression mode.
+     *
+     * @param value the value to write
+     */
+    private void writeAbsolute(long value) {
+        if (compression == Compression.AFFN) {
+            out.append(' ');
+            out.appendLong(value);
+        } else if (compression == Compression.PAC) {
+            if (value >= 0) {
+                out.append('+');
+            }
+            out.appendLong(value);
+        } else {
+            writeAsdf(value, POSITIVE_SQZ, NEGATIVE_SQZ);
+        }
+    }
+
+    /**
+     * Write an ASDF token: the first digit and the sign are replaced by a single character.
+     *
+     * @param value the value to write
+     * @param positives characters to use for the first digit of positive values
+     * @param negatives characters to use for the first digit of negative values
+     */
+    private void writeAsdf(long value, String positives, String negatives) {
+        if (value == Long.MIN_VALUE) {
+            throw new IllegalArgumentException("Value out of range: " + value);
+        }
+
+        long absolute = Math.abs(value);
+        int digits = Utf8Buffer.digitCount(absolute);
+        long scale = pow10(digits - 1);
+        int first = (int) (absolute / scale);
+        out.append(value < 0 ? negatives.charAt(first) : positives.charAt(first));
+        if (digits > 1) {
+            out.appendDigits(absolute % scale, digits - 1);
+        }
+    }
+
+    /**
+     * @param value a value
+     * @return the number of characters used to write this value as an ASDF token.
+     */
+    private static int tokenLength(long value) {
+        return Utf8Buffer.digitCount(Math.abs(value));
+    }
+
+    /**
+     * @param value a value
+     * @return the number of characters used by {@link #writeAbsolute(long)} for this value.
+     */
+    private int absoluteLength(long value) {
+        switch (compression) {
+            case AFFN:
+                return tokenLength(value) + (value < 0 ? 2 : 1); // separator, then sign
+            case PAC:
+                return tokenLength(value) + 1; // sign
+            default:
+                return tokenLength(value);
+        }
+    }
+
+    private static long pow10(int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= 10;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.writer;
+
+import static com.nanalysis.jcamp.util.JCampUtil.normalize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.nanalysis.jcamp.model.Label;
+
+/**
+ * Edits header records of an existing JCamp-DX file, without decoding or re-encoding its data.
+ * <p>
+ * The source file is scanned to locate record boundaries. Records being set or removed are rewritten, everything else,
+ * including data tables, comments and line endings, is copied byte for byte using {@link FileChannel#transferTo}.
+ * Inline comments of replaced records ("##LABEL= value $$ comment") are kept.
+ * <p>
+ * By default, only the header is edited: records before the first data record, which for compound files means the link
+ * block and the header of the first block. Scanning stops at the first data record, and the rest of the file is copied
+ * in a single transfer. Use {@link #setAllBlocks(boolean)} to edit records in all blocks, which requires scanning the
+ * whole file.
+ * <p>
+ * Setting a record replaces all edited records using the same (normalized) label. When the label isn't defined yet, the
+ * record is added before the first data related record (NTUPLES, PAGE, XYDATA, ...). For compound files, this means in
+ * the first block.
+ */
+public class JCampHeaderEditor {
+    private static final int SCAN_BUFFER_SIZE = 1024 * 1024;
+    private static final Set<String> DATA_LABELS = Set.of(
+        Label.DATA_TABLE.normalized(), Label.XYDATA.normalized(), "PEAKTABLE", "XYPOINTS", "PEAKASSIGNMENTS");
+    private static final Set<String> INSERT_BEFORE_LABELS = Set.of(
+        "NTUPLES", Label.PAGE.normalized(), Label.DATA_TABLE.normalized(), Label.XYDATA.normalized(), "PEAKTABLE", "XYPOINTS", "END");
+
+    private final Map<String, Edit> edits = new LinkedHashMap<>();
+    private boolean allBlocks;
+
+    /**
+     * @param allBlocks true to edit records in all blocks, false (the default) to edit the header only.
+     */
+    public void setAllBlocks(boolean allBlocks) {
+        this.allBlocks = allBlocks;
+    }
+
+    /**
+     * @return true when records are edited in all blocks, false when only the header is.
+     */
+    public boolean isAllBlocks() {
+        return allBlocks;
+    }
+
+    /**
+     * Set a record value, replacing the existing one or adding it when it isn't defined.
+     * Only header records are replaced, unless all blocks are edited.
+     *
+     * @param label the record label, without "##" prefix
+     * @param value the new record data
+     */
+    public void set(String label, String value) {
+        String normalized = normalize(label);
+        if (DATA_LABELS.contains(normalized)) {
+            throw new IllegalArgumentException("Data records can't be edited: " + label);
+        }
+        edits.put(normalized, new Edit(label, value));
+    }
+
+    /**
+     * Remove all records using this label.
+     *
+     * @param label the record label, without "##" prefix
+     */
+    public void remove(String label) {
+        set(label, null);
+    }
+
+    /**
+     * Rewrite a file with all edits applied. The source and target can be the same file, in which case the result is
+     * written to a temporary file first, then moved over the original.
+     *
+     * @param source the file to read
+     * @param target the file to write
+     * @throws IOException when reading or writing fails
+     */
+    public void rewrite(Path source, Path target) throws IOException {
+        boolean inPlace = Files.exists(target) && Files.isSameFile(source, target);
+        Path destination = inPlace ? Files.createTempFile(target.toAbsolutePath().getParent(), ".jcamp", ".tmp") : target;
+
+        try (FileChannel input = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(destination, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            rewrite(input, output);
+        } catch (IOException | RuntimeException e) {
+            if (inPlace) {
+                Files.deleteIfExists(destination);
+            }
+            throw e;
+        }
+
+        if (inPlace) {
+            try {
+                Files.move(destination, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(destination, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Rewrite a file with all edits applied, to any destination.
+     *
+     * @param source the file to read, from its beginning
+     * @param target the destination
+     * @throws IOException when reading or writing fails
+     */
+    public void rewrite(FileChannel source, WritableByteChannel target) throws IOException {
+        List<Segment> segments = scan(source);
+        String lineSeparator = detectLineSeparator(source);
+
+        Map<String, Edit> pending = new LinkedHashMap<>(edits);
+        pending.values().removeIf(edit -> edit.value == null);
+        segments.stream().filter(s -> s.label != null).forEach(s -> pending.remove(s.label));
+
+        long copyStart = 0;
+        long copyEnd = 0;
+        for (Segment segment : segments) {
+            Edit edit = segment.label == null ? null : edits.get(segment.label);
+            boolean insertHere = !pending.isEmpty() && segment.label != null && INSERT_BEFORE_LABELS.contains(segment.label);
+            if (edit == null && !insertHere) {
+                copyEnd = segment.end;
+                continue;
+            }
+
+            // flush untouched content so far
+            transfer(source, copyStart, copyEnd, target);
+            copyStart = copyEnd = segment.start;
+
+            if (insertHere) {
+                for (Edit added : pending.values()) {
+                    write(target, added.label, added.value, lineSeparator, source, List.of());
+                }
+                pending.clear();
+            }
+
+            if (edit == null) {
+                copyEnd = segment.end;
+            } else {
+                if (edit.value != null) {
+                    write(target, segment.originalLabel, edit.value, lineSeparator, source, segment.comments);
+                }
+                copyStart = copyEnd = segment.end;
+            }
+        }
+        transfer(source, copyStart, copyEnd, target);
+
+        for (Edit added : pending.values()) {
+            write(target, added.label, added.value, lineSeparator, source, List.of());
+        }
+    }
+
+    /**
+     * Split the file in segments: one for each record, starting at its "##" line and including its continuation lines,
+     * and one for each group of comment and blank lines. Data tables are single segments as well.
+     * Unless all blocks are edited, the first data record is the last segment and extends to the end of the file.
+     */
+    private List<Segment> scan(FileChannel source) throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        byte[] bytes = new byte[SCAN_BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        StringBuilder label = new StringBuilder();
+
+        final int lineStart = 0, firstHash = 1, firstDollar = 2, inLabel = 3, inLine = 4, inLineDollar = 5, inComment = 6;
+        int state = lineStart;
+        long offset = 0; // position of the buffer content in the file
+        long currentLineStart = 0;
+        long commentStart = 0;
+        byte previous = 0;
+        Segment current = null;
+        boolean currentIsComment = false;
+        boolean keepComments = false; // true for records being replaced
+
+        int count;
+        while ((count = source.read(buffer, offset)) > 0) {
+            for (int i = 0; i < count; i++) {
+                byte b = bytes[i];
+                switch (state) {
+                    case lineStart:
+                        if (b == '#') {
+                            state = firstHash;
+                        } else if (b == '$') {
+                            state = firstDollar;
+                        } else if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                            state = inLine;
+                        }
+                        break;
+                    case firstHash:
+                        if (b == '#') {
+                            // new record
+                            close(current, currentLineStart, segments);
+                            current = new Segment(currentLineStart);
+                            currentIsComment = false;
+                            keepComments = false;
+                            label.setLength(0);
+                            state = inLabel;
+                        } else {
+                            state = b == '\n' ? lineStart : inLine;
+                        }
+                        break;
+                    case firstDollar:
+                        if (b == '$') {
+                            // comment line: ends a record, but successive comments are grouped
+                            if (current == null || !currentIsComment) {
+                                close(current, currentLineStart, segments);
+                                current = new Segment(currentLineStart);
+                                currentIsComment = true;
+                                keepComments = false;
+                            }
+                        }
+                        state = b == '\n' ? lineStart : inLine;
+                        break;
+                    case inLabel:
+                        if (b == '=' || b == '\n') {
+                            current.originalLabel = label.toString().trim();
+                            current.label = normalize(current.originalLabel);
+                            if (!allBlocks && DATA_LABELS.contains(current.label)) {
+                                // header only: everything from here is copied as is
+                                close(current, source.size(), segments);
+                                return withLeadingSegment(segments);
+                            }
+                            Edit edit = edits.get(current.label);
+                            keepComments = edit != null && edit.value != null;
+                            state = b == '\n' ? lineStart : inLine;
+                        } else {
+                            label.append((char) (b & 0xFF));
+                        }
+                        break;
+                    case inLine:
+                        if (b == '\n') {
+                            state = lineStart;
+                        } else if (b == '$' && keepComments) {
+                            state = inLineDollar;
+                        }
+                        break;
+                    case inLineDollar:
+                        if (b == '$') {
+                            commentStart = offset + i - 1;
+                            state = inComment;
+                        } else {
+                            state = b == '\n' ? lineStart : inLine;
+                        }
+                        break;
+                    default:
+                        if (b == '\n') {
+                            long commentEnd = offset + i - (previous == '\r' ? 1 : 0);
+                            current.comments.add(new long[] {commentStart, commentEnd});
+                            state = lineStart;
+                        }
+                }
+
+                if (b == '\n') {
+                    currentLineStart = offset + i + 1;
+                }
+                previous = b;
+            }
+            offset += count;
+            buffer.clear();
+        }
+
+        if (state == inComment) {
+            current.comments.add(new long[] {commentStart, offset});
+        }
+        if (current == null) {
+            current = new Segment(0);
+        }
+        close(current, offset, segments);
+        return withLeadingSegment(segments);
+    }
+
+    private static List<Segment> withLeadingSegment(List<Segment> segments) {
+        if (segments.get(0).start > 0) {
+            // content before the first record or comment
+            segments.add(0, newSegment(0, segments.get(0).start));
+        }
+        return segments;
+    }
+
+    private static void close(Segment segment, long end, List<Segment> segments) {
+        if (segment != null) {
+            segment.end = end;
+            segments.add(segment);
+        }
+    }
+
+    private static Segment newSegment(long start, long end) {
+        Segment segment = new Segment(start);
+        segment.end = end;
+        return segment;
+    }
+
+    private static String detectLineSeparator(FileChannel source) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        source.read(buffer, 0);
+        for (int i = 0; i < buffer.position(); i++) {
+            if (buffer.get(i) == '\n') {
+                return i > 0 && buffer.get(i - 1) == '\r' ? "\r\n" : "\n";
+            }
+        }
+        return "\n";
+    }
+
+    private static void transfer(FileChannel source, long start, long end, WritableByteChannel target) throws IOException {
+        long position = start;
+        while (position < end) {
+            long transferred = source.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                throw new IOException("Unable to copy data at position " + position);
+            }
+            position += transferred;
+        }
+    }
+
+    /**
+     * Write a record, followed by inline comments copied from the source: the first one on the last line of the value,
+     * the next ones on their own line.
+     */
+    private static void write(WritableByteChannel target, String label, String value, String lineSeparator,
+                              FileChannel source, List<long[]> comments) throws IOException {
+        write(target, "##" + label + "=" + value.replace("\n", lineSeparator));
+        for (int i = 0; i < comments.size(); i++) {
+            write(target, i == 0 ? " " : lineSeparator);
+            transfer(source, comments.get(i)[0], comments.get(i)[1], target);
+        }
+        write(target, lineSeparator);
+    }
+
+    private static void write(WritableByteChannel target, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    private static class Edit {
+        private final String label;
+        private final String value; // null when removing
+
+        private Edit(String label, String value) {
+            this.label = label;
+            this.value = value;
+        }
+    }
+
+    private static class Segment {
+        private final long start;
+        private long end;
+        private String originalLabel; // null for comments
+        private String label; // normalized, null for comments
+        private final List<long[]> comments = new ArrayList<>(); // inline comment ranges, for records being replaced
+
+        private Segment(long start) {
+            this.start = start;
+        }
+    }
+}
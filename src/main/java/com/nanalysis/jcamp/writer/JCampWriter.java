@@ -0,0 +1,402 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.writer;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.IntToLongFunction;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.model.JCampPage;
+import com.nanalysis.jcamp.model.JCampRecord;
+import com.nanalysis.jcamp.model.Label;
+import com.nanalysis.jcamp.model.XYDataPage;
+import com.nanalysis.jcamp.parser.JCampParser;
+
+/**
+ * Streaming JCamp-DX writer.
+ * <p>
+ * Documents, blocks and pages are written as they are stored: records are copied as text, and data tables are copied
+ * as they were parsed. Pages having decoded data attached (see {@link JCampPage#setDecodedData(double[])}) are encoded
+ * instead, using the writer compression mode, and the block "VAR_FORM" is updated accordingly.
+ * <p>
+ * Records and data can also be written one by one, to stream large documents without building them in memory.
+ * <p>
+ * Text is encoded in UTF-8, as read by {@link com.nanalysis.jcamp.parser.JCampParser#parse(java.io.File)}, in an
+ * internal buffer which is flushed to the destination when it grows large enough.
+ * Numbers are formatted directly in this buffer. This class isn't thread safe.
+ */
+public class JCampWriter implements Closeable, Flushable {
+    public static final int DEFAULT_LINE_WIDTH = 80;
+    public static final Compression DEFAULT_COMPRESSION = Compression.DIFDUP;
+
+    private static final int MIN_LINE_WIDTH = 20;
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+    private static final String END_OF_BLOCK = "END";
+    private static final String END_OF_NTUPLES = "END NTUPLES";
+    private static final String NTUPLES = "NTUPLES";
+
+    private final WritableByteChannel channel;
+    private final Utf8Buffer buffer;
+    private final Compression compression;
+    private final int lineWidth;
+    private final DataEncoder encoder;
+
+    public JCampWriter(OutputStream output) {
+        this(Channels.newChannel(output));
+    }
+
+    public JCampWriter(OutputStream output, Compression compression, int lineWidth) {
+        this(Channels.newChannel(output), compression, lineWidth);
+    }
+
+    public JCampWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_COMPRESSION, DEFAULT_LINE_WIDTH);
+    }
+
+    /**
+     * @param channel the destination, or null to keep everything in memory
+     * @param compression the compression mode used to encode data
+     * @param lineWidth the maximum number of characters for data lines
+     */
+    public JCampWriter(WritableByteChannel channel, Compression compression, int lineWidth) {
+        if (lineWidth < MIN_LINE_WIDTH) {
+            throw new IllegalArgumentException("Line width should be at least " + MIN_LINE_WIDTH + ", received: " + lineWidth);
+        }
+
+        this.channel = channel;
+        this.compression = compression;
+        this.lineWidth = lineWidth;
+        this.buffer = new Utf8Buffer(FLUSH_THRESHOLD + lineWidth * 2);
+        this.encoder = new DataEncoder(buffer, this::endLine, compression, lineWidth);
+    }
+
+    /**
+     * @return the compression mode used to encode data.
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * @return the maximum number of characters for data lines.
+     */
+    public int getLineWidth() {
+        return lineWidth;
+    }
+
+    /**
+     * Write a complete document: root records, all blocks, and the final "END" record for compound documents.
+     *
+     * @param document the document to write
+     * @throws IOException when writing fails
+     */
+    public void write(JCampDocument document) throws IOException {
+        for (Iterator<JCampRecord> records = document.records().iterator(); records.hasNext(); ) {
+            writeRecord(records.next());
+        }
+        for (Iterator<JCampBlock> blocks = document.blocks().iterator(); blocks.hasNext(); ) {
+            write(blocks.next());
+        }
+
+        // single block documents are closed by their block
+        if (!document.getDataType().isSingleBlock()) {
+            writeRecord(END_OF_BLOCK, "");
+        }
+    }
+
+    /**
+     * Write a block: its records, all pages, and the "END" record.
+     *
+     * @param block the block to write
+     * @throws IOException when writing fails
+     */
+    public void write(JCampBlock block) throws IOException {
+        boolean encoded = false;
+        boolean ntuples = false;
+        for (int i = 0; i < block.getPageCount(); i++) {
+            encoded |= block.page(i).hasDecodedData();
+            ntuples |= !(block.page(i) instanceof XYDataPage);
+        }
+
+        for (Iterator<JCampRecord> records = block.records().iterator(); records.hasNext(); ) {
+            JCampRecord record = records.next();
+            if (encoded && Label.VAR_FORM.normalized().equals(record.getNormalizedLabel())) {
+                writeRecord(record.getLabel(), varForms(block, record), record.getComment());
+            } else {
+                writeRecord(record);
+            }
+        }
+
+        writePages(block);
+
+        if (ntuples) {
+            writeRecord(END_OF_NTUPLES, block.getOrDefault(NTUPLES, "").getString());
+        }
+        writeRecord(END_OF_BLOCK, "");
+    }
+
+    /**
+     * Write a page: all its records, including the data table.
+     *
+     * @param page the page to write
+     * @throws IOException when writing fails
+     */
+    public void write(JCampPage page) throws IOException {
+        for (Iterator<JCampRecord> records = page.records().iterator(); records.hasNext(); ) {
+            JCampRecord record = records.next();
+            if (page.hasDecodedData() && isDataRecord(record)) {
+                writeDecodedData(page, record);
+            } else {
+                writeRecord(record);
+            }
+        }
+    }
+
+    /**
+     * Write all pages of a block, in order.
+     *
+     * @param block the block containing the pages
+     * @throws IOException when writing fails
+     */
+    void writePages(JCampBlock block) throws IOException {
+        for (int i = 0; i < block.getPageCount(); i++) {
+            write(block.page(i));
+        }
+    }
+
+    /**
+     * Write a record as text, including its comment.
+     *
+     * @param record the record to write
+     * @throws IOException when writing fails
+     */
+    public void writeRecord(JCampRecord record) throws IOException {
+        writeRecord(record.getLabel(), record.getString(), record.getComment());
+    }
+
+    /**
+     * Write a record as text.
+     *
+     * @param label the record label, without "##" prefix
+     * @param data the record data, eventually on several lines
+     * @throws IOException when writing fails
+     */
+    public void writeRecord(String label, String data) throws IOException {
+        writeRecord(label, data, "");
+    }
+
+    /**
+     * Write a record as text. The first comment line is written at the end of the first data line, others are written
+     * as comment lines after the record.
+     *
+     * @param label the record label, without "##" prefix
+     * @param data the record data, eventually on several lines
+     * @param comment the record comment, eventually on several lines, or an empty string
+     * @throws IOException when writing fails
+     */
+    public void writeRecord(String label, String data, String comment) throws IOException {
+        buffer.append(JCampParser.ENTRY_PREFIX);
+        buffer.append(label);
+        buffer.append('=');
+
+        int dataEnd = lineEnd(data, 0);
+        buffer.append(data, 0, dataEnd);
+        int commentEnd = lineEnd(comment, 0);
+        if (commentEnd > 0) {
+            if (dataEnd > 0) {
+                buffer.append(' ');
+            }
+            buffer.append(JCampParser.COMMENT_PREFIX);
+            buffer.append(' ');
+            buffer.append(comment, 0, commentEnd);
+        }
+        endLine();
+
+        for (int start = dataEnd + 1; start < data.length(); ) {
+            int end = lineEnd(data, start);
+            buffer.append(data, start, end);
+            endLine();
+            start = end + 1;
+        }
+
+        for (int start = commentEnd + 1; start < comment.length(); ) {
+            int end = lineEnd(comment, start);
+            writeCommentLine(comment, start, end);
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Write a comment line.
+     *
+     * @param comment the comment content, without "$$" prefix
+     * @throws IOException when writing fails
+     */
+    public void writeComment(String comment) throws IOException {
+        writeCommentLine(comment, 0, comment.length());
+    }
+
+    /**
+     * Write a data record, such as "DATA TABLE" or "XYDATA", with integer values.
+     *
+     * @param label the record label, without "##" prefix
+     * @param header the data header, for example "(X++(R..R)), XYDATA"
+     * @param values the values to write
+     * @param firstX the X value corresponding to the first value, divided by the X factor
+     * @param deltaX the X increment between two values, divided by the X factor
+     * @throws IOException when writing fails
+     */
+    public void writeData(String label, String header, int[] values, double firstX, double deltaX) throws IOException {
+        writeData(label, header, i -> values[i], values.length, firstX, deltaX);
+    }
+
+    /**
+     * Write a data record, such as "DATA TABLE" or "XYDATA", with floating point values.
+     * Values are divided by their factor, and rounded to the nearest integer, which must fit in 32 bits as readers decode
+     * them as {@code int}.
+     *
+     * @param label the record label, without "##" prefix
+     * @param header the data header, for example "(X++(R..R)), XYDATA"
+     * @param values the values to write
+     * @param factor the Y factor, as declared in the "FACTOR" or "YFACTOR" record
+     * @param firstX the X value corresponding to the first value, divided by the X factor
+     * @param deltaX the X increment between two values, divided by the X factor
+     * @throws IOException when writing fails
+     * @throws IllegalArgumentException when a value divided by the factor is out of the {@code int} range
+     */
+    public void writeData(String label, String header, double[] values, double factor, double firstX, double deltaX) throws IOException {
+        double inverse = 1.0 / factor;
+        writeData(label, header, i -> scale(values, i, factor, inverse), values.length, firstX, deltaX);
+    }
+
+    private static long scale(double[] values, int index, double factor, double inverse) {
+        long scaled = Math.round(values[index] * inverse);
+        if (scaled < Integer.MIN_VALUE || scaled > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Value " + values[index] + " at index " + index + " is out of range once divided by "
+                + factor + ", a larger factor is required");
+        }
+        return scaled;
+    }
+
+    private void writeData(String label, String header, IntToLongFunction values, int count, double firstX, double deltaX) throws IOException {
+        writeRecord(label, header);
+        encoder.encode(values, count, firstX, deltaX);
+    }
+
+    /**
+     * Write all buffered content to the destination.
+     *
+     * @throws IOException when writing fails
+     */
+    @Override
+    public void flush() throws IOException {
+        if (channel != null) {
+            buffer.drainTo(channel);
+        }
+    }
+
+    /**
+     * Flush remaining content, then close the destination.
+     *
+     * @throws IOException when writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return the internal buffer, for in-memory writers.
+     */
+    Utf8Buffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the destination channel, or null for in-memory writers.
+     */
+    WritableByteChannel channel() {
+        return channel;
+    }
+
+    private void writeDecodedData(JCampPage page, JCampRecord record) throws IOException {
+        String[] symbols = JCampPage.extractSymbols(page.getHeader());
+        String xSymbol = symbols[0];
+        String ySymbol = symbols[1];
+        double[] values = page.toArray();
+
+        double xFactor = page.getFactorForSymbol(xSymbol);
+        if (xFactor == 0) {
+            xFactor = 1;
+        }
+        double first = page.getFirstForSymbol(xSymbol);
+        double last = page.getLastForSymbol(xSymbol);
+        double delta = values.length > 1 ? (last - first) / (values.length - 1) : 0;
+
+        writeData(record.getLabel(), page.getHeader(), values, page.getFactorForSymbol(ySymbol), first / xFactor, delta / xFactor);
+    }
+
+    private String varForms(JCampBlock block, JCampRecord varForm) {
+        List<String> symbols = block.getOrDefault(Label.SYMBOL, "").getStrings();
+        List<String> forms = new ArrayList<>(varForm.getStrings());
+        for (int i = 0; i < block.getPageCount(); i++) {
+            JCampPage page = block.page(i);
+            if (page.hasDecodedData()) {
+                int index = symbols.indexOf(page.extractYSymbol());
+                if (index >= 0 && index < forms.size()) {
+                    forms.set(index, compression.getForm().name());
+                }
+            }
+        }
+        return String.join(", ", forms);
+    }
+
+    private void writeCommentLine(String comment, int start, int end) throws IOException {
+        buffer.append(JCampParser.COMMENT_PREFIX);
+        buffer.append(' ');
+        buffer.append(comment, start, end);
+        endLine();
+    }
+
+    private void endLine() throws IOException {
+        buffer.append('\n');
+        if (channel != null && buffer.size() >= FLUSH_THRESHOLD) {
+            buffer.drainTo(channel);
+        }
+    }
+
+    private static boolean isDataRecord(JCampRecord record) {
+        String label = record.getNormalizedLabel();
+        return Label.DATA_TABLE.normalized().equals(label) || Label.XYDATA.normalized().equals(label);
+    }
+
+    private static int lineEnd(String text, int start) {
+        int end = text.indexOf('\n', start);
+        return end < 0 ? text.length() : end;
+    }
+}
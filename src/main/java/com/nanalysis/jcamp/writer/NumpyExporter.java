@@ -0,0 +1,355 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.writer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampPage;
+
+/**
+ * Export decoded pages to NumPy ".npy" and ".npz" files.
+ * <p>
+ * Arrays are written as little-endian float64 ("&lt;f8") in C order. Pages are decoded one at a time and streamed to the
+ * file through a direct buffer, so a 2D dataset is never held on heap as a whole.
+ * <p>
+ * ".npz" files are uncompressed zip archives, which can be loaded with <code>numpy.load()</code>, or memory-mapped.
+ */
+public final class NumpyExporter {
+    private static final byte[] MAGIC = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y', 1, 0};
+    private static final int HEADER_ALIGNMENT = 64;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int CRC_OFFSET = 14;
+    private static final int ZIP_VERSION = 20;
+    private static final long MAX_ZIP_SIZE = 0xFFFFFFFFL;
+
+    private NumpyExporter() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * Write a single page as a 1D array.
+     *
+     * @param page the page to export
+     * @param file the ".npy" file, overwritten if it exists
+     * @throws IOException when writing fails
+     */
+    public static void writeNpy(JCampPage page, Path file) throws IOException {
+        double[] values = page.toArray();
+        try (FileChannel channel = open(file)) {
+            new ArrayWriter(channel).write(new long[] {values.length}, List.of(values));
+        }
+    }
+
+    /**
+     * Write several pages as a 2D array, one row per page.
+     *
+     * @param pages the pages to export, all having the same number of points
+     * @param file the ".npy" file, overwritten if it exists
+     * @throws IOException when writing fails
+     * @throws IllegalArgumentException when pages don't have the same size
+     */
+    public static void writeNpy(List<JCampPage> pages, Path file) throws IOException {
+        try (FileChannel channel = open(file)) {
+            new ArrayWriter(channel).write(shapeOf(pages), new DecodedPages(pages));
+        }
+    }
+
+    /**
+     * Write a whole block as an uncompressed ".npz" archive.
+     * <p>
+     * The archive contains one array per Y symbol, for example "R" and "I" for real and imaginary parts. Those are 1D
+     * arrays when there is only one page per symbol, and 2D arrays otherwise. The archive also contains the X axis,
+     * named after the X symbol, and the page axis, named after the page symbol, when arrays are 2D.
+     *
+     * @param block the block to export
+     * @param file the ".npz" file, overwritten if it exists
+     * @throws IOException when writing fails
+     * @throws IllegalArgumentException when pages sharing a Y symbol don't have the same size
+     */
+    public static void writeNpz(JCampBlock block, Path file) throws IOException {
+        Map<String, List<JCampPage>> pagesBySymbol = new LinkedHashMap<>();
+        for (int i = 0; i < block.getPageCount(); i++) {
+            JCampPage page = block.page(i);
+            pagesBySymbol.computeIfAbsent(page.extractYSymbol(), s -> new ArrayList<>()).add(page);
+        }
+
+        try (FileChannel channel = open(file)) {
+            ZipWriter zip = new ZipWriter(channel);
+            boolean twoDimensional = pagesBySymbol.values().stream().anyMatch(pages -> pages.size() > 1);
+            for (Map.Entry<String, List<JCampPage>> entry : pagesBySymbol.entrySet()) {
+                List<JCampPage> pages = entry.getValue();
+                long[] shape = twoDimensional ? shapeOf(pages) : new long[] {pointCount(pages.get(0))};
+                zip.entry(entry.getKey(), shape, new DecodedPages(pages));
+            }
+
+            if (!pagesBySymbol.isEmpty()) {
+                List<JCampPage> pages = pagesBySymbol.values().iterator().next();
+                JCampPage first = pages.get(0);
+                double[] xAxis = xAxis(first);
+                zip.entry(first.extractXSymbol(), new long[] {xAxis.length}, List.of(xAxis));
+                if (twoDimensional) {
+                    double[] pageAxis = pages.stream().mapToDouble(JCampPage::extractPageValueAsNumber).toArray();
+                    zip.entry(first.extractPageSymbol(), new long[] {pageAxis.length}, List.of(pageAxis));
+                }
+            }
+            zip.finish();
+        }
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static long[] shapeOf(List<JCampPage> pages) {
+        if (pages.isEmpty()) {
+            throw new IllegalArgumentException("No page to export");
+        }
+        return new long[] {pages.size(), pointCount(pages.get(0))};
+    }
+
+    private static int pointCount(JCampPage page) {
+        return page.getDimensionForSymbol(page.extractXSymbol());
+    }
+
+    private static double[] xAxis(JCampPage page) {
+        String xSymbol = page.extractXSymbol();
+        int size = pointCount(page);
+        double first = page.getFirstForSymbol(xSymbol);
+        double last = page.getLastForSymbol(xSymbol);
+        double delta = size > 1 ? (last - first) / (size - 1) : 0;
+
+        double[] axis = new double[size];
+        for (int i = 0; i < size; i++) {
+            axis[i] = first + i * delta;
+        }
+        return axis;
+    }
+
+    /**
+     * Build a ".npy" header, padded with spaces so that data starts on an aligned offset.
+     */
+    static byte[] header(long[] shape) {
+        StringBuilder dict = new StringBuilder("{'descr': '<f8', 'fortran_order': False, 'shape': (");
+        for (long dimension : shape) {
+            dict.append(dimension).append(", ");
+        }
+        if (shape.length > 1) {
+            dict.setLength(dict.length() - 2);
+        } else {
+            dict.setLength(dict.length() - 1);
+        }
+        dict.append("), }");
+
+        int unpadded = MAGIC.length + Short.BYTES + dict.length() + 1;
+        int padding = (HEADER_ALIGNMENT - unpadded % HEADER_ALIGNMENT) % HEADER_ALIGNMENT;
+        dict.append(" ".repeat(padding)).append('\n');
+
+        ByteBuffer header = ByteBuffer.allocate(unpadded + padding).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC);
+        header.putShort((short) dict.length());
+        header.put(dict.toString().getBytes(StandardCharsets.US_ASCII));
+        return header.array();
+    }
+
+    static long byteCount(long[] shape) {
+        long count = Double.BYTES;
+        for (long dimension : shape) {
+            count *= dimension;
+        }
+        return header(shape).length + count;
+    }
+
+    /**
+     * Lazily decoded pages, so that only one page is held in memory at a time.
+     */
+    private static class DecodedPages extends AbstractList<double[]> {
+        private final List<JCampPage> pages;
+
+        private DecodedPages(List<JCampPage> pages) {
+            this.pages = pages;
+        }
+
+        @Override
+        public double[] get(int index) {
+            return pages.get(index).toArray();
+        }
+
+        @Override
+        public int size() {
+            return pages.size();
+        }
+    }
+
+    /**
+     * Stream ".npy" content to a channel, optionally computing its CRC32 on the fly.
+     */
+    private static class ArrayWriter {
+        private final FileChannel channel;
+        private final ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final DoubleBuffer doubles = chunk.asDoubleBuffer();
+        private CRC32 crc;
+
+        private ArrayWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void write(long[] shape, List<double[]> rows) throws IOException {
+            long rowSize = shape[shape.length - 1];
+            writeBytes(ByteBuffer.wrap(header(shape)));
+            for (double[] row : rows) {
+                if (row.length != rowSize) {
+                    throw new IllegalArgumentException("Inconsistent page size: " + row.length + ", expected " + rowSize);
+                }
+                for (int offset = 0; offset < row.length; ) {
+                    int count = Math.min(doubles.capacity(), row.length - offset);
+                    doubles.clear();
+                    doubles.put(row, offset, count);
+                    chunk.clear().limit(count * Double.BYTES);
+                    writeBytes(chunk);
+                    offset += count;
+                }
+            }
+        }
+
+        private void writeBytes(ByteBuffer buffer) throws IOException {
+            if (crc != null) {
+                crc.update(buffer.duplicate());
+            }
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Minimal zip writer for stored (uncompressed) entries. Sizes are known before writing each entry, so only the CRC32
+     * needs to be patched once an entry is written.
+     */
+    private static class ZipWriter {
+        private final FileChannel channel;
+        private final ArrayWriter arrays;
+        private ByteBuffer centralDirectory = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        private int entryCount;
+
+        private ZipWriter(FileChannel channel) {
+            this.channel = channel;
+            this.arrays = new ArrayWriter(channel);
+        }
+
+        private void entry(String name, long[] shape, List<double[]> rows) throws IOException {
+            byte[] fileName = (name + ".npy").getBytes(StandardCharsets.UTF_8);
+            long size = byteCount(shape);
+            long offset = channel.position();
+            if (offset + size > MAX_ZIP_SIZE) {
+                throw new IllegalArgumentException("Data too large for an npz archive, export arrays to npy files instead");
+            }
+
+            ByteBuffer local = ByteBuffer.allocate(LOCAL_HEADER_SIZE + fileName.length).order(ByteOrder.LITTLE_ENDIAN);
+            local.putInt(LOCAL_HEADER_SIGNATURE);
+            local.putShort((short) ZIP_VERSION);
+            local.putShort((short) 0); // flags
+            local.putShort((short) 0); // stored
+            local.putShort((short) 0); // time
+            local.putShort((short) 0x21); // date, 1980-01-01
+            local.putInt(0); // CRC, patched below
+            local.putInt((int) size);
+            local.putInt((int) size);
+            local.putShort((short) fileName.length);
+            local.putShort((short) 0);
+            local.put(fileName);
+            arrays.crc = null;
+            arrays.writeBytes(local.flip());
+
+            arrays.crc = new CRC32();
+            arrays.write(shape, rows);
+            int crc = (int) arrays.crc.getValue();
+            arrays.crc = null;
+
+            ByteBuffer crcBytes = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(crc).flip();
+            channel.write(crcBytes, offset + CRC_OFFSET);
+
+            ensureCapacity(CENTRAL_HEADER_SIZE + fileName.length);
+            ByteBuffer central = centralDirectory;
+            central.putInt(CENTRAL_HEADER_SIGNATURE);
+            central.putShort((short) ZIP_VERSION);
+            central.putShort((short) ZIP_VERSION);
+            central.putShort((short) 0);
+            central.putShort((short) 0);
+            central.putShort((short) 0);
+            central.putShort((short) 0x21);
+            central.putInt(crc);
+            central.putInt((int) size);
+            central.putInt((int) size);
+            central.putShort((short) fileName.length);
+            central.putShort((short) 0); // extra
+            central.putShort((short) 0); // comment
+            central.putShort((short) 0); // disk
+            central.putShort((short) 0); // internal attributes
+            central.putInt(0); // external attributes
+            central.putInt((int) offset);
+            central.put(fileName);
+            entryCount++;
+        }
+
+        private void ensureCapacity(int additional) {
+            if (centralDirectory.remaining() < additional) {
+                ByteBuffer larger = ByteBuffer.allocate(2 * centralDirectory.capacity() + additional).order(ByteOrder.LITTLE_ENDIAN);
+                centralDirectory.flip();
+                larger.put(centralDirectory);
+                centralDirectory = larger;
+            }
+        }
+
+        private void finish() throws IOException {
+            long offset = channel.position();
+            centralDirectory.flip();
+            int size = centralDirectory.remaining();
+            arrays.writeBytes(centralDirectory);
+
+            ByteBuffer end = ByteBuffer.allocate(END_OF_CENTRAL_DIRECTORY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+            end.putShort((short) 0);
+            end.putShort((short) 0);
+            end.putShort((short) entryCount);
+            end.putShort((short) entryCount);
+            end.putInt(size);
+            end.putInt((int) offset);
+            end.putShort((short) 0);
+            arrays.writeBytes(end.flip());
+        }
+    }
+}
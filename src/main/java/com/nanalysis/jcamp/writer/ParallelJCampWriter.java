@@ -0,0 +1,132 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampPage;
+
+/**
+ * JCamp-DX writer encoding pages concurrently. Useful for multi-dimensional datasets with many pages.
+ * <p>
+ * Records are written sequentially, as with {@link JCampWriter}. Pages are encoded on a fork-join pool, each one in its own
+ * memory buffer, and these buffers are written to the destination in page order. At most a fixed number of pages are
+ * in flight at any time, which bounds memory usage. Page buffers are reused once written.
+ * <p>
+ * The output is identical to the one produced by {@link JCampWriter} with the same compression and line width.
+ */
+public class ParallelJCampWriter extends JCampWriter {
+    private final ForkJoinPool pool;
+    private final int maxInFlightPages;
+    private final Queue<JCampWriter> pageWriters = new ConcurrentLinkedQueue<>();
+
+    public ParallelJCampWriter(OutputStream output) {
+        this(Channels.newChannel(output));
+    }
+
+    public ParallelJCampWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_COMPRESSION, DEFAULT_LINE_WIDTH, ForkJoinPool.commonPool(), 2 * ForkJoinPool.commonPool().getParallelism());
+    }
+
+    /**
+     * @param channel the destination
+     * @param compression the compression mode used to encode data
+     * @param lineWidth the maximum number of characters for data lines
+     * @param pool the pool used to encode pages
+     * @param maxInFlightPages the maximum number of pages being encoded or waiting to be written
+     */
+    public ParallelJCampWriter(WritableByteChannel channel, Compression compression, int lineWidth, ForkJoinPool pool, int maxInFlightPages) {
+        super(channel, compression, lineWidth);
+        if (channel == null) {
+            throw new IllegalArgumentException("A destination channel is required");
+        }
+        if (maxInFlightPages < 1) {
+            throw new IllegalArgumentException("At least one page should be in flight, received: " + maxInFlightPages);
+        }
+
+        this.pool = pool;
+        this.maxInFlightPages = maxInFlightPages;
+    }
+
+    /**
+     * @return the maximum number of pages being encoded or waiting to be written.
+     */
+    public int getMaxInFlightPages() {
+        return maxInFlightPages;
+    }
+
+    @Override
+    void writePages(JCampBlock block) throws IOException {
+        Deque<ForkJoinTask<JCampWriter>> inFlight = new ArrayDeque<>(maxInFlightPages);
+        try {
+            for (int i = 0; i < block.getPageCount(); i++) {
+                if (inFlight.size() >= maxInFlightPages) {
+                    writeEncodedPage(inFlight.removeFirst());
+                }
+
+                JCampPage page = block.page(i);
+                inFlight.addLast(pool.submit(() -> encode(page)));
+            }
+
+            while (!inFlight.isEmpty()) {
+                writeEncodedPage(inFlight.removeFirst());
+            }
+        } finally {
+            // only reached with pending tasks on failure: don't leave them running
+            inFlight.forEach(task -> task.cancel(true));
+        }
+    }
+
+    private JCampWriter encode(JCampPage page) {
+        JCampWriter writer = pageWriters.poll();
+        if (writer == null) {
+            writer = new JCampWriter((WritableByteChannel) null, getCompression(), getLineWidth());
+        }
+
+        try {
+            writer.write(page);
+            return writer;
+        } catch (IOException e) {
+            // in-memory writers don't do any I/O
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeEncodedPage(ForkJoinTask<JCampWriter> task) throws IOException {
+        JCampWriter writer;
+        try {
+            writer = task.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        // previous content first, then the page
+        flush();
+        writer.buffer().drainTo(channel());
+        pageWriters.add(writer);
+    }
+}
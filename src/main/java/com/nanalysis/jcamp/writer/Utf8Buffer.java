@@ -0,0 +1,235 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.writer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Growable UTF-8 byte buffer, used to format JCamp text without intermediate strings.
+ * Numbers are written digit by digit directly in the buffer. ASCII characters, almost all JCamp text, take one byte.
+ */
+final class Utf8Buffer {
+    private static final long[] POWERS_OF_TEN = new long[19];
+    private static final int FRACTION_DIGITS = 8;
+    private static final long FRACTION_SCALE = 100_000_000L;
+
+    static {
+        long power = 1;
+        for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = power;
+            power *= 10;
+        }
+    }
+
+    private byte[] bytes;
+    private int size;
+
+    Utf8Buffer(int initialCapacity) {
+        this.bytes = new byte[Math.max(16, initialCapacity)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    byte[] array() {
+        return bytes;
+    }
+
+    /**
+     * Shrink the buffer back to the given size, discarding everything written after.
+     *
+     * @param newSize a size smaller than the current one
+     */
+    void truncate(int newSize) {
+        size = newSize;
+    }
+
+    void append(char c) {
+        if (c < 0x80) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) c;
+        } else {
+            append(String.valueOf(c), 0, 1);
+        }
+    }
+
+    void append(CharSequence text) {
+        append(text, 0, text.length());
+    }
+
+    void append(CharSequence text, int start, int end) {
+        ensureCapacity(end - start);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes[size++] = (byte) c;
+            } else {
+                i = appendEncoded(text, i, end);
+                // the remaining characters may need more bytes than reserved
+                ensureCapacity(end - i);
+            }
+        }
+    }
+
+    /**
+     * Encode a non-ASCII character, or a surrogate pair, in UTF-8.
+     *
+     * @return the index of the last character consumed.
+     */
+    private int appendEncoded(CharSequence text, int index, int end) {
+        ensureCapacity(4);
+        char c = text.charAt(index);
+        if (c < 0x800) {
+            bytes[size++] = (byte) (0xC0 | (c >> 6));
+            bytes[size++] = (byte) (0x80 | (c & 0x3F));
+            return index;
+        }
+        if (!Character.isSurrogate(c)) {
+            bytes[size++] = (byte) (0xE0 | (c >> 12));
+            bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            bytes[size++] = (byte) (0x80 | (c & 0x3F));
+            return index;
+        }
+        if (Character.isHighSurrogate(c) && index + 1 < end && Character.isLowSurrogate(text.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, text.charAt(index + 1));
+            bytes[size++] = (byte) (0xF0 | (codePoint >> 18));
+            bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            bytes[size++] = (byte) (0x80 | (codePoint & 0x3F));
+            return index + 1;
+        }
+        // unpaired surrogate: not representable
+        bytes[size++] = (byte) '?';
+        return index;
+    }
+
+    void append(byte[] source, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(source, offset, bytes, size, length);
+        size += length;
+    }
+
+    /**
+     * Append a number in decimal form, with an optional minus sign.
+     *
+     * @param value the number
+     */
+    void appendLong(long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                append(Long.toString(value));
+                return;
+            }
+            append('-');
+            value = -value;
+        }
+        appendDigits(value, digitCount(value));
+    }
+
+    /**
+     * Append a positive number, using exactly the given number of digits (left-padded with zeros when needed).
+     *
+     * @param value a positive number
+     * @param digits the number of digits to write
+     */
+    void appendDigits(long value, int digits) {
+        ensureCapacity(digits);
+        int end = size + digits;
+        for (int i = end - 1; i >= size; i--) {
+            bytes[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        size = end;
+    }
+
+    /**
+     * Append a floating point number in fixed notation, with at most 8 decimals and without trailing zeros.
+     * Integral values are written without decimal point.
+     *
+     * @param value the number
+     */
+    void appendDecimal(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= Long.MAX_VALUE / FRACTION_SCALE) {
+            // out of the fixed notation range, rare enough to accept an allocation
+            append(Double.toString(value));
+            return;
+        }
+
+        long scaled = Math.round(Math.abs(value) * FRACTION_SCALE);
+        if (scaled == 0) {
+            append('0');
+            return;
+        }
+        if (value < 0) {
+            append('-');
+        }
+
+        long integral = scaled / FRACTION_SCALE;
+        long fraction = scaled % FRACTION_SCALE;
+        appendDigits(integral, digitCount(integral));
+        if (fraction != 0) {
+            int digits = FRACTION_DIGITS;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            append('.');
+            appendDigits(fraction, digits);
+        }
+    }
+
+    /**
+     * Write the buffer content to a channel, then clear it.
+     *
+     * @param channel the destination
+     * @throws IOException when writing fails
+     */
+    void drainTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, size);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        size = 0;
+    }
+
+    private void ensureCapacity(int additional) {
+        int required = size + additional;
+        if (required > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+        }
+    }
+
+    /**
+     * @param value a positive number
+     * @return the number of digits needed to write this number in decimal form.
+     */
+    static int digitCount(long value) {
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            if (value < POWERS_OF_TEN[i]) {
+                return i;
+            }
+        }
+        return POWERS_OF_TEN.length;
+    }
+}
@@ -14,8 +14,13 @@
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  */
 module com.nanalysis.jcamp {
+    requires transitive jdk.jfr;
+
+    exports com.nanalysis.jcamp.jfr;
     exports com.nanalysis.jcamp.model;
     exports com.nanalysis.jcamp.parser;
     exports com.nanalysis.jcamp.parser.builder;
+    exports com.nanalysis.jcamp.snapshot;
     exports com.nanalysis.jcamp.util;
+    exports com.nanalysis.jcamp.writer;
 }
@@ -0,0 +1,108 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.jfr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.parser.JCampParser;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class JCampEventsTest {
+    private static final String FILE = "/spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx";
+
+    @Test
+    public void eventsAreDisabledByDefault() throws IOException {
+        List<RecordedEvent> events = record(false);
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void eventsAreRecordedWhenEnabled() throws IOException {
+        List<RecordedEvent> events = record(true);
+
+        List<RecordedEvent> parse = byName(events, "com.nanalysis.jcamp.Parse");
+        assertEquals(1, parse.size());
+        assertEquals("demo_HSQC_ET_GS_GARP-4_4_0.dx", parse.get(0).getString("fileName"));
+        assertEquals("LINK", parse.get(0).getString("dataType"));
+        assertEquals(2, parse.get(0).getInt("blockCount"));
+        assertTrue(parse.get(0).getLong("byteCount") > 0);
+
+        List<RecordedEvent> blocks = byName(events, "com.nanalysis.jcamp.BlockBuild");
+        assertEquals(2, blocks.size());
+        assertEquals("ND_NMR_FID", blocks.get(0).getString("dataType"));
+        assertEquals("ND_NMR_SPECTRUM", blocks.get(1).getString("dataType"));
+        assertEquals("demo_HSQC_ET_GS_GARP-4_4_0.dx", blocks.get(1).getString("fileName"));
+
+        List<RecordedEvent> pages = byName(events, "com.nanalysis.jcamp.PageDecode");
+        assertEquals(2, pages.size());
+        assertEquals("ASDF", pages.get(0).getString("form"));
+        assertEquals("ND_NMR_FID", pages.get(0).getString("dataType"));
+        assertEquals(2048, pages.get(0).getLong("pointCount"));
+        assertEquals(4096, pages.get(1).getLong("pointCount"));
+        assertEquals("demo_HSQC_ET_GS_GARP-4_4_0.dx", pages.get(0).getString("fileName"));
+
+        List<RecordedEvent> decoding = byName(events, "com.nanalysis.jcamp.DataDecode");
+        assertEquals(2, decoding.size());
+        assertEquals("ASDF", decoding.get(0).getString("form"));
+        assertEquals(pages.get(0).getLong("byteCount"), decoding.get(0).getLong("byteCount"));
+        assertEquals("demo_HSQC_ET_GS_GARP-4_4_0.dx", decoding.get(0).getString("fileName"));
+    }
+
+    private List<RecordedEvent> record(boolean enabled) throws IOException {
+        Path dump = Files.createTempFile("jcamp", ".jfr");
+        try (Recording recording = new Recording()) {
+            if (enabled) {
+                recording.enable(ParseEvent.class);
+                recording.enable(BlockBuildEvent.class);
+                recording.enable(PageDecodeEvent.class);
+                recording.enable(DataDecodeEvent.class);
+            }
+            recording.start();
+
+            JCampDocument document = new JCampParser().parse(new File(getClass().getResource(FILE).getFile()));
+            document.block(0).page(0).toArray();
+            document.block(1).page(0).toArray();
+
+            recording.stop();
+            recording.dump(dump);
+            return RecordingFile.readAllEvents(dump).stream()
+                .filter(event -> event.getEventType().getName().startsWith("com.nanalysis.jcamp."))
+                .collect(Collectors.toList());
+        } finally {
+            Files.delete(dump);
+        }
+    }
+
+    private static List<RecordedEvent> byName(List<RecordedEvent> events, String name) {
+        return events.stream()
+            .filter(event -> event.getEventType().getName().equals(name))
+            .collect(Collectors.toList());
+    }
+}
@@ -17,10 +17,19 @@ package com.nanalysis.jcamp.model;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 
+import com.nanalysis.jcamp.parser.JCampParser;
+import com.nanalysis.jcamp.writer.JCampWriter;
+import com.nanalysis.jcamp.writer.SyntheticJCampGenerator;
+
 public class JCampDocumentTest {
     @Test
     public void emptyDocument() {
@@ -106,4 +115,62 @@ public class JCampDocumentTest {
         document.addBlock(block);
         return block;
     }
+
+    @Test
+    public void frozenDocumentKeepsItsContent() throws IOException {
+        String content = new SyntheticJCampGenerator(7).setKind(SyntheticJCampGenerator.Kind.LINK).setBlocks(2).setPoints(256).generate();
+        JCampDocument expected = new JCampParser().parse(content);
+        JCampDocument document = new JCampParser().parse(content);
+        assertSame(document, document.freeze());
+
+        assertTrue(document.isFrozen());
+        assertEquals(write(expected), write(document));
+        assertEquals(new ArrayList<>(expected.allRecordKeys()), new ArrayList<>(document.allRecordKeys()));
+        assertTrue(document.allRecordKeys().contains(Label.TITLE.normalized()));
+        for (int b = 0; b < expected.getBlockCount(); b++) {
+            JCampBlock block = document.block(b);
+            assertTrue(block.isFrozen());
+            assertEquals(labels(expected.block(b)), labels(block));
+            for (int p = 0; p < block.getPageCount(); p++) {
+                assertTrue(block.page(p).isFrozen());
+                assertArrayEquals(expected.block(b).page(p).toArray(), block.page(p).toArray(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void frozenDocumentCantBeModified() {
+        JCampDocument document = new JCampParser().parse(new SyntheticJCampGenerator(8).setPoints(64).generate()).freeze();
+        JCampBlock block = document.block(0);
+        JCampPage page = block.page(0);
+
+        List<Runnable> modifications = List.of(
+            () -> document.addRecord(new JCampRecord("TITLE", "other")),
+            () -> document.addBlock(new JCampBlock(document)),
+            () -> block.addPage(new JCampPage(block)),
+            () -> block.removePage(page),
+            () -> page.setDecodedData(new double[64]),
+            page::discardData,
+            () -> page.get(Label.DATA_TABLE).parseData("0 1 2"));
+        for (Runnable modification : modifications) {
+            try {
+                modification.run();
+                fail("A frozen document should not be modified");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+
+    private static List<String> labels(JCampContainer container) {
+        return container.records().map(JCampRecord::getLabel).collect(Collectors.toList());
+    }
+
+    private static String write(JCampDocument document) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (JCampWriter writer = new JCampWriter(output)) {
+            writer.write(document);
+        }
+        return output.toString();
+    }
 }
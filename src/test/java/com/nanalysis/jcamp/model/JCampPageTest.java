@@ -15,13 +15,22 @@
  */
 package com.nanalysis.jcamp.model;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Test;
 
+import com.nanalysis.jcamp.parser.ParseListener;
+import com.nanalysis.jcamp.parser.PointCountPolicy;
+
 public class JCampPageTest {
     private static final double DELTA = 1e-6;
 
@@ -51,6 +60,12 @@ public class JCampPageTest {
         assertEquals("R", page.extractYSymbol());
     }
 
+    @Test
+    public void detachedPageHasNoSourceName() {
+        assertNull(new JCampPage(null).getSourceName());
+        assertNull(new JCampPage(new JCampBlock(null)).getSourceName());
+    }
+
     @Test
     public void extractValues() {
         JCampBlock parent = new JCampBlock(null);
@@ -91,4 +106,95 @@ public class JCampPageTest {
         assertEquals(17619.57189533461, array[4], DELTA);
         assertEquals(2054.000043849114, array[11], DELTA);
     }
+
+    @Test
+    public void affnPointCountMismatch() {
+        JCampBlock parent = new JCampBlock(null);
+        parent.addRecord(new JCampRecord(Label.SYMBOL.name(), "X,R"));
+        parent.addRecord(new JCampRecord(Label.VAR_DIM.name(), "4, 4"));
+
+        JCampPage page = new JCampPage(parent);
+        page.addRecord(new JCampRecord("DATA TABLE", "(X++(R..R)), XYDATA\n"
+            + "0 1 2 3\n"
+            + "3 4 5 6\n"));
+
+        List<Integer> decodedCounts = new ArrayList<>();
+        ParseListener listener = new ParseListener() {
+            @Override
+            public void pointCountMismatch(int expected, int decoded) {
+                assertEquals(4, expected);
+                decodedCounts.add(decoded);
+            }
+        };
+        assertArrayEquals(new double[] { 1, 2, 3, 4, 5, 6 }, page.toArray(listener, PointCountPolicy.KEEP), 0);
+        assertArrayEquals(new double[] { 1, 2, 3, 4 }, page.toArray(listener, PointCountPolicy.PAD_OR_TRIM), 0);
+        assertEquals(List.of(6, 6), decodedCounts);
+    }
+
+    @Test
+    public void preloadedDataAppliesPolicy() {
+        JCampBlock parent = new JCampBlock(null);
+        parent.addRecord(new JCampRecord(Label.SYMBOL.name(), "X,R"));
+        parent.addRecord(new JCampRecord(Label.VAR_DIM.name(), "8, 8"));
+
+        JCampPage page = new JCampPage(parent);
+        page.addRecord(new JCampRecord("DATA TABLE", "(X++(R..R)), XYDATA\n0 1 2 3\n3 4 5 6\n"));
+        page.preloadData(ParseListener.NONE);
+
+        assertArrayEquals(new double[] { 1, 2, 3, 4, 5, 6 }, page.toArray(ParseListener.NONE, PointCountPolicy.KEEP), 0);
+        assertArrayEquals(new double[] { 1, 2, 3, 4, 5, 6, 0, 0 }, page.toArray(ParseListener.NONE, PointCountPolicy.PAD), 0);
+        assertArrayEquals(new double[] { 1, 2, 3, 4, 5, 6, 0, 0 }, page.toArray(ParseListener.NONE, PointCountPolicy.PAD_OR_TRIM), 0);
+    }
+
+    @Test
+    public void preloadTaskReadsAttributesWhenCreated() {
+        JCampBlock parent = new JCampBlock(null);
+        parent.addRecord(new JCampRecord(Label.SYMBOL.name(), "X,R"));
+        parent.addRecord(new JCampRecord(Label.VAR_DIM.name(), "4, 4"));
+        JCampRecord factor = new JCampRecord(Label.FACTOR.name(), "1, 2");
+        parent.addRecord(factor);
+
+        JCampPage page = new JCampPage(parent);
+        page.addRecord(new JCampRecord("DATA TABLE", "(X++(R..R)), XYDATA\n0 1 2\n2 3 4\n"));
+        Runnable task = page.preloadTask(ParseListener.NONE);
+        assertFalse(page.isDataPreloaded());
+
+        // the block is still being parsed when the task runs
+        parent.replaceRecord(factor, new JCampRecord(Label.FACTOR.name(), "1, 3"));
+        task.run();
+
+        assertTrue(page.isDataPreloaded());
+        assertArrayEquals(new double[] { 2, 4, 6, 8 }, page.toArray(), 0);
+    }
+
+    @Test
+    public void preloadedDataIsTrimmed() {
+        JCampBlock parent = new JCampBlock(null);
+        parent.addRecord(new JCampRecord(Label.SYMBOL.name(), "X,R"));
+        parent.addRecord(new JCampRecord(Label.VAR_DIM.name(), "2, 2"));
+
+        JCampPage page = new JCampPage(parent);
+        page.addRecord(new JCampRecord("DATA TABLE", "(X++(R..R)), XYDATA\n0 1 2 3\n"));
+        page.preloadData(ParseListener.NONE);
+
+        assertArrayEquals(new double[] { 1, 2, 3 }, page.toArray(ParseListener.NONE, PointCountPolicy.KEEP), 0);
+        assertArrayEquals(new double[] { 1, 2 }, page.toArray(ParseListener.NONE, PointCountPolicy.PAD_OR_TRIM), 0);
+        try {
+            page.toArray(ParseListener.NONE, PointCountPolicy.PAD);
+            fail("Expected too many values to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void affnTooManyPoints() {
+        JCampBlock parent = new JCampBlock(null);
+        parent.addRecord(new JCampRecord(Label.SYMBOL.name(), "X,R"));
+        parent.addRecord(new JCampRecord(Label.VAR_DIM.name(), "2, 2"));
+
+        JCampPage page = new JCampPage(parent);
+        page.addRecord(new JCampRecord("DATA TABLE", "(X++(R..R)), XYDATA\n0 1 2 3\n"));
+        page.toArray();
+    }
 }
@@ -17,6 +17,7 @@ package com.nanalysis.jcamp.parser;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.Assert.assertArrayEquals;
@@ -83,6 +84,16 @@ public class ASDFParserTest {
         assertArrayEquals(expected, parser.getData());
     }
 
+    @Test
+    public void parsePac() {
+        String input = "0+12-3+0 4";
+        int[] expected = {12, -3, 0, 4};
+
+        ASDFParser parser = new ASDFParser(4);
+        parser.parseSingleLine(input);
+        assertArrayEquals(expected, parser.getData());
+    }
+
     @Test
     public void afterDifWithYCheck() {
         // extract from spinit old export:
@@ -124,4 +135,54 @@ public class ASDFParserTest {
         int[] result = parser.parse(input);
         assertEquals(46, result.length);
     }
+
+    @Test
+    public void decodeScaledValues() {
+        String text = "0.0AJ%TJTk%VmL%LJmK%j%V\n23.0B\n";
+        int[] expected = new ASDFParser(24).parse(List.of("0.0AJ%TJTk%VmL%LJmK%j%V", "23.0B"));
+
+        // twice, the second call reuses the scratch buffer
+        for (int i = 0; i < 2; i++) {
+            double[] values = ASDFParser.decode(text, 0, text.length(), 24, 0.5, ParseListener.NONE);
+            assertEquals(24, values.length);
+            for (int j = 0; j < expected.length; j++) {
+                assertEquals(expected[j] * 0.5, values[j], 0);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeTooManyValues() {
+        // a larger scratch buffer was used before: the expected size should still be enforced
+        String text = "0A1B2C3";
+        ASDFParser.decode(text, 0, text.length(), 10, 1, ParseListener.NONE);
+        ASDFParser.decode(text, 0, text.length(), 2, 1, ParseListener.NONE);
+    }
+
+    @Test
+    public void bufferGrowsBeyondExpectedSize() {
+        List<String> input = List.of("0ABC", "3DEF", "6GHI");
+        List<int[]> mismatches = new ArrayList<>();
+        ParseListener listener = new ParseListener() {
+            @Override
+            public void pointCountMismatch(int expected, int decoded) {
+                mismatches.add(new int[] { expected, decoded });
+            }
+        };
+
+        assertArrayEquals(new int[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 }, new ASDFParser(0, PointCountPolicy.KEEP, listener).parse(input));
+        assertArrayEquals(new int[] { 1, 2, 3, 4 }, new ASDFParser(4, PointCountPolicy.PAD_OR_TRIM, listener).parse(input));
+        assertArrayEquals(new int[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 0 }, new ASDFParser(10, PointCountPolicy.PAD, listener).parse(input));
+
+        assertEquals(3, mismatches.size());
+        assertArrayEquals(new int[] { 4, 9 }, mismatches.get(1));
+        assertArrayEquals(new int[] { 10, 9 }, mismatches.get(2));
+    }
+
+    @Test
+    public void decodeWithPolicy() {
+        String text = "0ABC\n3DEF\n";
+        assertArrayEquals(new double[] { 2, 4, 6, 8, 10, 12 }, ASDFParser.decode(text, 0, text.length(), 2, 2, PointCountPolicy.KEEP, ParseListener.NONE), 0);
+        assertArrayEquals(new double[] { 2, 4, 6 }, ASDFParser.decode(text, 0, text.length(), 3, 2, PointCountPolicy.PAD_OR_TRIM, ParseListener.NONE), 0);
+    }
 }
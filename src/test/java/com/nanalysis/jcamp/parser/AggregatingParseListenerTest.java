@@ -0,0 +1,121 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.parser.ParseListener.Counter;
+import com.nanalysis.jcamp.parser.ParseListener.Phase;
+
+public class AggregatingParseListenerTest {
+    @Test
+    public void parserReportsCountersAndTimings() {
+        AggregatingParseListener listener = new AggregatingParseListener();
+        String input = resourceAsString("/spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx");
+        JCampDocument document = new JCampParser(listener).parse(input);
+
+        assertEquals(input.length(), listener.getCount(Counter.BYTES));
+        assertEquals(input.lines().count(), listener.getCount(Counter.LINES));
+        assertEquals(input.lines().filter(line -> line.trim().startsWith("##")).count(), listener.getCount(Counter.RECORDS));
+        assertEquals(2, listener.getCount(Counter.BLOCKS));
+        assertEquals(document.block(0).getPageCount() + document.block(1).getPageCount(), listener.getCount(Counter.PAGES));
+        assertEquals(1, listener.getSampleCount(Phase.RECORDS));
+        assertEquals(1, listener.getSampleCount(Phase.BUILD));
+        assertEquals(0, listener.getSampleCount(Phase.READ));
+        assertTrue(listener.getTotalNanos(Phase.RECORDS) > 0);
+    }
+
+    @Test
+    public void decodersReportPoints() {
+        AggregatingParseListener listener = new AggregatingParseListener();
+        JCampBlock block = new JCampParser().parse(resourceAsString("/spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx")).block(1);
+
+        long points = 0;
+        for (int i = 0; i < block.getPageCount(); i++) {
+            points += block.page(i).toArray(listener).length;
+        }
+        assertEquals(points, listener.getCount(Counter.POINTS));
+        assertEquals(block.getPageCount(), listener.getSampleCount(Phase.DECODE));
+        assertEquals(0, listener.getCount(Counter.LINES));
+    }
+
+    @Test
+    public void parsingFilesReportsReadTime() throws IOException {
+        AggregatingParseListener listener = new AggregatingParseListener();
+        JCampParser parser = new JCampParser(listener);
+        parser.parse(new File(getClass().getResource("/benchtop/60/NMReady_1D_1H_20210909_Test_formatesS.jdx").getFile()));
+        parser.parse(new File(getClass().getResource("/benchtop/60/NMReady_1D_1H_20210909_Test_formatesS.jdx").getFile()));
+        assertEquals(2, listener.getSampleCount(Phase.READ));
+        assertEquals(2, listener.getCount(Counter.PAGES));
+
+        listener.reset();
+        assertEquals(0, listener.getSampleCount(Phase.READ));
+        assertEquals(0, listener.getCount(Counter.PAGES));
+    }
+
+    @Test
+    public void percentiles() {
+        AggregatingParseListener listener = new AggregatingParseListener();
+        for (int i = 1; i <= 10_000; i++) {
+            listener.time(Phase.DECODE, i * 1000L);
+        }
+
+        assertEquals(10_000, listener.getSampleCount(Phase.DECODE));
+        assertEquals(10_000_000, listener.getMaxNanos(Phase.DECODE));
+        assertEquals(5_000_000, listener.getPercentileNanos(Phase.DECODE, 50), 5_000_000 * 0.035);
+        assertEquals(9_900_000, listener.getPercentileNanos(Phase.DECODE, 99), 9_900_000 * 0.035);
+        assertEquals(10_000_000, listener.getPercentileNanos(Phase.DECODE, 100), 10_000_000 * 0.035);
+        assertEquals(0, listener.getPercentileNanos(Phase.BUILD, 50));
+    }
+
+    @Test
+    public void histogramBuckets() {
+        long previous = -1;
+        for (long value : new long[] {0, 1, 15, 16, 17, 31, 32, 1000, 123_456_789, Long.MAX_VALUE}) {
+            int index = AggregatingParseListener.Histogram.bucketIndex(value);
+            assertTrue(index >= previous);
+            previous = index;
+
+            long middle = AggregatingParseListener.Histogram.bucketMiddle(index);
+            assertEquals(value, middle, value / 32.0 + 1);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPercentile() {
+        new AggregatingParseListener().getPercentileNanos(Phase.DECODE, 101);
+    }
+
+    private String resourceAsString(String name) {
+        try (var input = getClass().getResourceAsStream(name)) {
+            if (input == null) {
+                throw new IllegalStateException("No resource found for " + name);
+            }
+
+            return new String(input.readAllBytes());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.function.Supplier;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.model.JCampPage;
+import com.nanalysis.jcamp.writer.Compression;
+import com.nanalysis.jcamp.writer.SyntheticJCampGenerator;
+
+/**
+ * Allocation ceilings for decoding and parsing, so that per-token or per-line garbage isn't reintroduced.
+ * <p>
+ * Allocated bytes are read from com.sun.management.ThreadMXBean. It is accessed by reflection since the library module
+ * doesn't read java.management, and tests are skipped on virtual machines not supporting it.
+ */
+public class AllocationBudgetTest {
+    private static final int POINTS = 100_000;
+    private static final int WARMUP = 20;
+
+    private static Object threads;
+    private static Method allocatedBytes;
+
+    @BeforeClass
+    public static void setup() throws ReflectiveOperationException {
+        Class<?> beanClass;
+        try {
+            beanClass = Class.forName("com.sun.management.ThreadMXBean");
+        } catch (ClassNotFoundException e) {
+            beanClass = null;
+        }
+        Assume.assumeNotNull(beanClass);
+
+        threads = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+        Assume.assumeTrue(beanClass.isInstance(threads));
+        Assume.assumeTrue((Boolean) beanClass.getMethod("isThreadAllocatedMemorySupported").invoke(threads));
+        beanClass.getMethod("setThreadAllocatedMemoryEnabled", boolean.class).invoke(threads, true);
+        allocatedBytes = beanClass.getMethod("getThreadAllocatedBytes", long.class);
+    }
+
+    @Test
+    public void asdfIntDecode() {
+        String data = firstPage(Compression.DIFDUP).getDataLines().stream().reduce((a, b) -> a + "\n" + b).orElseThrow();
+        long allocated = measure(() -> new ASDFParser(POINTS).parse(data, 0, data.length()));
+        assertBudget("ASDF int decode", allocated, 1.1 * 4 * POINTS);
+    }
+
+    @Test
+    public void asdfPageDecode() {
+        JCampPage page = firstPage(Compression.DIFDUP);
+        long allocated = measure(page::toArray);
+        // int values are decoded in a per-thread scratch buffer
+        assertBudget("ASDF page decode", allocated, 1.1 * 8 * POINTS);
+    }
+
+    @Test
+    public void affnPageDecode() {
+        JCampPage page = firstPage(Compression.AFFN);
+        assertArrayEquals(firstPage(Compression.DIFDUP).toArray(), page.toArray(), 1e-9);
+
+        long allocated = measure(page::toArray);
+        assertBudget("AFFN page decode", allocated, 1.1 * 8 * POINTS);
+    }
+
+    @Test
+    public void headerOnlyParse() throws IOException {
+        String header;
+        try (var input = getClass().getResourceAsStream("/benchtop/100/NMReady_1D_1H_20210302_quinine_4.dx")) {
+            String content = new String(input.readAllBytes());
+            header = content.substring(0, content.indexOf("##NTUPLES")) + "##END=\n";
+        }
+
+        // records, labels, values and the document tree are kept, but nothing should grow faster than the input
+        long allocated = measure(() -> new JCampParser().parse(header));
+        assertBudget("header-only parse", allocated, 40.0 * header.length());
+    }
+
+    private static JCampPage firstPage(Compression compression) {
+        String content = new SyntheticJCampGenerator(1).setCompression(compression).setPoints(POINTS).generate();
+        JCampDocument document = new JCampParser().parse(content);
+        return document.block(0).page(0);
+    }
+
+    private static long measure(Supplier<?> operation) {
+        for (int i = 0; i < WARMUP; i++) {
+            operation.get();
+        }
+
+        long overhead = -allocatedBytes() + allocatedBytes();
+        long minimum = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long before = allocatedBytes();
+            operation.get();
+            long after = allocatedBytes();
+            minimum = Math.min(minimum, after - before - overhead);
+        }
+        return minimum;
+    }
+
+    private static long allocatedBytes() {
+        try {
+            return (Long) allocatedBytes.invoke(threads, Thread.currentThread().getId());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to read allocated bytes", e);
+        }
+    }
+
+    private static void assertBudget(String name, long allocated, double budget) {
+        assertTrue(name + " allocated " + allocated + " bytes, budget is " + (long) budget, allocated < budget);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class AsciiCharSequenceTest {
+    @Test
+    public void readsBytesAsCharacters() {
+        for (ByteBuffer buffer : buffers("xx##TITLE=\u00e9t\u00e9\n##END=")) {
+            buffer.position(2);
+            AsciiCharSequence text = new AsciiCharSequence(buffer);
+
+            assertEquals(18, text.length());
+            assertEquals('#', text.charAt(0));
+            assertEquals('\u00e9', text.charAt(8));
+            assertEquals("##TITLE=\u00e9t\u00e9\n##END=", text.toString());
+            assertEquals("TITLE", text.subSequence(2, 7).toString());
+            assertEquals("END", text.subSequence(12, 18).subSequence(2, 5).toString());
+            assertEquals(2, buffer.position());
+        }
+    }
+
+    @Test
+    public void indexOf() {
+        for (ByteBuffer buffer : buffers("##A=1\n##END=\n")) {
+            AsciiCharSequence text = new AsciiCharSequence(buffer);
+            assertEquals(0, text.indexOf("##", 0));
+            assertEquals(6, text.indexOf("##", 1));
+            assertEquals(-1, text.indexOf("##", 7));
+            assertEquals(8, text.indexOf("END", 0));
+            assertEquals(5, text.indexOf('\n', 0));
+            assertEquals(12, text.indexOf('\n', 6));
+            assertEquals(-1, text.indexOf('\u20ac', 0));
+        }
+    }
+
+    @Test
+    public void nonAsciiBytesAreDecodedAsUtf8() {
+        byte[] ascii = "xx##TITLE=25 C\n".getBytes(StandardCharsets.UTF_8);
+        byte[] utf8 = "xx##TITLE=25\u00b0C \u00b5s\n".getBytes(StandardCharsets.UTF_8);
+        for (ByteBuffer buffer : new ByteBuffer[] { ByteBuffer.wrap(ascii), ByteBuffer.allocateDirect(ascii.length).put(ascii).flip() }) {
+            buffer.position(2);
+            CharSequence text = AsciiCharSequence.of(buffer);
+            assertTrue(text instanceof AsciiCharSequence);
+            assertEquals("##TITLE=25 C\n", text.toString());
+        }
+        for (ByteBuffer buffer : new ByteBuffer[] { ByteBuffer.wrap(utf8), ByteBuffer.allocateDirect(utf8.length).put(utf8).flip() }) {
+            buffer.position(2);
+            assertEquals("##TITLE=25\u00b0C \u00b5s\n", AsciiCharSequence.of(buffer).toString());
+            assertEquals(2, buffer.position());
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void charAtOutOfRange() {
+        ByteBuffer buffer = ByteBuffer.wrap("abcdef".getBytes(StandardCharsets.US_ASCII), 1, 3);
+        new AsciiCharSequence(buffer).charAt(3);
+    }
+
+    private static ByteBuffer[] buffers(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        return new ByteBuffer[] { ByteBuffer.wrap(bytes), ByteBuffer.wrap(bytes).asReadOnlyBuffer(), direct };
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.model.JCampPage;
+import com.nanalysis.jcamp.writer.SyntheticJCampGenerator;
+
+public class IncrementalJCampParserTest {
+    private Path file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("jcamp-incremental", ".dx");
+        Files.delete(file);
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void pagesAreEmittedAsTheFileGrows() throws IOException {
+        for (String terminator : List.of("\n", "\r\n")) {
+            String content = new SyntheticJCampGenerator(7).setPoints(512).setIncrements(6).generate().replace("\n", terminator);
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            JCampDocument expected = new JCampParser().parse(content);
+
+            Files.deleteIfExists(file);
+            IncrementalJCampParser parser = new IncrementalJCampParser(file);
+            assertTrue(parser.update().isEmpty());
+
+            List<JCampPage> pages = new ArrayList<>();
+            Random random = new Random(terminator.length());
+            int written = 0;
+            try (OutputStream output = Files.newOutputStream(file)) {
+                while (written < bytes.length) {
+                    // arbitrary chunks, splitting lines and line terminators
+                    int chunk = Math.min(bytes.length - written, 1 + random.nextInt(3000));
+                    output.write(bytes, written, chunk);
+                    output.flush();
+                    written += chunk;
+
+                    List<JCampPage> completed = parser.update();
+                    pages.addAll(completed);
+                    assertEquals(written, parser.getOffset());
+                }
+            }
+            pages.addAll(parser.finish());
+
+            JCampBlock block = expected.block(0);
+            assertEquals(block.getPageCount(), pages.size());
+            for (int i = 0; i < pages.size(); i++) {
+                assertEquals(block.page(i).get("PAGE").getString(), pages.get(i).get("PAGE").getString());
+                assertArrayEquals(block.page(i).toArray(), pages.get(i).toArray(), 0);
+            }
+            assertEquals(block.getPageCount(), parser.getDocument().block(0).getPageCount());
+            assertEquals(expected.get("TITLE").getLineNumber(), parser.getDocument().get("TITLE").getLineNumber());
+        }
+    }
+
+    @Test
+    public void rewrittenFileIsParsedAgain() throws IOException {
+        String content = new SyntheticJCampGenerator(8).setPoints(128).setIncrements(3).generate();
+        Files.writeString(file, content);
+
+        IncrementalJCampParser parser = new IncrementalJCampParser(file);
+        // real and imaginary pages for each increment
+        assertEquals(6, parser.update().size());
+        assertTrue(parser.update().isEmpty());
+
+        String shorter = new SyntheticJCampGenerator(9).setPoints(64).setIncrements(2).generate();
+        Files.writeString(file, shorter, StandardOpenOption.TRUNCATE_EXISTING);
+        assertEquals(4, parser.update().size());
+        assertEquals(shorter.length(), parser.getOffset());
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.parser.JCampBatchParser.Batch;
+import com.nanalysis.jcamp.parser.JCampBatchParser.Result;
+
+public class JCampBatchParserTest {
+    @Test
+    public void parseDirectory() throws IOException, InterruptedException, ExecutionException {
+        Path directory = resourcePath("/benchtop");
+        Map<Path, Result> results = new ConcurrentHashMap<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Batch batch = new JCampBatchParser(executor, JCampBatchParser.DEFAULT_MAX_IN_FLIGHT_BYTES, ParseListener.NONE)
+                .parseDirectory(directory, result -> results.put(result.getPath(), result));
+            batch.await();
+
+            assertTrue(batch.isDone());
+            assertEquals(4, batch.getCompletedCount());
+            assertEquals(0, batch.getFailedCount());
+            assertEquals(4, results.size());
+            for (Result result : results.values()) {
+                JCampDocument expected = new JCampParser().parse(result.getPath().toFile());
+                assertEquals(expected.getBlockCount(), result.getDocument().getBlockCount());
+                assertEquals(expected.getTitle(), result.getDocument().getTitle());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void failuresAreDelivered() throws IOException, InterruptedException, ExecutionException {
+        Path directory = Files.createTempDirectory("jcamp-batch");
+        try {
+            Path valid = Files.copy(resourcePath("/benchtop/60/NMReady_1D_1H_20210909_Test_formates.dx"), directory.resolve("valid.dx"));
+            Path missing = directory.resolve("missing.dx");
+            Map<Path, Result> results = new ConcurrentHashMap<>();
+
+            Batch batch = new JCampBatchParser().parse(Stream.of(valid, missing), result -> results.put(result.getPath(), result));
+            batch.await();
+
+            assertEquals(2, batch.getCompletedCount());
+            assertEquals(1, batch.getFailedCount());
+            assertTrue(results.get(valid).isSuccess());
+            assertFalse(results.get(missing).isSuccess());
+            assertTrue(results.get(missing).getError() instanceof IOException);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path path : files.sorted((a, b) -> b.compareTo(a)).collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void cancelStopsDispatching() throws IOException, InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // a single byte budget only lets one file in flight: cancelling from the callback stops the batch immediately
+            JCampBatchParser parser = new JCampBatchParser(executor, 1, ParseListener.NONE);
+            Batch[] batch = new Batch[1];
+            synchronized (batch) {
+                batch[0] = parser.parseDirectory(resourcePath("/benchtop"), result -> {
+                    synchronized (batch) {
+                        batch[0].cancel();
+                    }
+                });
+            }
+            batch[0].await();
+
+            assertTrue(batch[0].isCancelled());
+            assertEquals(1, batch[0].getCompletedCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void callbackFailureIsReported() throws IOException, InterruptedException, ExecutionException {
+        Batch batch = new JCampBatchParser().parseDirectory(resourcePath("/benchtop"), result -> {
+            throw new IllegalStateException("callback failure");
+        });
+        batch.await();
+    }
+
+    @Test
+    public void concurrentFailuresAreKept() throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            CountDownLatch together = new CountDownLatch(2);
+            AtomicInteger failures = new AtomicInteger();
+            Batch batch = new JCampBatchParser(executor, JCampBatchParser.DEFAULT_MAX_IN_FLIGHT_BYTES, ParseListener.NONE)
+                .parseDirectory(resourcePath("/benchtop"), result -> {
+                    // make two callbacks fail at the same time
+                    together.countDown();
+                    try {
+                        together.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    failures.incrementAndGet();
+                    throw new IllegalStateException("callback failure");
+                });
+
+            try {
+                batch.await();
+                fail("Callback failures should be reported");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+                assertTrue(failures.get() >= 2);
+                assertEquals(failures.get() - 1, e.getCause().getSuppressed().length);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void parseArchive() throws IOException, InterruptedException, ExecutionException {
+        Path directory = resourcePath("/benchtop");
+        Path archive = Files.createTempFile("jcamp-batch", ".zip");
+        try {
+            try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(archive));
+                 Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                    output.putNextEntry(new ZipEntry(directory.relativize(file).toString()));
+                    Files.copy(file, output);
+                }
+                output.putNextEntry(new ZipEntry("notes.txt"));
+                output.write(new byte[] { 'n', 'o' });
+            }
+
+            Map<String, Result> results = new ConcurrentHashMap<>();
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                Batch batch = new JCampBatchParser(executor, JCampBatchParser.DEFAULT_MAX_IN_FLIGHT_BYTES, ParseListener.NONE)
+                    .parseArchive(archive, result -> results.put(result.getPath().toString(), result));
+                batch.await();
+                assertEquals(0, batch.getFailedCount());
+            } finally {
+                executor.shutdown();
+            }
+
+            assertEquals(4, results.size());
+            for (Map.Entry<String, Result> entry : results.entrySet()) {
+                JCampDocument expected = new JCampParser().parse(directory.resolve(entry.getKey().substring(1)).toFile());
+                assertEquals(expected.getTitle(), entry.getValue().getDocument().getTitle());
+                assertEquals(expected.getBlockCount(), entry.getValue().getDocument().getBlockCount());
+            }
+        } finally {
+            Files.delete(archive);
+        }
+    }
+
+    @Test
+    public void jcampExtensions() {
+        assertTrue(JCampBatchParser.isJCampFile(Path.of("a.dx")));
+        assertTrue(JCampBatchParser.isJCampFile(Path.of("dir/b.JDX")));
+        assertTrue(JCampBatchParser.isJCampFile(Path.of("c.jcamp")));
+        assertFalse(JCampBatchParser.isJCampFile(Path.of("d.txt")));
+        assertTrue(JCampBatchParser.isJCampFile(Path.of("e.jdx.gz")));
+        assertFalse(JCampBatchParser.isJCampFile(Path.of("f.txt.gz")));
+    }
+
+    private Path resourcePath(String resource) {
+        return new File(getClass().getResource(resource).getFile()).toPath();
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.model.JCampPage;
+import com.nanalysis.jcamp.model.JCampRecord;
+import com.nanalysis.jcamp.writer.SyntheticJCampGenerator;
+
+public class JCampHandlerTest {
+    @Test
+    public void eventsMatchBuiltDocuments() throws IOException {
+        for (String name : List.of(
+            "/spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx",
+            "/benchtop/100/NMReady_1D_1H_20210302_quinine_4.dx",
+            "/benchtop/60/NMReady_1D_1H_20210909_Test_formatesS.jdx")) {
+            File file = new File(getClass().getResource(name).getFile());
+            JCampDocument expected = new JCampParser().parse(file);
+
+            RecordingHandler handler = new RecordingHandler();
+            new JCampParser().parse(file, handler);
+            assertMatches(name, expected, handler);
+        }
+    }
+
+    @Test
+    public void eventsMatchGeneratedLinkDocument() {
+        String content = new SyntheticJCampGenerator(11).setPoints(256).setIncrements(3).setBlocks(3).generate();
+        RecordingHandler handler = new RecordingHandler();
+        new JCampParser().parse(content, handler);
+        assertMatches("generated", new JCampParser().parse(content), handler);
+    }
+
+    @Test
+    public void countersAreReported() {
+        String content = "##TITLE=counters\n##JCAMP-DX=5.01\n##DATA TYPE=NMR FID\n##$COMMENT=first\nsecond\n##END=\n";
+        AggregatingParseListener listener = new AggregatingParseListener();
+        RecordingHandler handler = new RecordingHandler();
+        new JCampParser(listener).parse(content, handler);
+
+        assertEquals(content.length(), listener.getCount(ParseListener.Counter.BYTES));
+        assertEquals(6, listener.getCount(ParseListener.Counter.LINES));
+        assertEquals(5, listener.getCount(ParseListener.Counter.RECORDS));
+        assertEquals(3, handler.headerRecords.size());
+        assertEquals("first\nsecond", handler.blocks.get(0).records.get(0).getString());
+        assertEquals(1, handler.ends);
+    }
+
+    private static void assertMatches(String name, JCampDocument expected, RecordingHandler handler) {
+        assertEquals(name, 1, handler.ends);
+        assertEquals(name, expected.records().count(), handler.headerRecords.size());
+        assertEquals(name, expected.blocks().count(), handler.blocks.size());
+        for (int b = 0; b < handler.blocks.size(); b++) {
+            JCampBlock block = expected.block(b);
+            BlockContent content = handler.blocks.get(b);
+            assertEquals(name, block.records().count(), content.records.size());
+            assertEquals(name, block.getPageCount(), content.pages.size());
+            for (int p = 0; p < block.getPageCount(); p++) {
+                JCampPage page = block.page(p);
+                PageContent pageContent = content.pages.get(p);
+                assertEquals(name, page.records().count(), pageContent.records.size());
+                assertEquals(name, page.getHeader(), pageContent.dataRecord.getString());
+                assertEquals(name, page.getDataLines(), pageContent.dataLines);
+            }
+        }
+    }
+
+    private static class BlockContent {
+        private final List<JCampRecord> records = new ArrayList<>();
+        private final List<PageContent> pages = new ArrayList<>();
+    }
+
+    private static class PageContent {
+        private final List<JCampRecord> records = new ArrayList<>();
+        private final List<String> dataLines = new ArrayList<>();
+        private JCampRecord dataRecord;
+    }
+
+    /**
+     * Rebuilds a light document structure from events, checking that they are properly nested.
+     */
+    private static class RecordingHandler implements JCampHandler {
+        private final List<JCampRecord> headerRecords = new ArrayList<>();
+        private final List<BlockContent> blocks = new ArrayList<>();
+        private BlockContent block;
+        private PageContent page;
+        private int ends;
+
+        @Override
+        public void record(JCampRecord record) {
+            if (page != null) {
+                page.records.add(record);
+                String label = record.getNormalizedLabel();
+                if (label.equals("DATATABLE") || label.equals("XYDATA")) {
+                    page.dataRecord = record;
+                }
+            } else if (block != null) {
+                block.records.add(record);
+            } else {
+                headerRecords.add(record);
+            }
+        }
+
+        @Override
+        public void startBlock(int blockIndex) {
+            assertEquals(null, block);
+            assertEquals(blocks.size(), blockIndex);
+            block = new BlockContent();
+            blocks.add(block);
+        }
+
+        @Override
+        public void startPage(int pageIndex) {
+            assertEquals(null, page);
+            assertEquals(block.pages.size(), pageIndex);
+            page = new PageContent();
+            block.pages.add(page);
+        }
+
+        @Override
+        public void dataLine(CharSequence text, int start, int end) {
+            page.dataLines.add(text.subSequence(start, end).toString());
+        }
+
+        @Override
+        public void endPage() {
+            assertEquals(true, page != null);
+            page = null;
+        }
+
+        @Override
+        public void endBlock() {
+            assertEquals(null, page);
+            block = null;
+        }
+
+        @Override
+        public void endDocument() {
+            assertEquals(null, block);
+            ends++;
+        }
+    }
+}
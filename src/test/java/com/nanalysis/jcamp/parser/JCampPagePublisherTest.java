@@ -0,0 +1,180 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampDocument;
+
+public class JCampPagePublisherTest {
+    private static final Object COMPLETE = new Object();
+
+    @Test
+    public void publishesAllPagesInOrder() throws IOException, InterruptedException {
+        for (String resource : List.of("/benchtop/100/NMReady_COSY_1H_20210324_dep_64x512.dx", "/spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx",
+            "/benchtop/60/NMReady_1D_1H_20210909_Test_formatesS.jdx")) {
+            File file = resourceFile(resource);
+            JCampDocument expected = new JCampParser().parse(file);
+
+            RecordingSubscriber subscriber = new RecordingSubscriber();
+            new JCampPagePublisher(file.toPath()).subscribe(subscriber);
+
+            List<DecodedPage> pages = new ArrayList<>();
+            for (Object event = subscriber.next(); event != COMPLETE; event = subscriber.next()) {
+                pages.add((DecodedPage) event);
+                subscriber.subscription.request(1);
+            }
+
+            int index = 0;
+            for (int b = 0; b < expected.getBlockCount(); b++) {
+                JCampBlock block = expected.block(b);
+                for (int p = 0; p < block.getPageCount(); p++) {
+                    DecodedPage page = pages.get(index++);
+                    assertEquals(resource, b, page.getBlockIndex());
+                    assertEquals(resource, p, page.getPageIndex());
+                    assertArrayEquals(resource, block.page(p).toArray(), page.getValues(), 0);
+                }
+            }
+            assertEquals(resource, index, pages.size());
+        }
+    }
+
+    @Test
+    public void pageSymbolAndValue() throws InterruptedException {
+        File file = resourceFile("/benchtop/100/NMReady_COSY_1H_20210324_dep_64x512.dx");
+        JCampDocument expected = new JCampParser().parse(resourceAsString(file.toPath()));
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new JCampPagePublisher(resourceAsString(file.toPath()), null).subscribe(subscriber);
+        DecodedPage page = (DecodedPage) subscriber.next();
+        subscriber.subscription.cancel();
+
+        assertEquals(expected.block(0).page(0).extractPageSymbol(), page.getPageSymbol());
+        assertEquals(expected.block(0).page(0).extractPageValueAsNumber(), page.getPageValueAsNumber(), 0);
+        // data lines were discarded once decoded
+        assertTrue(page.getPage().getDataLines().isEmpty());
+    }
+
+    @Test
+    public void honorsDemand() throws InterruptedException {
+        RecordingSubscriber subscriber = new RecordingSubscriber(3);
+        new JCampPagePublisher(resourceFile("/benchtop/100/NMReady_COSY_1H_20210324_dep_64x512.dx").toPath()).subscribe(subscriber);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(subscriber.next() instanceof DecodedPage);
+        }
+        // no more demand: nothing else is emitted
+        assertNull(subscriber.events.poll(200, TimeUnit.MILLISECONDS));
+
+        subscriber.subscription.request(2);
+        assertTrue(subscriber.next() instanceof DecodedPage);
+        assertTrue(subscriber.next() instanceof DecodedPage);
+        subscriber.subscription.cancel();
+        assertNull(subscriber.events.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void invalidRequestIsAnError() throws InterruptedException {
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        new JCampPagePublisher(resourceFile("/spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx").toPath()).subscribe(subscriber);
+        subscriber.subscription.request(0);
+        assertTrue(subscriber.next() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void missingFileIsAnError() throws InterruptedException {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new JCampPagePublisher(Path.of("missing.dx")).subscribe(subscriber);
+        assertTrue(subscriber.next() instanceof IOException);
+    }
+
+    private File resourceFile(String resource) {
+        return new File(getClass().getResource(resource).getFile());
+    }
+
+    private static String resourceAsString(Path path) {
+        try {
+            return Files.readString(path);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Records all signals in a queue: pages, errors, or COMPLETE.
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<DecodedPage> {
+        private final BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+        private final long initialDemand;
+        private Flow.Subscription subscription;
+
+        RecordingSubscriber() {
+            this(1);
+        }
+
+        RecordingSubscriber(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        Object next() throws InterruptedException {
+            Object event = events.poll(10, TimeUnit.SECONDS);
+            if (event == null) {
+                throw new AssertionError("No signal received");
+            }
+            return event;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialDemand > 0) {
+                subscription.request(initialDemand);
+            }
+        }
+
+        @Override
+        public void onNext(DecodedPage item) {
+            events.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            events.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            events.add(COMPLETE);
+        }
+    }
+}
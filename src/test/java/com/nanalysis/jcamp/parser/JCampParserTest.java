@@ -15,8 +15,10 @@
  */
 package com.nanalysis.jcamp.parser;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import com.nanalysis.jcamp.model.DataType;
 import com.nanalysis.jcamp.model.JCampDocument;
@@ -24,7 +26,25 @@ import org.junit.Test;
 
 import com.nanalysis.jcamp.model.DataClass;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 public class JCampParserTest {
     @Test
@@ -113,6 +133,176 @@ public class JCampParserTest {
         new JCampParser().parse("##END=\n##FAILURE=document ended");
     }
 
+    @Test
+    public void sharedParserAcrossThreads() throws Exception {
+        List<String> inputs = List.of(
+            resourceAsString("/spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx"),
+            resourceAsString("/benchtop/100/NMReady_1D_1H_20210302_quinine_4.dx"),
+            resourceAsString("/benchtop/60/NMReady_1D_1H_20210909_Test_formates.dx"),
+            resourceAsString("/benchtop/60/NMReady_1D_1H_20210909_Test_formatesS.jdx"));
+
+        JCampParser parser = new JCampParser();
+        List<double[]> expected = inputs.stream().map(input -> parser.parse(input).block(0).page(0).toArray()).collect(Collectors.toList());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<double[]>> results = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String input = inputs.get(i % inputs.size());
+                results.add(executor.submit(() -> parser.parse(input).block(0).page(0).toArray()));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertArrayEquals(expected.get(i % inputs.size()), results.get(i).get(), 0);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void lineTerminators() {
+        String unix = "##TITLE=terminators\n##JCAMP-DX=5.01\n##DATA TYPE=NMR FID\n##$COMMENT=first\nsecond\n##END=\n";
+        JCampDocument document = new JCampParser().parse(unix);
+        assertEquals("first\nsecond", document.block(0).get("$COMMENT").getString());
+
+        for (String terminator : List.of("\r\n", "\r")) {
+            JCampDocument other = new JCampParser().parse(unix.replace("\n", terminator));
+            assertEquals(terminator, "first\nsecond", other.block(0).get("$COMMENT").getString());
+            assertEquals(terminator, document.getTitle(), other.getTitle());
+        }
+    }
+
+    @Test
+    public void parseHeaderStopsBeforeData() throws IOException {
+        for (String name : List.of("/spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx", "/benchtop/60/NMReady_1D_1H_20210909_Test_formatesS.jdx")) {
+            JCampDocument expected = new JCampParser().parse(resourceAsString(name));
+            JCampDocument header = new JCampParser().parseHeader(new File(getClass().getResource(name).getFile()));
+
+            assertEquals(name, expected.getTitle(), header.getTitle());
+            assertEquals(name, expected.getDataType(), header.getDataType());
+            assertEquals(name, 1, header.blocks().count());
+            assertEquals(name, expected.block(0).getDataType(), header.block(0).getDataType());
+            assertEquals(name, 0, header.block(0).getPageCount());
+        }
+    }
+
+    @Test
+    public void parseFromBytes() {
+        String content = resourceAsString("/benchtop/100/NMReady_1D_1H_20210302_quinine_4.dx");
+        JCampDocument expected = new JCampParser().parse(content);
+        byte[] bytes = content.getBytes(StandardCharsets.ISO_8859_1);
+
+        // embedded in a larger array, as when reading a payload
+        byte[] payload = new byte[bytes.length + 10];
+        System.arraycopy(bytes, 0, payload, 7, bytes.length);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 4);
+        direct.position(4);
+        direct.put(bytes).flip().position(4);
+
+        for (JCampDocument document : List.of(new JCampParser().parse(payload, 7, bytes.length), new JCampParser().parse(direct))) {
+            assertEquals(expected.getTitle(), document.getTitle());
+            assertEquals(expected.block(0).getPageCount(), document.block(0).getPageCount());
+            for (int p = 0; p < expected.block(0).getPageCount(); p++) {
+                assertArrayEquals(expected.block(0).page(p).toArray(), document.block(0).page(p).toArray(), 0);
+            }
+        }
+        assertEquals(4, direct.position());
+    }
+
+    @Test
+    public void nonAsciiBytesAreParsedAsUtf8() throws IOException {
+        String content = "##TITLE=sample at 25\u00b0C, 10 \u00b5s\n##JCAMP-DX=5.01\n##END=\n";
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        String expected = new JCampParser().parse(new ByteArrayInputStream(bytes)).getTitle();
+        assertEquals("sample at 25\u00b0C, 10 \u00b5s", expected);
+
+        assertEquals(expected, new JCampParser().parse(bytes, 0, bytes.length).getTitle());
+        assertEquals(expected, new JCampParser().parse(ByteBuffer.allocateDirect(bytes.length).put(bytes).flip()).getTitle());
+    }
+
+    @Test
+    public void parseCompressedFiles() throws IOException {
+        String name = "/benchtop/100/NMReady_1D_1H_20210302_quinine_4.dx";
+        String content = resourceAsString(name);
+        JCampDocument expected = new JCampParser().parse(content);
+
+        Path gzip = Files.createTempFile("jcamp", ".dx.gz");
+        Path zip = Files.createTempFile("jcamp", ".zip");
+        try {
+            try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+                output.write(content.getBytes(StandardCharsets.UTF_8));
+            }
+            try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(zip))) {
+                output.putNextEntry(new ZipEntry("readme.txt"));
+                output.write("not a JCamp file".getBytes(StandardCharsets.UTF_8));
+                output.putNextEntry(new ZipEntry("experiment/quinine.jdx"));
+                output.write(content.getBytes(StandardCharsets.UTF_8));
+            }
+
+            List<JCampDocument> documents = List.of(
+                new JCampParser().parse(gzip.toFile()),
+                new JCampParser().parse(zip.toFile()),
+                new JCampParser().parse(Files.newInputStream(gzip)),
+                new JCampParser().parse(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))));
+            for (JCampDocument document : documents) {
+                assertEquals(expected.getTitle(), document.getTitle());
+                assertEquals(expected.block(0).getPageCount(), document.block(0).getPageCount());
+                for (int p = 0; p < expected.block(0).getPageCount(); p++) {
+                    assertArrayEquals(expected.block(0).page(p).toArray(), document.block(0).page(p).toArray(), 0);
+                }
+            }
+
+            // decompressed size, from the GZIP trailer
+            assertEquals(content.getBytes(StandardCharsets.UTF_8).length, CompressedInput.expandedSize(gzip));
+            assertTrue(CompressedInput.expandedSize(zip) > Files.size(zip));
+
+            // other file entry points
+            assertEquals(expected.getTitle(), new JCampParser().parseHeader(gzip.toFile()).getTitle());
+            List<Integer> pages = new ArrayList<>();
+            new JCampParser().parse(gzip.toFile(), new JCampHandler() {
+                @Override
+                public void startPage(int pageIndex) {
+                    pages.add(pageIndex);
+                }
+            });
+            assertEquals(expected.block(0).getPageCount(), pages.size());
+        } finally {
+            Files.delete(gzip);
+            Files.delete(zip);
+        }
+    }
+
+    @Test
+    public void headerParseIsReportedToListener() throws IOException {
+        AggregatingParseListener listener = new AggregatingParseListener();
+        File file = new File(getClass().getResource("/spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx").getFile());
+        JCampDocument header = new JCampParser(listener).parseHeader(file);
+
+        assertEquals(0, header.block(0).getPageCount());
+        assertTrue(listener.getCount(ParseListener.Counter.RECORDS) > 0);
+        assertTrue(listener.getCount(ParseListener.Counter.BYTES) < file.length());
+        assertEquals(1, listener.getSampleCount(ParseListener.Phase.RECORDS));
+    }
+
+    @Test
+    public void corruptedInputIsClosed() {
+        AtomicBoolean closed = new AtomicBoolean();
+        // GZIP magic bytes, followed by an unknown compression method
+        InputStream input = new ByteArrayInputStream(new byte[] {0x1F, (byte) 0x8B, 0, 0, 0, 0, 0, 0, 0, 0}) {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        try {
+            new JCampParser().parse(input);
+            fail("A corrupted GZIP header should be rejected");
+        } catch (IOException e) {
+            assertTrue(closed.get());
+        }
+    }
+
     private String resourceAsString(String name) {
         try (var input = getClass().getResourceAsStream(name)) {
             if(input == null) {
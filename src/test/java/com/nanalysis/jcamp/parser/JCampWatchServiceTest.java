@@ -0,0 +1,164 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.parser.JCampWatchService.Content;
+import com.nanalysis.jcamp.parser.JCampWatchService.Metrics;
+import com.nanalysis.jcamp.parser.JCampWatchService.Result;
+
+public class JCampWatchServiceTest {
+    private static final long QUIET_PERIOD_MILLIS = 300;
+
+    private Path directory;
+    private JCampWatchService service;
+
+    @Before
+    public void createService() throws IOException {
+        directory = Files.createTempDirectory("jcamp-watch");
+        service = new JCampWatchService(2, QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS, ParseListener.NONE);
+        service.register(directory);
+    }
+
+    @After
+    public void closeService() throws IOException {
+        service.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted((a, b) -> b.compareTo(a)).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void partialWritesAreDebounced() throws IOException, InterruptedException {
+        BlockingQueue<Result> results = new LinkedBlockingQueue<>();
+        service.addHandler(Content.DOCUMENT, results::add);
+
+        // written in two parts, with a pause shorter than the quiet period
+        String content = resourceAsString("/benchtop/60/NMReady_1D_1H_20210909_Test_formates.dx");
+        Path file = directory.resolve("formates.dx");
+        try (OutputStream output = Files.newOutputStream(file)) {
+            int middle = content.length() / 2;
+            output.write(content.substring(0, middle).getBytes(StandardCharsets.UTF_8));
+            output.flush();
+            Thread.sleep(QUIET_PERIOD_MILLIS / 3);
+            output.write(content.substring(middle).getBytes(StandardCharsets.UTF_8));
+        }
+
+        Result result = results.poll(10, TimeUnit.SECONDS);
+        assertNotNull(result);
+        assertEquals(file, result.getPath());
+        assertTrue(result.isSuccess());
+        assertEquals(Content.DOCUMENT, result.getContent());
+        assertTrue(result.getLag(TimeUnit.MILLISECONDS) >= QUIET_PERIOD_MILLIS);
+
+        JCampDocument expected = new JCampParser().parse(content);
+        assertEquals(expected.getTitle(), result.getDocument().getTitle());
+        assertEquals(expected.block(0).page(0).toArray().length, result.getDocument().block(0).page(0).toArray().length);
+
+        // nothing else is published for the same write
+        assertNull(results.poll(3 * QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS));
+
+        Metrics metrics = service.getMetrics();
+        assertEquals(1, metrics.getProcessedCount());
+        assertEquals(0, metrics.getFailedCount());
+        assertEquals(content.length(), metrics.getProcessedBytes());
+        assertEquals(0, metrics.getPendingCount());
+        assertEquals(0, metrics.getQueueDepth());
+        assertTrue(metrics.getMaxLag(TimeUnit.MILLISECONDS) >= metrics.getAverageLag(TimeUnit.MILLISECONDS));
+        assertTrue(metrics.getFilesPerSecond() > 0);
+    }
+
+    @Test
+    public void headerHandlersOnlyReadHeaders() throws IOException, InterruptedException {
+        BlockingQueue<Result> results = new LinkedBlockingQueue<>();
+        service.addHandler(Content.HEADER, results::add);
+
+        Files.copy(resourcePath("/spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx"), directory.resolve("hsqc.jdx"));
+        Files.writeString(directory.resolve("ignored.txt"), "not a JCamp file");
+
+        Result result = results.poll(10, TimeUnit.SECONDS);
+        assertNotNull(result);
+        assertEquals(Content.HEADER, result.getContent());
+        assertEquals("#4 - HSQC_ET_GS_GARP-4 -  rs2d", result.getDocument().getTitle());
+        assertEquals(0, result.getDocument().block(0).getPageCount());
+        assertNull(results.poll(3 * QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void modifiedFilesAreParsedAgain() throws IOException, InterruptedException {
+        BlockingQueue<Result> results = new LinkedBlockingQueue<>();
+        service.addHandler(Content.HEADER, results::add);
+        service.addHandler(Content.HEADER, result -> {
+            throw new IllegalStateException("failing handler");
+        });
+
+        Path file = directory.resolve("modified.dx");
+        Files.writeString(file, "##TITLE=first\n##JCAMP-DX=5.01\n##DATA TYPE=NMR FID\n##END=\n");
+        Result first = results.poll(10, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertEquals("first", first.getDocument().getTitle());
+
+        Files.writeString(file, "##TITLE=second\n##JCAMP-DX=5.01\n##DATA TYPE=NMR FID\n##END=\n");
+        Result second = results.poll(10, TimeUnit.SECONDS);
+        assertNotNull(second);
+        assertEquals("second", second.getDocument().getTitle());
+        assertEquals(2, service.getMetrics().getProcessedCount());
+    }
+
+    @Test
+    public void closeStopsWatching() throws IOException, InterruptedException {
+        BlockingQueue<Result> results = new LinkedBlockingQueue<>();
+        service.addHandler(Content.DOCUMENT, results::add);
+        service.close();
+        assertTrue(service.awaitTermination(1, TimeUnit.SECONDS));
+
+        Files.writeString(directory.resolve("late.dx"), "##TITLE=late\n##END=\n");
+        assertNull(results.poll(3 * QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS));
+        assertFalse(service.getMetrics().getProcessedCount() > 0);
+    }
+
+    private Path resourcePath(String resource) {
+        return new File(getClass().getResource(resource).getFile()).toPath();
+    }
+
+    private String resourceAsString(String resource) throws IOException {
+        return Files.readString(resourcePath(resource));
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampContainer;
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.model.JCampRecord;
+import com.nanalysis.jcamp.parser.ParseListener.Counter;
+import com.nanalysis.jcamp.writer.Compression;
+import com.nanalysis.jcamp.writer.SyntheticJCampGenerator;
+
+public class ParallelJCampParserTest {
+    @Test
+    public void sameResultAsSequentialParser() {
+        List<String> inputs = List.of(
+            resourceAsString("/spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx"),
+            resourceAsString("/benchtop/100/NMReady_COSY_1H_20210324_dep_64x512.dx"),
+            resourceAsString("/benchtop/60/NMReady_1D_1H_20210909_Test_formatesS.jdx"),
+            new SyntheticJCampGenerator(3).setKind(SyntheticJCampGenerator.Kind.LINK).setBlocks(7).setPoints(256).setIncrements(3).generate(),
+            new SyntheticJCampGenerator(4).setKind(SyntheticJCampGenerator.Kind.LINK).setBlocks(5).setPoints(128)
+                .setCompression(Compression.AFFN).generate().replace("\n", "\r\n"));
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (String input : inputs) {
+                AggregatingParseListener expectedCounts = new AggregatingParseListener();
+                AggregatingParseListener counts = new AggregatingParseListener();
+                JCampDocument expected = new JCampParser(expectedCounts).parse(input);
+                JCampDocument document = new ParallelJCampParser(pool, counts).parse(input);
+
+                assertSameDocument(expected, document);
+                for (Counter counter : Counter.values()) {
+                    assertEquals(counter.name(), expectedCounts.getCount(counter), counts.getCount(counter));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void compressedStreamsAreParsedInParallel() throws IOException {
+        String input = new SyntheticJCampGenerator(7).setKind(SyntheticJCampGenerator.Kind.LINK).setBlocks(4).setPoints(128).generate();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream output = new GZIPOutputStream(compressed)) {
+            output.write(input.getBytes(StandardCharsets.UTF_8));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            JCampDocument expected = new JCampParser().parse(input);
+            JCampDocument document = new ParallelJCampParser(pool, ParseListener.NONE).parse(new ByteArrayInputStream(compressed.toByteArray()));
+
+            assertSameDocument(expected, document);
+            assertTrue("Blocks should be parsed by the pool", pool.getPoolSize() > 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void bytesAreParsedInPlace() {
+        String input = new SyntheticJCampGenerator(6).setKind(SyntheticJCampGenerator.Kind.LINK).setBlocks(4).setPoints(128).generate();
+        byte[] bytes = input.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            assertSameDocument(new JCampParser().parse(input), new ParallelJCampParser(pool, ParseListener.NONE).parse(direct));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void findBlocks() {
+        String input = "##TITLE=a\n##END=\n\n$$ between blocks\n##TITLE=b\n## END = $$ with comment\n##END=\n";
+        List<ParallelJCampParser.Segment> segments = ParallelJCampParser.findBlocks(input, 0, 2);
+        assertNotNull(segments);
+        assertEquals("##TITLE=a\n##END=\n", input.substring(segments.get(0).start, segments.get(0).end));
+        assertEquals("\n$$ between blocks\n##TITLE=b\n## END = $$ with comment\n", input.substring(segments.get(1).start, segments.get(1).end));
+
+        assertNull(ParallelJCampParser.findBlocks(input, 0, 4));
+    }
+
+    @Test
+    public void countLines() {
+        String input = "a\nb\r\nc\rd\n\n";
+        assertEquals(5, ParallelJCampParser.countLines(input, 0, input.length(), input.indexOf('\r')));
+        assertEquals(2, ParallelJCampParser.countLines(input, 2, 8, input.indexOf('\r')));
+        String unix = "a\nb\n";
+        assertEquals(2, ParallelJCampParser.countLines(unix, 0, unix.length(), -1));
+    }
+
+    @Test
+    public void endRecords() {
+        assertEquals(true, ParallelJCampParser.isEndRecord("##END=", 0, 6));
+        assertEquals(true, ParallelJCampParser.isEndRecord("  ##end =", 0, 9));
+        assertEquals(false, ParallelJCampParser.isEndRecord("##END NTUPLES=NMR FID", 0, 21));
+        assertEquals(false, ParallelJCampParser.isEndRecord("$$ ##END=", 0, 9));
+    }
+
+    @Test
+    public void truncatedDocumentIsParsedSequentially() {
+        String input = new SyntheticJCampGenerator(5).setKind(SyntheticJCampGenerator.Kind.LINK).setBlocks(4).setPoints(64).generate();
+        // drop the last two blocks end
+        int cut = input.lastIndexOf("##END=", input.lastIndexOf("##END=", input.lastIndexOf("##END=") - 1) - 1);
+        String truncated = input.substring(0, cut);
+
+        JCampDocument expected = new JCampParser().parse(truncated);
+        JCampDocument document = new ParallelJCampParser().parse(truncated);
+        assertSameDocument(expected, document);
+    }
+
+    private static void assertSameDocument(JCampDocument expected, JCampDocument document) {
+        assertSameRecords(expected, document);
+        assertEquals(expected.blocks().count(), document.blocks().count());
+        List<JCampBlock> expectedBlocks = expected.blocks().collect(Collectors.toList());
+        List<JCampBlock> blocks = document.blocks().collect(Collectors.toList());
+        for (int b = 0; b < blocks.size(); b++) {
+            assertSameRecords(expectedBlocks.get(b), blocks.get(b));
+            assertEquals(expectedBlocks.get(b).getPageCount(), blocks.get(b).getPageCount());
+            for (int p = 0; p < blocks.get(b).getPageCount(); p++) {
+                assertSameRecords(expectedBlocks.get(b).page(p), blocks.get(b).page(p));
+                assertArrayEquals(expectedBlocks.get(b).page(p).toArray(), blocks.get(b).page(p).toArray(), 0);
+            }
+        }
+    }
+
+    private static void assertSameRecords(JCampContainer expected, JCampContainer container) {
+        List<JCampRecord> expectedRecords = expected.records().collect(Collectors.toList());
+        List<JCampRecord> records = container.records().collect(Collectors.toList());
+        assertEquals(expectedRecords.size(), records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(expectedRecords.get(i).getLabel(), records.get(i).getLabel());
+            assertEquals(expectedRecords.get(i).getLabel(), expectedRecords.get(i).getLineNumber(), records.get(i).getLineNumber());
+            assertEquals(expectedRecords.get(i).getLabel(), expectedRecords.get(i).getString(), records.get(i).getString());
+        }
+    }
+
+    private String resourceAsString(String name) {
+        try (var input = getClass().getResourceAsStream(name)) {
+            return new String(input.readAllBytes());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
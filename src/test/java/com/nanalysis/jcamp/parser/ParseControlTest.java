@@ -0,0 +1,89 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.writer.SyntheticJCampGenerator;
+
+public class ParseControlTest {
+    @Test
+    public void progressIsReportedByChunk() {
+        String content = new SyntheticJCampGenerator(11).setPoints(4096).setIncrements(16).generate();
+        List<long[]> reports = new ArrayList<>();
+        ParseControl control = new ParseControl((bytes, lines) -> reports.add(new long[] { bytes, lines }));
+        JCampDocument document = new JCampParser().parse(content, control);
+
+        long lineCount = content.lines().count();
+        assertTrue(reports.size() > content.length() / ParseControl.CHUNK_BYTES);
+        for (int i = 1; i < reports.size(); i++) {
+            assertTrue(reports.get(i)[0] > reports.get(i - 1)[0]);
+        }
+        assertArrayEquals(new long[] { control.getBytesRead(), lineCount }, reports.get(reports.size() - 1));
+        assertEquals(lineCount, control.getLinesRead());
+        assertEquals(content.length(), control.getBytesRead());
+        assertEquals(new JCampParser().parse(content).block(0).getPageCount(), document.block(0).getPageCount());
+    }
+
+    @Test
+    public void progressIsReportedFromStreams() throws IOException {
+        String content = new SyntheticJCampGenerator(12).setPoints(1024).setIncrements(4).generate();
+        ParseControl control = new ParseControl();
+        new JCampParser().parse(new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII)), control);
+
+        assertEquals(content.lines().count(), control.getLinesRead());
+    }
+
+    @Test
+    public void progressIsReportedFromConcurrentBlocks() {
+        String content = new SyntheticJCampGenerator(13).setKind(SyntheticJCampGenerator.Kind.LINK).setBlocks(4).setPoints(2048).generate();
+        ParseControl control = new ParseControl();
+        JCampDocument document = new ParallelJCampParser().parse(content, control);
+
+        assertEquals(4, document.blocks().count());
+        assertEquals(content.lines().count(), control.getLinesRead());
+    }
+
+    @Test(expected = CancellationException.class)
+    public void cancelledParseStopsAtNextChunk() {
+        String content = new SyntheticJCampGenerator(14).setPoints(4096).setIncrements(16).generate();
+        ParseControl[] control = new ParseControl[1];
+        control[0] = new ParseControl((bytes, lines) -> {
+            assertTrue(bytes < content.length());
+            control[0].cancel();
+        });
+        new JCampParser().parse(content, control[0]);
+    }
+
+    @Test(expected = CancellationException.class)
+    public void cancelledBeforeStart() {
+        ParseControl control = new ParseControl();
+        control.cancel();
+        new JCampParser().parse(new SyntheticJCampGenerator(15).setPoints(64).generate(), control);
+    }
+}
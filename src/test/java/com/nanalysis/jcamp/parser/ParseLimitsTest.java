@@ -0,0 +1,121 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.writer.SyntheticJCampGenerator;
+
+public class ParseLimitsTest {
+    private static JCampParser parser(ParseLimits limits) {
+        return new JCampParser(ParseListener.NONE, Projection.ALL, limits);
+    }
+
+    @Test
+    public void documentsWithinLimitsAreParsed() {
+        String content = new SyntheticJCampGenerator(21).setPoints(1024).setIncrements(2).generate();
+        ParseLimits limits = ParseLimits.NONE.withMaxRecordBytes(1 << 20).withMaxPointsPerPage(1024).withMaxPages(4).withMaxBlocks(1);
+        JCampDocument document = parser(limits).parse(content);
+
+        assertEquals(4, document.block(0).getPageCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void recordSizeIsLimited() {
+        String content = new SyntheticJCampGenerator(22).setPoints(4096).generate();
+        parser(ParseLimits.NONE.withMaxRecordBytes(1024)).parse(content);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void filesAreReadLineByLineWithLimits() throws IOException {
+        Path file = Files.createTempFile("jcamp-limits", ".dx");
+        try {
+            try (OutputStream output = Files.newOutputStream(file)) {
+                output.write(new SyntheticJCampGenerator(22).setPoints(4096).generate().getBytes(StandardCharsets.UTF_8));
+                // invalid UTF-8, only rejected when the whole file is read at once
+                output.write(new byte[] {(byte) 0xC3, (byte) 0x28});
+            }
+            parser(ParseLimits.NONE.withMaxRecordBytes(1024)).parse(file.toFile());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void pointsPerPageAreLimited() {
+        String content = new SyntheticJCampGenerator(23).setPoints(4096).generate();
+        parser(ParseLimits.NONE.withMaxPointsPerPage(4095)).parse(content);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void pagesAreLimited() {
+        String content = new SyntheticJCampGenerator(24).setPoints(64).setIncrements(8).generate();
+        parser(ParseLimits.NONE.withMaxPages(15)).parse(content);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void declaredBlocksAreLimited() {
+        String content = new SyntheticJCampGenerator(25).setKind(SyntheticJCampGenerator.Kind.LINK).setBlocks(3).setPoints(64).generate();
+        parser(ParseLimits.NONE.withMaxBlocks(2)).parse(content);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void headerParseIsLimited() throws IOException {
+        Path file = Files.createTempFile("jcamp-limits", ".dx");
+        try {
+            new SyntheticJCampGenerator(25).setKind(SyntheticJCampGenerator.Kind.LINK).setBlocks(3).setPoints(64).generate(file);
+            parser(ParseLimits.NONE.withMaxBlocks(2)).parseHeader(file.toFile());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void blocksFoundAreLimited() {
+        String content = new SyntheticJCampGenerator(26).setKind(SyntheticJCampGenerator.Kind.LINK).setBlocks(3).setPoints(64).generate()
+            .replace("##BLOCKS=3", "##BLOCKS=1");
+        parser(ParseLimits.NONE.withMaxBlocks(2)).parse(content);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void parallelParserAppliesLimits() {
+        String content = new SyntheticJCampGenerator(27).setKind(SyntheticJCampGenerator.Kind.LINK).setBlocks(3).setPoints(64).generate();
+        new ParallelJCampParser(ForkJoinPool.commonPool(), ParseListener.NONE, Projection.ALL, ParseLimits.NONE.withMaxPages(4), null)
+            .parse(content);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void pipelinedParserAppliesLimits() {
+        String content = new SyntheticJCampGenerator(28).setPoints(64).setIncrements(8).generate();
+        new PipelinedJCampParser(ForkJoinPool.commonPool(), 4, ParseListener.NONE, Projection.ALL, ParseLimits.NONE.withMaxPages(15), null)
+            .parse(content);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void limitsShouldBePositive() {
+        ParseLimits.NONE.withMaxPages(0);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.model.JCampPage;
+import com.nanalysis.jcamp.parser.ParseListener.Counter;
+
+public class PipelinedJCampParserTest {
+    @Test
+    public void pagesAreDecodedWhileParsing() throws IOException {
+        List<String> resources = List.of(
+            "/benchtop/100/NMReady_COSY_1H_20210324_dep_64x512.dx",
+            "/benchtop/100/NMReady_1D_1H_20210302_quinine_4.dx",
+            "/benchtop/60/NMReady_1D_1H_20210909_Test_formatesS.jdx",
+            "/spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx");
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int maxInFlightPages : new int[] {1, 8}) {
+                AggregatingParseListener listener = new AggregatingParseListener();
+                PipelinedJCampParser parser = new PipelinedJCampParser(executor, maxInFlightPages, listener);
+                for (String resource : resources) {
+                    File file = resourceFile(resource);
+                    JCampDocument expected = new JCampParser().parse(file);
+                    JCampDocument document = parser.parse(file);
+
+                    assertEquals(resource, expected.getBlockCount(), document.getBlockCount());
+                    for (int b = 0; b < document.getBlockCount(); b++) {
+                        JCampBlock block = document.block(b);
+                        assertEquals(resource, expected.block(b).getPageCount(), block.getPageCount());
+                        for (int p = 0; p < block.getPageCount(); p++) {
+                            JCampPage page = block.page(p);
+                            assertTrue(resource + " page " + p, page.isDataPreloaded());
+                            assertFalse(page.hasDecodedData());
+                            assertArrayEquals(resource, expected.block(b).page(p).toArray(), page.toArray(), 0);
+                        }
+                    }
+                }
+                assertEquals(128 + 2 + 1 + 2, listener.getCount(Counter.PAGES));
+                assertEquals(listener.getCount(Counter.PAGES), listener.getSampleCount(ParseListener.Phase.DECODE));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void allEntryPointsArePipelined() throws IOException {
+        File file = resourceFile("/benchtop/100/NMReady_1D_1H_20210302_quinine_4.dx");
+        String content = Files.readString(file.toPath());
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+
+        PipelinedJCampParser parser = new PipelinedJCampParser();
+        List<JCampDocument> documents = List.of(
+            parser.parse(file, new ParseControl()),
+            parser.parse(content, new ParseControl()),
+            parser.parse(new ByteArrayInputStream(bytes)),
+            parser.parse(new ByteArrayInputStream(bytes), new ParseControl()),
+            parser.parse(bytes, 0, bytes.length));
+        for (JCampDocument document : documents) {
+            for (int p = 0; p < document.block(0).getPageCount(); p++) {
+                assertTrue(document.block(0).page(p).isDataPreloaded());
+            }
+        }
+    }
+
+    @Test
+    public void recordsAfterPagesDontAffectDecoding() {
+        StringBuilder input = new StringBuilder(String.join("\n",
+            "##TITLE=records after pages",
+            "##JCAMP-DX=5.01",
+            "##DATA TYPE=NMR FID",
+            "##NTUPLES=NMR FID",
+            "##SYMBOL=X, R, I",
+            "##VAR_DIM=4, 4, 4",
+            "##FACTOR=1, 2, 3",
+            "##PAGE=N=1",
+            "##DATA TABLE=(X++(R..R)), XYDATA",
+            "0 1 2 3 4",
+            "##PAGE=N=2",
+            "##DATA TABLE=(X++(I..I)), XYDATA",
+            "0 1 2 3 4",
+            "##END NTUPLES=NMR FID",
+            ""));
+        for (int i = 0; i < 1000; i++) {
+            input.append("##$VENDOR PARAMETER ").append(i).append('=').append(i).append('\n');
+        }
+        input.append("##PEAK TABLE=(XY..XY)\n1 2\n##END=\n");
+
+        // decoding starts once the parsing thread moved past the pages
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            PipelinedJCampParser parser = new PipelinedJCampParser(command -> executor.execute(() -> {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                command.run();
+            }), 2, ParseListener.NONE);
+
+            JCampDocument document = parser.parse(input.toString());
+            JCampBlock block = document.block(0);
+            assertTrue(block.page(0).isDataPreloaded());
+            assertTrue(block.page(1).isDataPreloaded());
+            assertArrayEquals(new double[] { 2, 4, 6, 8 }, block.page(0).toArray(), 0);
+            assertArrayEquals(new double[] { 3, 6, 9, 12 }, block.page(1).toArray(), 0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void undecodablePagesAreLeftAsIs() {
+        String input = String.join("\n",
+            "##TITLE=undecodable",
+            "##JCAMP-DX=5.01",
+            "##DATA TYPE=NMR FID",
+            "##NTUPLES=NMR FID",
+            "##SYMBOL=X, R",
+            "##VAR_DIM=2, 2",
+            "##PAGE=N=1",
+            "##DATA TABLE=(X++(R..I)), XYDATA",
+            "0 1 2",
+            "##END NTUPLES=NMR FID",
+            "##END=");
+
+        JCampDocument document = new PipelinedJCampParser().parse(input);
+        assertFalse(document.block(0).page(0).isDataPreloaded());
+    }
+
+    private File resourceFile(String resource) {
+        return new File(getClass().getResource(resource).getFile());
+    }
+}
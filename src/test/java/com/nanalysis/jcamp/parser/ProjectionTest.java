@@ -0,0 +1,107 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.model.Label;
+import com.nanalysis.jcamp.writer.SyntheticJCampGenerator;
+
+public class ProjectionTest {
+    private static final String FORMATES = "/benchtop/60/NMReady_1D_1H_20210909_Test_formates.dx";
+
+    @Test
+    public void onlySelectedRecordsAreKept() {
+        String content = resourceAsString(FORMATES);
+        JCampDocument expected = new JCampParser().parse(content);
+        JCampDocument projected = new JCampParser(ParseListener.NONE, Projection.of(".OBSERVE FREQUENCY", "$SCANS"))
+            .parse(content);
+
+        JCampBlock block = projected.block(0);
+        assertEquals(expected.getTitle(), projected.getTitle());
+        assertEquals(expected.block(0).get(Label._OBSERVE_FREQUENCY).getDouble(), block.get(Label._OBSERVE_FREQUENCY).getDouble(), 0);
+        assertEquals(4, block.get(Label.$SCANS).getInt());
+        assertFalse(block.contains(Label._SOLVENT_NAME));
+        assertFalse(block.contains(Label.OWNER));
+
+        // structural records are kept, so that data can still be decoded
+        assertEquals(expected.block(0).getPageCount(), block.getPageCount());
+        assertArrayEquals(expected.block(0).page(0).toArray(), block.page(0).toArray(), 0);
+    }
+
+    @Test
+    public void pagesAreFilteredByYSymbol() {
+        String content = new SyntheticJCampGenerator(3).setPoints(256).setIncrements(4).generate();
+        JCampDocument expected = new JCampParser().parse(content);
+        JCampDocument projected = new JCampParser(ParseListener.NONE, Projection.ALL.withYSymbols("R")).parse(content);
+
+        assertEquals(expected.getBlockCount(), projected.getBlockCount());
+        for (int b = 0; b < expected.getBlockCount(); b++) {
+            var realPages = expected.block(b).getPagesForYSymbol("R");
+            JCampBlock block = projected.block(b);
+            assertEquals(realPages.size(), block.getPageCount());
+            for (int p = 0; p < block.getPageCount(); p++) {
+                assertEquals("R", block.page(p).extractYSymbol());
+                assertEquals(realPages.get(p).extractPageValue(), block.page(p).extractPageValue());
+                assertArrayEquals(realPages.get(p).toArray(), block.page(p).toArray(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void pagesAreFilteredByPageValue() {
+        String content = new SyntheticJCampGenerator(5).setPoints(128).setIncrements(3).generate();
+        JCampDocument expected = new JCampParser().parse(content);
+        String value = expected.block(0).page(2).extractPageValue();
+        JCampDocument projected = new JCampParser(ParseListener.NONE, Projection.of(Label.TITLE).withPageValues(value)).parse(content);
+
+        // real and imaginary pages share the same value
+        JCampBlock block = projected.block(0);
+        assertEquals(2, block.getPageCount());
+        for (int p = 0; p < block.getPageCount(); p++) {
+            assertEquals(value, block.page(p).extractPageValue());
+        }
+        assertEquals(expected.block(0).getTitle(), block.getTitle());
+    }
+
+    @Test
+    public void allKeepsEverything() {
+        String content = resourceAsString(FORMATES);
+        JCampDocument expected = new JCampParser().parse(content);
+        JCampDocument projected = new JCampParser(ParseListener.NONE, Projection.ALL).parse(content);
+
+        assertTrue(Projection.ALL.keepsAllRecords());
+        assertTrue(Projection.ALL.keepsAllPages());
+        assertEquals(expected.block(0).get(Label.OWNER).getString(), projected.block(0).get(Label.OWNER).getString());
+    }
+
+    private String resourceAsString(String name) {
+        try (var input = getClass().getResourceAsStream(name)) {
+            return new String(input.readAllBytes());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.model.JCampRecord;
+import com.nanalysis.jcamp.model.Label;
+import com.nanalysis.jcamp.writer.SyntheticJCampGenerator;
+
+public class RecordPoolTest {
+    private static final String FORMATES = "/benchtop/60/NMReady_1D_1H_20210909_Test_formates.dx";
+
+    private static JCampParser parser(RecordPool pool) {
+        return new JCampParser(ParseListener.NONE, Projection.ALL, ParseLimits.NONE, pool);
+    }
+
+    @Test
+    public void headerRecordsAreShared() {
+        String content = resourceAsString(FORMATES);
+        RecordPool pool = new RecordPool();
+        JCampDocument first = parser(pool).parse(content);
+        JCampDocument second = parser(pool).parse(content);
+        JCampDocument expected = new JCampParser().parse(content);
+
+        JCampBlock block = second.block(0);
+        assertEquals(strings(expected.block(0)), strings(block));
+        assertSame(first.block(0).get(Label.OWNER), block.get(Label.OWNER));
+        assertSame(first.block(0).get(Label._OBSERVE_FREQUENCY), block.get(Label._OBSERVE_FREQUENCY));
+        assertTrue(block.get(Label.OWNER).isFrozen());
+        assertEquals(expected.block(0).get(Label.OWNER).getLineNumber(), block.get(Label.OWNER).getLineNumber());
+
+        // data is rarely repeated, it isn't pooled
+        assertNotSame(first.block(0).page(0).get(Label.DATA_TABLE), block.page(0).get(Label.DATA_TABLE));
+        assertFalse(block.page(0).get(Label.DATA_TABLE).isFrozen());
+        assertEquals(expected.block(0).page(0).toArray().length, block.page(0).toArray().length);
+    }
+
+    @Test
+    public void recordsOnOtherLinesShareStrings() {
+        RecordPool pool = new RecordPool();
+        JCampRecord first = pool.intern(new JCampRecord(10, "OWNER", "nmr", ""));
+        JCampRecord moved = pool.intern(new JCampRecord(12, "OWNER", new String("nmr"), ""));
+
+        assertNotSame(first, moved);
+        assertSame(first.getString(), moved.getString());
+        assertSame(first.getLabel(), moved.getLabel());
+        assertSame(first, pool.intern(new JCampRecord(10, "OWNER", "nmr", "")));
+        assertEquals(2, pool.getRecordCount());
+    }
+
+    @Test
+    public void poolStopsGrowingWhenFull() {
+        RecordPool pool = new RecordPool(16, 2);
+        JCampRecord first = pool.intern(new JCampRecord(1, "A", "1", ""));
+        pool.intern(new JCampRecord(2, "B", "2", ""));
+        JCampRecord third = new JCampRecord(3, "C", "3", "");
+
+        assertSame(third, pool.intern(third));
+        assertSame(first, pool.intern(new JCampRecord(1, "A", "1", "")));
+        JCampRecord longValue = new JCampRecord(4, "A", "12345678901234567", "");
+        assertSame(longValue, pool.intern(longValue));
+        assertEquals(2, pool.getRecordCount());
+    }
+
+    @Test
+    public void headersAreShared() throws IOException {
+        RecordPool pool = new RecordPool();
+        File file = new File(getClass().getResource(FORMATES).getFile());
+        JCampDocument first = parser(pool).parseHeader(file);
+        JCampDocument second = parser(pool).parseHeader(file);
+
+        assertSame(first.get(Label.TITLE), second.get(Label.TITLE));
+        assertSame(first.block(0).get(Label.OWNER), second.block(0).get(Label.OWNER));
+    }
+
+    @Test
+    public void linkedDocumentsAreEqual() {
+        String content = new SyntheticJCampGenerator(31).setKind(SyntheticJCampGenerator.Kind.LINK).setBlocks(3).setPoints(128).generate();
+        RecordPool pool = new RecordPool();
+        parser(pool).parse(content);
+        JCampDocument expected = new JCampParser().parse(content);
+        JCampDocument document = parser(pool).parse(content);
+
+        for (int b = 0; b < 3; b++) {
+            assertEquals(strings(expected.block(b)), strings(document.block(b)));
+            assertEquals(expected.block(b).getPageCount(), document.block(b).getPageCount());
+        }
+    }
+
+    private static List<String> strings(JCampBlock block) {
+        return block.records().map(r -> r.getLineNumber() + r.getLabel() + "=" + r.getString() + "$$" + r.getComment()).collect(Collectors.toList());
+    }
+
+    private String resourceAsString(String name) {
+        try (var input = getClass().getResourceAsStream(name)) {
+            return new String(input.readAllBytes());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
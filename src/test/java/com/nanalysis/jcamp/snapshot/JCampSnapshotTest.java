@@ -0,0 +1,168 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.snapshot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampContainer;
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.model.JCampPage;
+import com.nanalysis.jcamp.model.JCampRecord;
+import com.nanalysis.jcamp.parser.JCampParser;
+
+public class JCampSnapshotTest {
+    private static final String[] RESOURCES = {
+        "/benchtop/100/NMReady_1D_1H_20210302_quinine_4.dx",
+        "/benchtop/60/NMReady_1D_1H_20210909_Test_formatesS.jdx",
+        "/spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx",
+    };
+
+    private Path snapshot;
+
+    @Before
+    public void setup() throws IOException {
+        snapshot = Files.createTempFile("jcamp", ".snapshot");
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        Files.delete(snapshot);
+    }
+
+    @Test
+    public void roundTripWithoutData() throws IOException {
+        for (String resource : RESOURCES) {
+            JCampDocument original = parse(resource);
+            JCampSnapshot.write(original, snapshot, false);
+            JCampDocument restored = JCampSnapshot.read(snapshot);
+
+            assertSameTree(original, restored);
+            for (int b = 0; b < original.getBlockCount(); b++) {
+                JCampBlock block = original.block(b);
+                for (int p = 0; p < block.getPageCount(); p++) {
+                    assertFalse(restored.block(b).page(p).hasDecodedData());
+                    assertArrayEquals(block.page(p).toArray(), restored.block(b).page(p).toArray(), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void roundTripWithData() throws IOException {
+        for (String resource : RESOURCES) {
+            JCampDocument original = parse(resource);
+            JCampSnapshot.write(original, snapshot, true);
+            JCampDocument restored = JCampSnapshot.read(snapshot);
+
+            assertEquals(original.getTitle(), restored.getTitle());
+            assertEquals(original.getBlockCount(), restored.getBlockCount());
+            for (int b = 0; b < original.getBlockCount(); b++) {
+                JCampBlock block = original.block(b);
+                JCampBlock restoredBlock = restored.block(b);
+                assertEquals(block.getPageCount(), restoredBlock.getPageCount());
+                for (int p = 0; p < block.getPageCount(); p++) {
+                    JCampPage page = restoredBlock.page(p);
+                    assertTrue(page.hasDecodedData());
+                    assertEquals(block.page(p).getHeader(), page.getHeader());
+                    assertTrue(page.getDataLines().isEmpty());
+                    assertEquals(block.page(p).getClass(), page.getClass());
+                    assertArrayEquals(block.page(p).toArray(), page.toArray(), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void lazyValuesAreIndependentCopies() throws IOException {
+        JCampSnapshot.write(parse(RESOURCES[0]), snapshot, true);
+        JCampPage page = JCampSnapshot.read(snapshot).block(0).page(0);
+
+        double[] first = page.toArray();
+        double expected = first[0];
+        first[0] = Double.NaN;
+        assertEquals(expected, page.toArray()[0], 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptedMetadataIsDetected() throws IOException {
+        JCampSnapshot.write(parse(RESOURCES[2]), snapshot, false);
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 0x7F }), channel.size() - 3);
+        }
+        JCampSnapshot.read(snapshot);
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptedHeaderIsDetected() throws IOException {
+        JCampSnapshot.write(parse(RESOURCES[2]), snapshot, false);
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 0x7F }), 20);
+        }
+        JCampSnapshot.read(snapshot);
+    }
+
+    @Test(expected = IOException.class)
+    public void notASnapshot() throws IOException {
+        Files.writeString(snapshot, "##TITLE=not a snapshot\n##END=\n");
+        JCampSnapshot.read(snapshot);
+    }
+
+    private void assertSameTree(JCampDocument expected, JCampDocument actual) {
+        assertSameRecords(expected, actual);
+        assertEquals(expected.getBlockCount(), actual.getBlockCount());
+        for (int b = 0; b < expected.getBlockCount(); b++) {
+            assertSameRecords(expected.block(b), actual.block(b));
+            assertEquals(expected.block(b).getPageCount(), actual.block(b).getPageCount());
+            for (int p = 0; p < expected.block(b).getPageCount(); p++) {
+                assertSameRecords(expected.block(b).page(p), actual.block(b).page(p));
+            }
+        }
+    }
+
+    private void assertSameRecords(JCampContainer expected, JCampContainer actual) {
+        Iterator<JCampRecord> actualRecords = actual.records().iterator();
+        expected.records().forEach(record -> {
+            assertTrue(actualRecords.hasNext());
+            JCampRecord other = actualRecords.next();
+            assertEquals(record.getLabel(), other.getLabel());
+            assertEquals(record.getString(), other.getString());
+            assertEquals(record.getComment(), other.getComment());
+            assertEquals(record.getLineNumber(), other.getLineNumber());
+        });
+        assertFalse(actualRecords.hasNext());
+    }
+
+    private JCampDocument parse(String resource) throws IOException {
+        return new JCampParser().parse(new File(getClass().getResource(resource).getFile()));
+    }
+}
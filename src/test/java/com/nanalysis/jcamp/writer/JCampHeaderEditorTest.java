@@ -0,0 +1,156 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.writer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.model.Label;
+import com.nanalysis.jcamp.parser.JCampParser;
+
+public class JCampHeaderEditorTest {
+    private Path directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("jcamp-header");
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void noEditIsAnExactCopy() throws IOException {
+        Path source = copyResource("/spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx");
+        Path target = directory.resolve("copy.dx");
+
+        new JCampHeaderEditor().rewrite(source, target);
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+    }
+
+    @Test
+    public void editSingleBlockDocument() throws IOException {
+        Path source = copyResource("/benchtop/100/NMReady_1D_1H_20210302_quinine_4.dx");
+        Path target = directory.resolve("edited.dx");
+
+        JCampHeaderEditor editor = new JCampHeaderEditor();
+        editor.set("TITLE", "quinine, edited");
+        editor.set(".SOLVENT NAME", "DMSO-d6");
+        editor.set("$NEW PARAMETER", "42");
+        editor.remove("$PHC1");
+        editor.rewrite(source, target);
+
+        JCampDocument original = new JCampParser().parse(source.toFile());
+        JCampDocument edited = new JCampParser().parse(target.toFile());
+        assertEquals("quinine, edited", edited.getTitle());
+
+        JCampBlock block = edited.block(0);
+        assertEquals("DMSO-d6", block.get(Label._SOLVENT_NAME).getString());
+        assertEquals(42, block.get("$NEW PARAMETER").getInt());
+        assertFalse(block.contains(Label.$PHC1));
+        assertTrue(block.contains(Label.$PHC0));
+        assertEquals(original.block(0).getPageCount(), block.getPageCount());
+        for (int i = 0; i < block.getPageCount(); i++) {
+            assertEquals(original.block(0).page(i).get(Label.DATA_TABLE).getString(), block.page(i).get(Label.DATA_TABLE).getString());
+        }
+    }
+
+    @Test
+    public void editInPlaceCompoundDocument() throws IOException {
+        Path file = copyResource("/spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx");
+        JCampDocument original = new JCampParser().parse(file.toFile());
+
+        JCampHeaderEditor editor = new JCampHeaderEditor();
+        editor.setAllBlocks(true);
+        editor.set(".SOLVENT NAME", "C6D6");
+        editor.set("$ADDED", "yes");
+        editor.rewrite(file, file);
+
+        JCampDocument edited = new JCampParser().parse(file.toFile());
+        assertEquals(2, edited.blocks().count());
+        assertEquals("C6D6", edited.block(0).get(Label._SOLVENT_NAME).getString());
+        assertEquals("C6D6", edited.block(1).get(Label._SOLVENT_NAME).getString());
+        assertEquals("yes", edited.block(0).get("$ADDED").getString());
+        assertFalse(edited.block(1).contains("$ADDED"));
+        assertEquals(original.block(1).page(0).get(Label.DATA_TABLE).getString(), edited.block(1).page(0).get(Label.DATA_TABLE).getString());
+        try (var files = Files.list(directory)) {
+            assertEquals("Temporary file should be moved", 1, files.count());
+        }
+    }
+
+    @Test
+    public void onlyHeaderIsEditedByDefault() throws IOException {
+        Path source = copyResource("/spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx");
+        Path target = directory.resolve("edited.dx");
+
+        JCampHeaderEditor editor = new JCampHeaderEditor();
+        editor.set(".SOLVENT NAME", "C6D6");
+        editor.rewrite(source, target);
+
+        JCampDocument edited = new JCampParser().parse(target.toFile());
+        assertEquals("C6D6", edited.block(0).get(Label._SOLVENT_NAME).getString());
+        assertEquals("CDCl3", edited.block(1).get(Label._SOLVENT_NAME).getString());
+    }
+
+    @Test
+    public void inlineCommentsAreKept() throws IOException {
+        Path source = directory.resolve("comments.dx");
+        Files.writeString(source, "##TITLE= test\r\n##$A= 1 $$ first\r\n2 $$ second\r\n$$ alone\r\n##$B= 3\r\n"
+            + "##XYDATA= (X++(Y..Y))\r\n0 1 $$ data\r\n##END=\r\n");
+        Path target = directory.resolve("edited.dx");
+
+        JCampHeaderEditor editor = new JCampHeaderEditor();
+        editor.set("$A", "4");
+        editor.set("$B", "5");
+        editor.rewrite(source, target);
+
+        assertEquals("##TITLE= test\r\n##$A=4 $$ first\r\n$$ second\r\n$$ alone\r\n##$B=5\r\n"
+            + "##XYDATA= (X++(Y..Y))\r\n0 1 $$ data\r\n##END=\r\n", Files.readString(target));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dataRecordsCantBeEdited() {
+        new JCampHeaderEditor().set("DATA TABLE", "(X++(R..R))");
+    }
+
+    private Path copyResource(String name) throws IOException {
+        Path target = directory.resolve(Path.of(name).getFileName().toString());
+        try (InputStream input = getClass().getResourceAsStream(name)) {
+            Files.copy(input, target);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.writer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.model.JCampPage;
+import com.nanalysis.jcamp.model.JCampRecord;
+import com.nanalysis.jcamp.model.Label;
+import com.nanalysis.jcamp.parser.JCampParser;
+
+public class JCampWriterTest {
+    private static final double DELTA = 1e-6;
+    private static final int[] VALUES = {1, 2, 3, 4, 5, 5, 5, 5, -1200, 0, 0, 42, 2_000_000_000, -2_000_000_000, 7, 8, 9, 10, 11, 12, 13,
+        -5, -5, -5, 100, 200, 300, 400, 500, 600, 700, 800, 900, 1000, 1100, 1200, 1300, 1400, 1500, 1600, 1700, 1800};
+
+    @Test
+    public void writeDifDupData() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (JCampWriter writer = new JCampWriter(output)) {
+            writer.writeData("DATA TABLE", "(X++(R..R)), XYDATA", new int[] {1, 2, 3, 4, 5}, 0, 1);
+        }
+
+        assertEquals("##DATA TABLE=(X++(R..R)), XYDATA\n0AJV\n4E\n", output.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void writeEachCompressionLineStart() throws IOException {
+        int[] values = {12, -3, 0, 0};
+        assertEquals("0 12 -3 0 0\n", encode(Compression.AFFN, values));
+        assertEquals("0+12-3+0+0\n", encode(Compression.PAC, values));
+        assertEquals("0A2c@@\n", encode(Compression.SQZ, values));
+        assertEquals("0A2j5L%\n3@\n", encode(Compression.DIF, values));
+        assertEquals("0A2j5L%\n3@\n", encode(Compression.DIFDUP, values));
+    }
+
+    @Test
+    public void lineWidthIsRespectedAndYCheckIsRepeated() throws IOException {
+        String encoded = encode(Compression.DIF, VALUES, 20);
+        List<String> lines = encoded.lines().collect(Collectors.toList());
+        for (String line : lines) {
+            // a line can only be longer when it contains a Y check and a single new value
+            assertTrue("Line too long: " + line, line.length() <= 20 || countTokens(line) == 2);
+        }
+        assertEquals("Last line is a Y check", "41A800", lines.get(lines.size() - 1));
+    }
+
+    @Test
+    public void negativeAffnValuesRespectLineWidth() throws IOException {
+        int[] values = {-1000, -1000, -100, -1, -1};
+        // "0 -1000 -1000 -100 -1" is 21 characters wide
+        assertEquals("0 -1000 -1000 -100\n3 -1 -1\n", encode(Compression.AFFN, values, 20));
+        assertEquals("0 -1000 -1000 -100 -1\n4 -1\n", encode(Compression.AFFN, values, 21));
+    }
+
+    @Test
+    public void valuesAtIntBoundsRoundTrip() throws IOException {
+        // the page factor is 0.5
+        double[] expected = {Integer.MAX_VALUE * 0.5, Integer.MIN_VALUE * 0.5, Integer.MAX_VALUE * 0.5, 0};
+        for (Compression compression : Compression.values()) {
+            String text = write(createDocument(expected), compression, JCampWriter.DEFAULT_LINE_WIDTH);
+            JCampDocument parsed = new JCampParser().parse(text);
+            assertArrayEquals("Round trip failed for " + compression, expected, parsed.block(0).page(0).toArray(), DELTA);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void valuesOutOfIntRangeAreRejected() throws IOException {
+        write(createDocument(new double[] {0, Integer.MAX_VALUE}), Compression.DIFDUP, JCampWriter.DEFAULT_LINE_WIDTH);
+    }
+
+    @Test
+    public void roundTripForAllCompressions() throws IOException {
+        double[] expected = new double[VALUES.length];
+        for (int i = 0; i < VALUES.length; i++) {
+            expected[i] = VALUES[i] * 0.5;
+        }
+
+        for (Compression compression : Compression.values()) {
+            JCampDocument document = createDocument(expected);
+            String text = write(document, compression, 30);
+
+            JCampDocument parsed = new JCampParser().parse(text);
+            JCampBlock block = parsed.block(0);
+            assertEquals(compression.getForm().name(), block.get(Label.VAR_FORM).getStrings().get(1));
+            assertArrayEquals("Round trip failed for " + compression, expected, block.page(0).toArray(), DELTA);
+            assertArrayEquals("Second page is copied as text", new double[] {0.5, 1, 1.5},
+                Arrays.copyOf(block.page(1).toArray(), 3), DELTA);
+        }
+    }
+
+    @Test
+    public void writeRecordWithComments() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (JCampWriter writer = new JCampWriter(output)) {
+            JCampRecord record = JCampRecord.parse("TEST=a $$ first");
+            record.parseData("b $$ second");
+            writer.writeRecord(record);
+            writer.writeRecord("END", "");
+        }
+
+        assertEquals("##TEST=a $$ first\nb\n$$ second\n##END=\n", output.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void nonAsciiHeaderRoundTrip() throws IOException {
+        JCampDocument document = createDocument(new double[] {1, 2, 3});
+        document.replaceRecord(document.get(Label.TITLE), new JCampRecord(Label.TITLE.name(), "sample at 25\u00b0C \u03bc\ud83d\ude00"));
+
+        Path file = Files.createTempFile("jcamp-writer", ".dx");
+        try {
+            try (OutputStream output = Files.newOutputStream(file); JCampWriter writer = new JCampWriter(output)) {
+                writer.write(document);
+            }
+
+            JCampDocument parsed = new JCampParser().parse(file.toFile());
+            assertEquals("sample at 25\u00b0C \u03bc\ud83d\ude00", parsed.getTitle());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void rewriteParsedDocuments() throws IOException {
+        List<String> resources = List.of(
+            "/benchtop/100/NMReady_1D_1H_20210302_quinine_4.dx",
+            "/benchtop/100/NMReady_COSY_1H_20210324_dep_64x512.dx",
+            "/benchtop/60/NMReady_1D_1H_20210909_Test_formates.dx",
+            "/benchtop/60/NMReady_1D_1H_20210909_Test_formatesS.jdx",
+            "/spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx");
+
+        for (String resource : resources) {
+            JCampDocument original = new JCampParser().parse(resourceAsString(resource));
+            JCampDocument copy = new JCampParser().parse(write(original, Compression.DIFDUP, 80));
+            assertSameContent(resource, original, copy);
+
+            // transcode all pages
+            original.blocks().flatMap(b -> pages(b).stream()).forEach(p -> p.setDecodedData(p.toArray()));
+            for (Compression compression : Compression.values()) {
+                JCampDocument transcoded = new JCampParser().parse(write(original, compression, 80));
+                assertSameContent(resource + " " + compression, original, transcoded);
+            }
+        }
+    }
+
+    private static void assertSameContent(String message, JCampDocument expected, JCampDocument actual) {
+        assertEquals(message, expected.getTitle(), actual.getTitle());
+        assertEquals(message, expected.getDataType(), actual.getDataType());
+        assertEquals(message, expected.blocks().count(), actual.blocks().count());
+        for (int b = 0; b < expected.blocks().count(); b++) {
+            JCampBlock expectedBlock = expected.block(b);
+            JCampBlock actualBlock = actual.block(b);
+            assertEquals(message, expectedBlock.allRecordKeys(), actualBlock.allRecordKeys());
+            assertEquals(message, expectedBlock.getPageCount(), actualBlock.getPageCount());
+            for (int p = 0; p < expectedBlock.getPageCount(); p++) {
+                double[] expectedData = expectedBlock.page(p).toArray();
+                double[] actualData = actualBlock.page(p).toArray();
+                double precision = Math.abs(expectedBlock.page(p).getFactorForSymbol(expectedBlock.page(p).extractYSymbol())) / 2;
+                assertArrayEquals(message + ", page " + p, expectedData, actualData, precision);
+            }
+        }
+    }
+
+    private static List<JCampPage> pages(JCampBlock block) {
+        return java.util.stream.IntStream.range(0, block.getPageCount()).mapToObj(block::page).collect(Collectors.toList());
+    }
+
+    private static JCampDocument createDocument(double[] values) {
+        JCampDocument document = new JCampDocument();
+        document.addRecord(new JCampRecord(Label.TITLE.name(), "writer test"));
+        document.addRecord(new JCampRecord("JCAMP-DX", "6.0"));
+        document.addRecord(new JCampRecord("DATA TYPE", "NMR FID"));
+
+        JCampBlock block = new JCampBlock(document);
+        document.addBlock(block);
+        block.addRecord(new JCampRecord("DATA CLASS", "NTUPLES"));
+        block.addRecord(new JCampRecord("NTUPLES", "NMR FID"));
+        block.addRecord(new JCampRecord("SYMBOL", "X, R, I, N"));
+        block.addRecord(new JCampRecord("VAR_FORM", "AFFN, AFFN, AFFN, AFFN"));
+        block.addRecord(new JCampRecord("VAR_DIM", values.length + ", " + values.length + ", " + values.length + ", 2"));
+        block.addRecord(new JCampRecord("FACTOR", "0.001, 0.5, 0.5, 1"));
+        block.addRecord(new JCampRecord("FIRST", "0, 0, 0, 1"));
+        block.addRecord(new JCampRecord("LAST", "2.5, 0, 0, 2"));
+
+        JCampPage real = new JCampPage(block);
+        real.addRecord(new JCampRecord("PAGE", "N=1"));
+        real.addRecord(new JCampRecord("DATA TABLE", "(X++(R..R)), XYDATA"));
+        real.setDecodedData(values);
+        block.addPage(real);
+
+        JCampPage imaginary = new JCampPage(block);
+        imaginary.addRecord(new JCampRecord("PAGE", "N=2"));
+        imaginary.addRecord(new JCampRecord("DATA TABLE", "(X++(I..I)), XYDATA\n0 1 2 3"));
+        block.addPage(imaginary);
+        return document;
+    }
+
+    private static String write(JCampDocument document, Compression compression, int lineWidth) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (JCampWriter writer = new JCampWriter(output, compression, lineWidth)) {
+            writer.write(document);
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String encode(Compression compression, int[] values) throws IOException {
+        return encode(compression, values, JCampWriter.DEFAULT_LINE_WIDTH);
+    }
+
+    private static String encode(Compression compression, int[] values, int lineWidth) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (JCampWriter writer = new JCampWriter(output, compression, lineWidth)) {
+            writer.writeData("DATA TABLE", "(X++(R..R))", values, 0, 1);
+        }
+        String text = output.toString(StandardCharsets.UTF_8);
+        return text.substring(text.indexOf('\n') + 1);
+    }
+
+    private static int countTokens(String line) {
+        return line.replaceAll("[^A-Za-z@%?]", "").length();
+    }
+
+    private String resourceAsString(String name) {
+        try (var input = getClass().getResourceAsStream(name)) {
+            if (input == null) {
+                throw new IllegalStateException("No resource found for " + name);
+            }
+
+            return new String(input.readAllBytes());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.writer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampPage;
+import com.nanalysis.jcamp.parser.JCampParser;
+
+public class NumpyExporterTest {
+    private Path file;
+
+    @Before
+    public void setup() throws IOException {
+        file = Files.createTempFile("jcamp", ".npz");
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        Files.delete(file);
+    }
+
+    @Test
+    public void headerIsAligned() {
+        byte[] header = NumpyExporter.header(new long[] {4096});
+        assertEquals(0, header.length % 64);
+        assertEquals('\n', header[header.length - 1]);
+        assertTrue(new String(header, StandardCharsets.US_ASCII).contains("'shape': (4096,), }"));
+        assertTrue(new String(NumpyExporter.header(new long[] {64, 512}), StandardCharsets.US_ASCII).contains("'shape': (64, 512), }"));
+    }
+
+    @Test
+    public void writeSinglePage() throws IOException {
+        JCampPage page = parse("/benchtop/100/NMReady_1D_1H_20210302_quinine_4.dx").page(0);
+        NumpyExporter.writeNpy(page, file);
+
+        NpyArray array = NpyArray.read(Files.readAllBytes(file));
+        assertEquals("4096,", array.shape);
+        assertArrayEquals(page.toArray(), array.values, 0);
+    }
+
+    @Test
+    public void writeTwoDimensionalPages() throws IOException {
+        JCampBlock block = parse("/benchtop/100/NMReady_COSY_1H_20210324_dep_64x512.dx");
+        List<JCampPage> pages = block.getPagesForYSymbol("R");
+        NumpyExporter.writeNpy(pages, file);
+
+        NpyArray array = NpyArray.read(Files.readAllBytes(file));
+        assertEquals(pages.size() + ", 512", array.shape);
+        for (int i = 0; i < pages.size(); i++) {
+            double[] row = new double[512];
+            System.arraycopy(array.values, i * 512, row, 0, 512);
+            assertArrayEquals(pages.get(i).toArray(), row, 0);
+        }
+    }
+
+    @Test
+    public void writeOneDimensionalArchive() throws IOException {
+        JCampBlock block = parse("/benchtop/100/NMReady_1D_1H_20210302_quinine_4.dx");
+        NumpyExporter.writeNpz(block, file);
+
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            assertEquals(List.of("R.npy", "I.npy", "X.npy"), zip.stream().map(ZipEntry::getName).collect(Collectors.toList()));
+            assertArrayEquals(block.page(0).toArray(), read(zip, "R.npy").values, 0);
+            assertArrayEquals(block.page(1).toArray(), read(zip, "I.npy").values, 0);
+
+            NpyArray x = read(zip, "X.npy");
+            assertEquals("4096,", x.shape);
+            assertEquals(0, x.values[0], 0);
+            assertEquals(2.045562, x.values[4095], 1e-9);
+        }
+    }
+
+    @Test
+    public void writeTwoDimensionalArchive() throws IOException {
+        JCampBlock block = parse("/benchtop/100/NMReady_COSY_1H_20210324_dep_64x512.dx");
+        NumpyExporter.writeNpz(block, file);
+
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            assertEquals(List.of("R.npy", "I.npy", "T2.npy", "T1.npy"), zip.stream().map(ZipEntry::getName).collect(Collectors.toList()));
+            List<JCampPage> imaginary = block.getPagesForYSymbol("I");
+            NpyArray array = read(zip, "I.npy");
+            assertEquals(imaginary.size() + ", 512", array.shape);
+            double[] lastRow = new double[512];
+            System.arraycopy(array.values, array.values.length - 512, lastRow, 0, 512);
+            assertArrayEquals(imaginary.get(imaginary.size() - 1).toArray(), lastRow, 0);
+
+            NpyArray pageAxis = read(zip, "T1.npy");
+            assertEquals(block.getPagesForYSymbol("R").get(0).extractPageValueAsNumber(), pageAxis.values[0], 0);
+        }
+    }
+
+    private static NpyArray read(ZipFile zip, String name) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        assertEquals(ZipEntry.STORED, entry.getMethod());
+        try (InputStream input = zip.getInputStream(entry)) {
+            return NpyArray.read(input.readAllBytes());
+        }
+    }
+
+    private JCampBlock parse(String resource) throws IOException {
+        return new JCampParser().parse(new File(getClass().getResource(resource).getFile())).block(0);
+    }
+
+    private static class NpyArray {
+        private String shape;
+        private double[] values;
+
+        private static NpyArray read(byte[] content) {
+            ByteBuffer buffer = ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals((byte) 0x93, buffer.get());
+            assertEquals("NUMPY", new String(content, 1, 5, StandardCharsets.US_ASCII));
+            int headerLength = buffer.getShort(8);
+            String header = new String(content, 10, headerLength, StandardCharsets.US_ASCII);
+            assertTrue(header.startsWith("{'descr': '<f8', 'fortran_order': False, "));
+            assertEquals(0, (10 + headerLength) % 64);
+
+            NpyArray array = new NpyArray();
+            array.shape = header.substring(header.indexOf("'shape': (") + 10, header.indexOf(')'));
+            array.values = new double[(content.length - 10 - headerLength) / Double.BYTES];
+            buffer.position(10 + headerLength);
+            buffer.asDoubleBuffer().get(array.values);
+            return array;
+        }
+    }
+}
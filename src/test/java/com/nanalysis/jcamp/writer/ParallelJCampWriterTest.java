@@ -0,0 +1,111 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.writer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.model.JCampPage;
+import com.nanalysis.jcamp.parser.JCampParser;
+
+public class ParallelJCampWriterTest {
+    @Test
+    public void outputIsIdenticalToSequentialWriter() throws IOException {
+        List<String> resources = List.of(
+            "/benchtop/100/NMReady_COSY_1H_20210324_dep_64x512.dx",
+            "/spinit/cascade/demo_HSQC_ET_GS_GARP-4_4_0.dx");
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (String resource : resources) {
+                JCampDocument document = new JCampParser().parse(resourceAsString(resource));
+                byte[] verbatim = writeSequential(document, Compression.DIFDUP);
+                assertArrayEquals(resource, verbatim, writeParallel(document, Compression.DIFDUP, pool, 1));
+                assertArrayEquals(resource, verbatim, writeParallel(document, Compression.DIFDUP, pool, 4));
+
+                document.blocks().forEach(ParallelJCampWriterTest::attachDecodedData);
+                for (Compression compression : Compression.values()) {
+                    byte[] expected = writeSequential(document, compression);
+                    assertArrayEquals(resource + " " + compression, expected, writeParallel(document, compression, pool, 1));
+                    assertArrayEquals(resource + " " + compression, expected, writeParallel(document, compression, pool, 5));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void manyPages() throws IOException {
+        JCampDocument document = new JCampParser().parse(resourceAsString("/benchtop/100/NMReady_COSY_1H_20210324_dep_64x512.dx"));
+        JCampBlock block = document.block(0);
+        attachDecodedData(block);
+        JCampPage template = block.page(0);
+        for (int i = 0; i < 500; i++) {
+            block.addPage(template);
+        }
+
+        byte[] expected = writeSequential(document, Compression.DIF);
+        byte[] actual = writeParallel(document, Compression.DIF, ForkJoinPool.commonPool(), 7);
+        assertEquals(expected.length, actual.length);
+        assertArrayEquals(expected, actual);
+    }
+
+    private static void attachDecodedData(JCampBlock block) {
+        for (int i = 0; i < block.getPageCount(); i++) {
+            JCampPage page = block.page(i);
+            page.setDecodedData(page.toArray());
+        }
+    }
+
+    private static byte[] writeSequential(JCampDocument document, Compression compression) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (JCampWriter writer = new JCampWriter(output, compression, JCampWriter.DEFAULT_LINE_WIDTH)) {
+            writer.write(document);
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] writeParallel(JCampDocument document, Compression compression, ForkJoinPool pool, int inFlight) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (JCampWriter writer = new ParallelJCampWriter(Channels.newChannel(output), compression, JCampWriter.DEFAULT_LINE_WIDTH, pool, inFlight)) {
+            writer.write(document);
+        }
+        return output.toByteArray();
+    }
+
+    private String resourceAsString(String name) {
+        try (var input = getClass().getResourceAsStream(name)) {
+            if (input == null) {
+                throw new IllegalStateException("No resource found for " + name);
+            }
+
+            return new String(input.readAllBytes());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.writer;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Generate realistic JCamp-DX documents of arbitrary size, for benchmarks and stress tests.
+ * <p>
+ * Documents are streamed through a {@link JCampWriter}, one page at a time, so files of several GB can be generated with
+ * a small memory footprint. The output only depends on the generator parameters: the same seed always produces the same
+ * bytes.
+ * <p>
+ * This class is part of the test sources, published in the test jar for the benchmarks module.
+ * <p>
+ * Supported document kinds:
+ * <ul>
+ * <li>FID: NTUPLES with real and imaginary pages. 1D when there is a single increment, nD otherwise</li>
+ * <li>SPECTRUM: a 1D XYDATA spectrum</li>
+ * <li>LINK: a compound document alternating FID and SPECTRUM blocks</li>
+ * </ul>
+ */
+public class SyntheticJCampGenerator {
+    public enum Kind {
+        FID, SPECTRUM, LINK
+    }
+
+    private static final String VERSION = "5.01";
+    private static final String DATE = "2021/03/02 14:25:40+0000";
+    private static final double FREQUENCY = 60.0;
+    private static final double SPECTRAL_WIDTH = 5000.0;
+    private static final double INCREMENT_WIDTH = 2500.0;
+    private static final double Y_FACTOR = 0.001;
+    private static final double AMPLITUDE = 1e9;
+    private static final int MAX_PEAKS = 12;
+
+    private final long seed;
+    private Kind kind = Kind.FID;
+    private Compression compression = JCampWriter.DEFAULT_COMPRESSION;
+    private int lineWidth = JCampWriter.DEFAULT_LINE_WIDTH;
+    private int points = 4096;
+    private int increments = 1;
+    private int blocks = 2;
+    private double noise = 100;
+
+    public SyntheticJCampGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public SyntheticJCampGenerator setKind(Kind kind) {
+        this.kind = kind;
+        return this;
+    }
+
+    public SyntheticJCampGenerator setCompression(Compression compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public SyntheticJCampGenerator setLineWidth(int lineWidth) {
+        this.lineWidth = lineWidth;
+        return this;
+    }
+
+    /**
+     * @param points the number of points per page
+     * @return this generator.
+     */
+    public SyntheticJCampGenerator setPoints(int points) {
+        if (points < 2) {
+            throw new IllegalArgumentException("At least two points are required, received: " + points);
+        }
+        this.points = points;
+        return this;
+    }
+
+    /**
+     * @param increments the number of increments in the indirect dimension of FID blocks, 1 for 1D FID.
+     * @return this generator.
+     */
+    public SyntheticJCampGenerator setIncrements(int increments) {
+        if (increments < 1) {
+            throw new IllegalArgumentException("At least one increment is required, received: " + increments);
+        }
+        this.increments = increments;
+        return this;
+    }
+
+    /**
+     * @param blocks the number of blocks in LINK documents
+     * @return this generator.
+     */
+    public SyntheticJCampGenerator setBlocks(int blocks) {
+        if (blocks < 1) {
+            throw new IllegalArgumentException("At least one block is required, received: " + blocks);
+        }
+        this.blocks = blocks;
+        return this;
+    }
+
+    /**
+     * @param noise the standard deviation of the gaussian noise, in raw integer units. Without noise, the decaying
+     * signal ends with long runs of identical values, which is the best case for DUP compression.
+     * @return this generator.
+     */
+    public SyntheticJCampGenerator setNoise(double noise) {
+        this.noise = noise;
+        return this;
+    }
+
+    /**
+     * @return the total number of data points in generated documents.
+     */
+    public long getPointCount() {
+        long fid = 2L * increments * points;
+        switch (kind) {
+            case FID:
+                return fid;
+            case SPECTRUM:
+                return points;
+            default:
+                return (blocks + 1) / 2 * fid + blocks / 2 * (long) points;
+        }
+    }
+
+    /**
+     * Generate a document in memory.
+     *
+     * @return the document content.
+     */
+    public String generate() {
+        try {
+            JCampWriter writer = new JCampWriter((WritableByteChannel) null, compression, lineWidth);
+            generate(writer);
+            Utf8Buffer buffer = writer.buffer();
+            return new String(buffer.array(), 0, buffer.size(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory writers can't fail", e);
+        }
+    }
+
+    /**
+     * Generate a document to a file.
+     *
+     * @param file the file, overwritten if it exists
+     * @throws IOException when writing fails
+     */
+    public void generate(Path file) throws IOException {
+        generate(FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /**
+     * Generate a document to a channel. The channel is closed once done.
+     *
+     * @param channel the destination
+     * @throws IOException when writing fails
+     */
+    public void generate(WritableByteChannel channel) throws IOException {
+        try (JCampWriter writer = new JCampWriter(channel, compression, lineWidth)) {
+            generate(writer);
+        }
+    }
+
+    private void generate(JCampWriter writer) throws IOException {
+        Random random = new Random(seed);
+        String title = "synthetic_" + kind.name().toLowerCase() + "_" + seed;
+        switch (kind) {
+            case FID:
+                writeFid(writer, random, title, 0);
+                break;
+            case SPECTRUM:
+                writeSpectrum(writer, random, title, 0);
+                break;
+            default:
+                writer.writeRecord("TITLE", title);
+                writer.writeRecord("JCAMP-DX", VERSION);
+                writer.writeRecord("DATA TYPE", "LINK");
+                writer.writeRecord("BLOCKS", Integer.toString(blocks));
+                for (int i = 0; i < blocks; i++) {
+                    if (i % 2 == 0) {
+                        writeFid(writer, random, title, i + 1);
+                    } else {
+                        writeSpectrum(writer, random, title, i + 1);
+                    }
+                }
+                writer.writeRecord("END", "");
+        }
+    }
+
+    private void writeFid(JCampWriter writer, Random random, String title, int blockId) throws IOException {
+        boolean nD = increments > 1;
+        String dataType = nD ? "nD NMR FID" : "NMR FID";
+        double dwell = 1 / SPECTRAL_WIDTH;
+        double incrementDwell = 1 / INCREMENT_WIDTH;
+        String yForm = compression.getForm().name();
+
+        writeHeader(writer, title, blockId, dataType, "NTUPLES");
+        if (nD) {
+            writer.writeRecord("NUM DIM", "2");
+        }
+        writer.writeRecord("NPOINTS", Integer.toString(points));
+        writer.writeRecord("NTUPLES", dataType);
+        if (nD) {
+            double lastIncrement = (increments - 1) * incrementDwell;
+            writer.writeRecord("VAR_NAME", "TIME1, TIME2, FID/REAL, FID/IMAG");
+            writer.writeRecord("SYMBOL", "T1, T2, R, I");
+            writer.writeRecord("VAR_TYPE", "INDEPENDENT, INDEPENDENT, DEPENDENT, DEPENDENT");
+            writer.writeRecord("VAR_FORM", "AFFN, AFFN, " + yForm + ", " + yForm);
+            writer.writeRecord("VAR_DIM", increments + ", " + points + ", " + points + ", " + points);
+            writer.writeRecord("UNITS", "SECONDS, SECONDS, ARBITRARY UNITS, ARBITRARY UNITS");
+            writer.writeRecord("FIRST", "0, 0, 0, 0");
+            writer.writeRecord("LAST", lastIncrement + ", " + (points - 1) * dwell + ", 0, 0");
+            writer.writeRecord("FACTOR", incrementDwell + ", " + dwell + ", " + Y_FACTOR + ", " + Y_FACTOR);
+        } else {
+            writer.writeRecord("VAR_NAME", "TIME, FID/REAL, FID/IMAG, PAGE NUMBER");
+            writer.writeRecord("SYMBOL", "X, R, I, N");
+            writer.writeRecord("VAR_TYPE", "INDEPENDENT, DEPENDENT, DEPENDENT, PAGE");
+            writer.writeRecord("VAR_FORM", "AFFN, " + yForm + ", " + yForm + ", AFFN");
+            writer.writeRecord("VAR_DIM", points + ", " + points + ", " + points + ", 2");
+            writer.writeRecord("UNITS", "SECONDS, ARBITRARY UNITS, ARBITRARY UNITS, ");
+            writer.writeRecord("FIRST", "0, 0, 0, 1");
+            writer.writeRecord("LAST", (points - 1) * dwell + ", 0, 0, 2");
+            writer.writeRecord("FACTOR", dwell + ", " + Y_FACTOR + ", " + Y_FACTOR + ", 1");
+        }
+
+        Peak[] peaks = Peak.random(random);
+        String xSymbol = nD ? "T2" : "X";
+        String profile = nD ? "PROFILE" : "XYDATA";
+        int[] real = new int[points];
+        int[] imaginary = new int[points];
+        for (int increment = 0; increment < increments; increment++) {
+            double t1 = increment * incrementDwell;
+            fid(peaks, random, t1, dwell, real, imaginary);
+
+            writer.writeRecord("PAGE", nD ? "T1=" + t1 : "N=1");
+            writer.writeData("DATA TABLE", "(" + xSymbol + "++(R..R)), " + profile, real, 0, 1);
+            writer.writeRecord("PAGE", nD ? "T1=" + t1 : "N=2");
+            writer.writeData("DATA TABLE", "(" + xSymbol + "++(I..I)), " + profile, imaginary, 0, 1);
+        }
+        writer.writeRecord("END NTUPLES", dataType);
+        writer.writeRecord("END", "");
+    }
+
+    private void writeSpectrum(JCampWriter writer, Random random, String title, int blockId) throws IOException {
+        double delta = SPECTRAL_WIDTH / points;
+        double firstX = SPECTRAL_WIDTH / 2;
+        double lastX = firstX - (points - 1) * delta;
+
+        writeHeader(writer, title, blockId, "NMR SPECTRUM", "XYDATA");
+        writer.writeRecord("NPOINTS", Integer.toString(points));
+        writer.writeRecord("XUNITS", "HZ");
+        writer.writeRecord("YUNITS", "ARBITRARY UNITS");
+        writer.writeRecord("FIRSTX", Double.toString(firstX));
+        writer.writeRecord("LASTX", Double.toString(lastX));
+        writer.writeRecord("DELTAX", Double.toString(-delta));
+        writer.writeRecord("XFACTOR", Double.toString(delta));
+        writer.writeRecord("YFACTOR", Double.toString(Y_FACTOR));
+
+        Peak[] peaks = Peak.random(random);
+        int[] values = new int[points];
+        for (int i = 0; i < points; i++) {
+            double x = firstX - i * delta;
+            double y = 0;
+            for (Peak peak : peaks) {
+                double offset = (x - peak.frequency) / peak.width;
+                y += peak.amplitude / (1 + offset * offset);
+            }
+            values[i] = (int) Math.round(y / SPECTRAL_WIDTH + random.nextGaussian() * noise);
+        }
+        writer.writeData("XYDATA", "(X++(Y..Y))", values, firstX / delta, -1);
+        writer.writeRecord("END", "");
+    }
+
+    private void writeHeader(JCampWriter writer, String title, int blockId, String dataType, String dataClass) throws IOException {
+        writer.writeRecord("TITLE", title);
+        writer.writeRecord("JCAMP-DX", VERSION);
+        if (blockId > 0) {
+            writer.writeRecord("BLOCK_ID", Integer.toString(blockId));
+        }
+        writer.writeRecord("DATA TYPE", dataType);
+        writer.writeRecord("DATA CLASS", dataClass);
+        writer.writeRecord("ORIGIN", "jcamp-parser");
+        writer.writeRecord("OWNER", "synthetic");
+        writer.writeRecord("LONG DATE", DATE);
+        writer.writeRecord(".OBSERVE FREQUENCY", Double.toString(FREQUENCY));
+        writer.writeRecord(".OBSERVE NUCLEUS", "^1H");
+        writer.writeRecord("$SEED", Long.toString(seed));
+    }
+
+    /**
+     * Sum of decaying complex oscillations, modulated in amplitude by the indirect dimension, plus noise.
+     */
+    private void fid(Peak[] peaks, Random random, double t1, double dwell, int[] real, int[] imaginary) {
+        for (int i = 0; i < points; i++) {
+            double t2 = i * dwell;
+            double re = 0;
+            double im = 0;
+            for (Peak peak : peaks) {
+                double amplitude = peak.amplitude * Math.exp(-t2 * peak.width) * Math.cos(2 * Math.PI * peak.indirectFrequency * t1);
+                double phase = 2 * Math.PI * peak.frequency * t2;
+                re += amplitude * Math.cos(phase);
+                im += amplitude * Math.sin(phase);
+            }
+            real[i] = (int) Math.round(re + random.nextGaussian() * noise);
+            imaginary[i] = (int) Math.round(im + random.nextGaussian() * noise);
+        }
+    }
+
+    private static class Peak {
+        private final double frequency;
+        private final double indirectFrequency;
+        private final double width;
+        private final double amplitude;
+
+        private Peak(double frequency, double indirectFrequency, double width, double amplitude) {
+            this.frequency = frequency;
+            this.indirectFrequency = indirectFrequency;
+            this.width = width;
+            this.amplitude = amplitude;
+        }
+
+        private static Peak[] random(Random random) {
+            Peak[] peaks = new Peak[1 + random.nextInt(MAX_PEAKS)];
+            for (int i = 0; i < peaks.length; i++) {
+                peaks[i] = new Peak(
+                    (random.nextDouble() - 0.5) * SPECTRAL_WIDTH,
+                    (random.nextDouble() - 0.5) * INCREMENT_WIDTH,
+                    1 + random.nextDouble() * 10,
+                    AMPLITUDE / MAX_PEAKS * (0.1 + random.nextDouble()));
+            }
+            return peaks;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * JCamp-Parser: a basic parsing library
+ * Copyright (C) 2021 - Nanalysis Scientific Corp.
+ * -
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nanalysis.jcamp.writer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import com.nanalysis.jcamp.model.DataType;
+import com.nanalysis.jcamp.model.JCampBlock;
+import com.nanalysis.jcamp.model.JCampDocument;
+import com.nanalysis.jcamp.model.JCampPage;
+import com.nanalysis.jcamp.model.XYDataPage;
+import com.nanalysis.jcamp.parser.JCampParser;
+import com.nanalysis.jcamp.writer.SyntheticJCampGenerator.Kind;
+
+public class SyntheticJCampGeneratorTest {
+    @Test
+    public void outputDependsOnlyOnSeed() {
+        String first = new SyntheticJCampGenerator(42).setKind(Kind.LINK).generate();
+        assertEquals(first, new SyntheticJCampGenerator(42).setKind(Kind.LINK).generate());
+        assertNotEquals(first, new SyntheticJCampGenerator(43).setKind(Kind.LINK).generate());
+    }
+
+    @Test
+    public void generateFile() throws IOException {
+        SyntheticJCampGenerator generator = new SyntheticJCampGenerator(7).setPoints(20000).setIncrements(4);
+        Path file = Files.createTempFile("synthetic", ".dx");
+        try {
+            generator.generate(file);
+            assertEquals(generator.generate(), Files.readString(file, StandardCharsets.UTF_8));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void generateOneDimensionalFid() {
+        JCampDocument document = parse(new SyntheticJCampGenerator(1).setPoints(1000));
+        assertEquals(DataType.NMR_FID, document.getDataType());
+        JCampBlock block = document.block(0);
+        assertEquals(2, block.getPageCount());
+        assertEquals("R", block.page(0).extractYSymbol());
+        assertEquals("I", block.page(1).extractYSymbol());
+        assertEquals(1000, block.page(1).toArray().length);
+    }
+
+    @Test
+    public void generateMultiDimensionalFid() {
+        SyntheticJCampGenerator generator = new SyntheticJCampGenerator(2).setPoints(256).setIncrements(16);
+        JCampDocument document = parse(generator);
+        assertEquals(DataType.ND_NMR_FID, document.getDataType());
+        JCampBlock block = document.block(0);
+        assertEquals(32, block.getPageCount());
+        assertEquals(16, block.getPagesForYSymbol("I").size());
+        assertEquals("T1", block.page(2).extractPageSymbol());
+        assertEquals(1.0 / 2500, block.page(2).extractPageValueAsNumber(), 1e-12);
+        assertEquals(generator.getPointCount(), countPoints(document));
+    }
+
+    @Test
+    public void generateSpectrum() {
+        JCampDocument document = parse(new SyntheticJCampGenerator(3).setKind(Kind.SPECTRUM).setPoints(2048));
+        assertEquals(DataType.NMR_SPECTRUM, document.getDataType());
+        JCampPage page = document.block(0).page(0);
+        assertEquals(XYDataPage.class, page.getClass());
+        assertEquals(2048, page.toArray().length);
+    }
+
+    @Test
+    public void generateLink() {
+        SyntheticJCampGenerator generator = new SyntheticJCampGenerator(4).setKind(Kind.LINK).setBlocks(3).setPoints(512).setIncrements(2);
+        JCampDocument document = parse(generator);
+        assertEquals(DataType.LINK, document.getDataType());
+        assertEquals(3, document.getBlockCount());
+        assertEquals(DataType.ND_NMR_FID, document.block(0).getDataType());
+        assertEquals(DataType.NMR_SPECTRUM, document.block(1).getDataType());
+        assertEquals(DataType.ND_NMR_FID, document.block(2).getDataType());
+        assertEquals(generator.getPointCount(), countPoints(document));
+    }
+
+    @Test
+    public void valuesDontDependOnCompression() {
+        for (Kind kind : Kind.values()) {
+            JCampDocument reference = parse(new SyntheticJCampGenerator(5).setKind(kind).setCompression(Compression.AFFN).setPoints(700));
+            for (Compression compression : Compression.values()) {
+                JCampDocument document = parse(new SyntheticJCampGenerator(5).setKind(kind).setCompression(compression).setPoints(700));
+                for (int b = 0; b < reference.getBlockCount(); b++) {
+                    for (int p = 0; p < reference.block(b).getPageCount(); p++) {
+                        assertArrayEquals(kind + " " + compression, reference.block(b).page(p).toArray(), document.block(b).page(p).toArray(), 1e-9);
+                    }
+                }
+            }
+        }
+    }
+
+    private static JCampDocument parse(SyntheticJCampGenerator generator) {
+        return new JCampParser().parse(generator.generate());
+    }
+
+    private static long countPoints(JCampDocument document) {
+        long count = 0;
+        for (int b = 0; b < document.getBlockCount(); b++) {
+            for (int p = 0; p < document.block(b).getPageCount(); p++) {
+                count += document.block(b).page(p).toArray().length;
+            }
+        }
+        return count;
+    }
+}